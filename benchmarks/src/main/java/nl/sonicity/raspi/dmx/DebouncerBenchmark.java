@@ -0,0 +1,70 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Debouncer#call(Object)} from four threads at once, either all on the same key or
+ * each thread on its own key.
+ *
+ * Run with the gc profiler for allocation rates: java -jar target/benchmarks.jar DebouncerBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class DebouncerBenchmark {
+    @State(Scope.Benchmark)
+    public static class Shared {
+        @Param({ "true", "false" })
+        private boolean sameKey;
+
+        private Debouncer<Integer> debouncer;
+
+        @Setup
+        public void setUp() {
+            debouncer = new Debouncer<>(key -> null, 50);
+        }
+
+        @TearDown
+        public void tearDown() {
+            debouncer.terminate();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Key {
+        private static int threads = 0;
+        private Integer key;
+
+        @Setup
+        public void setUp(Shared shared) {
+            synchronized (Key.class) {
+                key = shared.sameKey ? 0 : ++threads;
+            }
+        }
+    }
+
+    @Benchmark
+    public void call(Shared shared, Key key) {
+        shared.debouncer.call(key.key);
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import nl.sonicity.raspi.dmx.artnet.packets.ArtDmx;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtDmxView;
+import nl.sonicity.raspi.dmx.sacn.E131Data;
+import nl.sonicity.raspi.dmx.sacn.E131DataView;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ArtDmx path of the node with a number of handlers on the same universe.
+ *
+ * The node is not started and its router has no budget, so the handlers are called inline and
+ * everything runs on the benchmark thread. receive covers what the receive and dispatch threads
+ * do for a single datagram: view, sequence check, merge, hand-over through the ring, routing and
+ * the calls of all handlers. It does not include the hand-over to handler worker threads of a
+ * node with a budget. receiveSacn is the same for an E1.31 data packet, including the priority
+ * check. route covers routing with the handlers called directly. Every invocation changes the
+ * slots of all handlers, so no frame is skipped as unchanged.
+ *
+ * Run with the gc profiler for allocation rates: java -jar target/benchmarks.jar DmxPathBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class DmxPathBenchmark {
+    private static final int UNIVERSE = 0x0001;
+    private static final int HANDLER_WIDTH = 8;
+
+    @Param({ "1", "8", "64" })
+    private int handlers;
+
+    private ArtNetNode node;
+    private DmxRouter router;
+    private InetSocketAddress source;
+    private ByteBuffer buffer;
+    private ArtDmxView view;
+    private ByteBuffer sacnBuffer;
+    private E131DataView sacnView;
+    private byte[] frame;
+    private int sequence = 0;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        node = new ArtNetNode(ArtNetNodeConfig.builder()
+                .networkInterface("lo")
+                .outputPort(UNIVERSE)
+                .build(), new DmxRouter());
+        router = new DmxRouter();
+        for (int i = 0; i < handlers; i++) {
+            int address = (i * HANDLER_WIDTH) % (512 - HANDLER_WIDTH) + 1;
+            node.addHandler(new BlackholeHandler(address, blackhole));
+            router.add(new BlackholeHandler(address, blackhole));
+        }
+
+        source = new InetSocketAddress(InetAddress.getLoopbackAddress(), ArtNetNodeConfig.DEFAULT_PORT);
+        buffer = ByteBuffer.allocate(8196);
+        view = new ArtDmxView(buffer);
+        buffer.put(new ArtDmx.Builder().portAddress(UNIVERSE).dmx(new byte[512]).build().toBytes());
+        buffer.flip();
+        sacnBuffer = ByteBuffer.allocate(8196);
+        sacnView = new E131DataView(sacnBuffer);
+        sacnBuffer.put(new E131Data.Builder().universe(UNIVERSE + 1).dmx(new byte[512]).toBytes());
+        sacnBuffer.flip();
+        frame = new byte[512];
+    }
+
+    @Benchmark
+    public int receive() {
+        sequence = sequence % 255 + 1;
+        byte[] data = buffer.array();
+        data[12] = (byte) sequence;
+        data[18] = (byte) sequence;
+        for (int i = 0; i < handlers; i++) {
+            data[18 + (i * HANDLER_WIDTH) % (512 - HANDLER_WIDTH)] = (byte) sequence;
+        }
+
+        buffer.position(0);
+        node.handlePacket(source, buffer, view);
+        return node.dispatchPending();
+    }
+
+    @Benchmark
+    public int receiveSacn() {
+        sequence = sequence % 255 + 1;
+        byte[] data = sacnBuffer.array();
+        data[111] = (byte) sequence;
+        data[126] = (byte) sequence;
+        for (int i = 0; i < handlers; i++) {
+            data[126 + (i * HANDLER_WIDTH) % (512 - HANDLER_WIDTH)] = (byte) sequence;
+        }
+
+        sacnBuffer.position(0);
+        node.handleSacnPacket(source, sacnBuffer, sacnView);
+        return node.dispatchPending();
+    }
+
+    @Benchmark
+    public int route() {
+        sequence = sequence % 255 + 1;
+        for (int i = 0; i < handlers; i++) {
+            frame[(i * HANDLER_WIDTH) % (512 - HANDLER_WIDTH)] = (byte) sequence;
+        }
+        return router.dispatch(UNIVERSE, frame, 0);
+    }
+
+    private static class BlackholeHandler extends DmxHandler {
+        private final Blackhole blackhole;
+
+        BlackholeHandler(int address, Blackhole blackhole) {
+            super("Blackhole", UNIVERSE, address, HANDLER_WIDTH);
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void onDmx(byte[] data) {
+            blackhole.consume(data[0]);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import nl.sonicity.raspi.dmx.artnet.packets.ArtDmx;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtPoll;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends synthetic ArtDmx traffic to a node over loopback.
+ *
+ * Every source sends a frame for every universe per tick. Each source has its own loopback address,
+ * 127.0.0.1, 127.0.0.2 and so on, so the node sees them as separate controllers and merges them.
+ * Without random payloads only the first slot changes, so every frame still reaches the handlers.
+ * ArtPolls are spread evenly over the ticks to simulate a poll storm.
+ *
+ * Ticks are scheduled on absolute deadlines, a tick that starts after the next one was due is
+ * counted as late: the generator itself could not keep up and the numbers of that run say
+ * nothing about the node.
+ */
+public class LoadGenerator {
+    private static final Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final int OFFSET_SEQUENCE = 12;
+    private static final int OFFSET_DMX = 18;
+
+    private final InetSocketAddress target;
+    private final int universes;
+    private final int sources;
+    private final int frameRate;
+    private final boolean randomPayload;
+    private final int pollsPerSecond;
+
+    private final AtomicLong sentFrames = new AtomicLong();
+    private final AtomicLong sentPolls = new AtomicLong();
+    private final AtomicLong sendFailures = new AtomicLong();
+    private final AtomicLong lateTicks = new AtomicLong();
+
+    private volatile boolean terminate;
+    private Thread thread;
+
+    public LoadGenerator(int port, int universes, int sources, int frameRate, boolean randomPayload, int pollsPerSecond) {
+        if (universes < 1 || universes > 0x8000 || sources < 1 || sources > 250 || frameRate < 1 || pollsPerSecond < 0) {
+            throw new IllegalArgumentException("Invalid load parameters");
+        }
+        this.target = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        this.universes = universes;
+        this.sources = sources;
+        this.frameRate = frameRate;
+        this.randomPayload = randomPayload;
+        this.pollsPerSecond = pollsPerSecond;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            throw new IllegalStateException("Generator already started");
+        }
+        terminate = false;
+        thread = new Thread(() -> {
+            try {
+                run();
+            } catch (IOException e) {
+                LOG.error("Load generator failed", e);
+            }
+        });
+        thread.setName("LoadGenerator-" + target.getPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() throws InterruptedException {
+        if (thread == null) {
+            return;
+        }
+        terminate = true;
+        LockSupport.unpark(thread);
+        thread.join(5000L);
+        thread = null;
+    }
+
+    private void run() throws IOException {
+        DatagramChannel[] channels = new DatagramChannel[sources];
+        try {
+            for (int source = 0; source < sources; source++) {
+                channels[source] = DatagramChannel.open();
+                channels[source].bind(new InetSocketAddress(InetAddress.getByAddress(new byte[] { 127, 0, 0, (byte)(source + 1) }), 0));
+            }
+            generate(channels);
+        } finally {
+            for (DatagramChannel channel : channels) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    private void generate(DatagramChannel[] channels) throws IOException {
+        ByteBuffer[][] frames = new ByteBuffer[sources][universes];
+        for (int source = 0; source < sources; source++) {
+            for (int universe = 0; universe < universes; universe++) {
+                frames[source][universe] = ByteBuffer.wrap(new ArtDmx.Builder()
+                        .portAddress(universe)
+                        .dmx(new byte[512])
+                        .build()
+                        .toBytes());
+            }
+        }
+        ByteBuffer poll = ByteBuffer.wrap(new ArtPoll.Builder().build().toBytes());
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / frameRate;
+        long pollsDue = 0;
+        int sequence = 0;
+        long next = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        while (!terminate) {
+            sequence = sequence % 255 + 1;
+            for (int source = 0; source < sources; source++) {
+                for (int universe = 0; universe < universes; universe++) {
+                    ByteBuffer frame = frames[source][universe];
+                    byte[] data = frame.array();
+                    data[OFFSET_SEQUENCE] = (byte)sequence;
+                    if (randomPayload) {
+                        for (int i = OFFSET_DMX; i < data.length; i += 8) {
+                            long value = random.nextLong();
+                            for (int j = 0; j < 8 && i + j < data.length; j++) {
+                                data[i + j] = (byte)(value >>> (j * 8));
+                            }
+                        }
+                    } else {
+                        data[OFFSET_DMX] = (byte)sequence;
+                    }
+                    send(channels[source], frame);
+                    sentFrames.incrementAndGet();
+                }
+            }
+
+            // Spread the polls over the ticks, carrying the fraction over to the next tick
+            pollsDue += pollsPerSecond;
+            while (pollsDue >= frameRate) {
+                pollsDue -= frameRate;
+                send(channels[random.nextInt(sources)], poll);
+                sentPolls.incrementAndGet();
+            }
+
+            next += interval;
+            long now = System.nanoTime();
+            if (now - next > 0) {
+                lateTicks.incrementAndGet();
+                // Do not try to catch up with a burst, that would measure the burst instead
+                next = now;
+                continue;
+            }
+            long remaining;
+            while (!terminate && (remaining = next - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+    }
+
+    private void send(DatagramChannel channel, ByteBuffer datagram) {
+        datagram.rewind();
+        try {
+            channel.send(datagram, target);
+        } catch (IOException e) {
+            sendFailures.incrementAndGet();
+        }
+    }
+
+    public long getSentFrames() {
+        return sentFrames.get();
+    }
+
+    public long getSentPolls() {
+        return sentPolls.get();
+    }
+
+    public long getSendFailures() {
+        return sendFailures.get();
+    }
+
+    public long getLateTicks() {
+        return lateTicks.get();
+    }
+}
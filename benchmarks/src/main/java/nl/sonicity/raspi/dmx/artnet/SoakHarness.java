@@ -0,0 +1,289 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.net.DatagramSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Soak test of a node on the loopback interface under synthetic load from a {@link LoadGenerator}.
+ *
+ * The node is started with an output port and a handler for every universe. For each universe
+ * count in the list the load runs for the step duration and a line is printed every report
+ * interval; the summary at the end is the capacity curve: from which universe count on frames
+ * get lost, in the kernel or in the node.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar nl.sonicity.raspi.dmx.artnet.SoakHarness \
+ *     --universes 8,16,32,64 --sources 1 --rate 44 [--random] [--polls 0] [--step 60] [--report 10]
+ * </pre>
+ *
+ * Kernel drops are read from /proc/net/udp and are only available on Linux. Heap is the heap in
+ * use after the last garbage collection, its growth over a step points at a leak.
+ */
+public class SoakHarness {
+    private static final long WARMUP_MILLIS = 2000L;
+
+    private final int sources;
+    private final int frameRate;
+    private final boolean randomPayload;
+    private final int pollsPerSecond;
+    private final long stepMillis;
+    private final long reportMillis;
+
+    SoakHarness(int sources, int frameRate, boolean randomPayload, int pollsPerSecond, long stepMillis, long reportMillis) {
+        this.sources = sources;
+        this.frameRate = frameRate;
+        this.randomPayload = randomPayload;
+        this.pollsPerSecond = pollsPerSecond;
+        this.stepMillis = stepMillis;
+        this.reportMillis = reportMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> universes = List.of(8, 16, 32, 64);
+        int sources = 1;
+        int frameRate = 44;
+        boolean randomPayload = false;
+        int pollsPerSecond = 0;
+        long stepSeconds = 60;
+        long reportSeconds = 10;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--universes":
+                    universes = new ArrayList<>();
+                    for (String count : args[++i].split(",")) {
+                        universes.add(Integer.parseInt(count.trim()));
+                    }
+                    break;
+                case "--sources":
+                    sources = Integer.parseInt(args[++i]);
+                    break;
+                case "--rate":
+                    frameRate = Integer.parseInt(args[++i]);
+                    break;
+                case "--random":
+                    randomPayload = true;
+                    break;
+                case "--polls":
+                    pollsPerSecond = Integer.parseInt(args[++i]);
+                    break;
+                case "--step":
+                    stepSeconds = Long.parseLong(args[++i]);
+                    break;
+                case "--report":
+                    reportSeconds = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    System.err.println("Usage: SoakHarness [--universes 8,16,32,64] [--sources 1] [--rate 44] "
+                            + "[--random] [--polls 0] [--step seconds] [--report seconds]");
+                    System.exit(1);
+            }
+        }
+
+        SoakHarness harness = new SoakHarness(sources, frameRate, randomPayload, pollsPerSecond,
+                TimeUnit.SECONDS.toMillis(stepSeconds), TimeUnit.SECONDS.toMillis(reportSeconds));
+        List<String> summary = new ArrayList<>();
+        for (int count : universes) {
+            summary.add(harness.run(count));
+        }
+
+        System.out.println();
+        System.out.printf("%-9s %12s %12s %8s %12s %12s %10s %12s%n",
+                "universes", "sent", "received", "loss", "kernel drops", "handler/s", "late ticks", "heap growth");
+        summary.forEach(System.out::println);
+    }
+
+    /** Run a single step of the capacity curve
+     *
+     * @param universes number of universes to send
+     * @return summary line of the step
+     */
+    String run(int universes) throws Exception {
+        int port = freePort();
+        ArtNetNodeConfig.ArtNetNodeConfigBuilder config = ArtNetNodeConfig.builder()
+                .networkInterface("lo")
+                .port(port);
+        List<CountingHandler> handlers = new ArrayList<>();
+        for (int portAddress = 0; portAddress < universes; portAddress++) {
+            config.outputPort(portAddress);
+            handlers.add(new CountingHandler(portAddress));
+        }
+
+        ArtNetNode node = new ArtNetNode(config.build());
+        handlers.forEach(node::addHandler);
+        node.start();
+        LoadGenerator generator = new LoadGenerator(port, universes, sources, frameRate, randomPayload, pollsPerSecond);
+
+        System.out.printf("%n%d universes from %d source(s) at %d Hz, %s payload, %d polls/s%n",
+                universes, sources, frameRate, randomPayload ? "random" : "counter", pollsPerSecond);
+        System.out.printf("%8s %10s %10s %8s %12s %10s %10s %10s%n",
+                "time", "sent/s", "recv/s", "loss", "kernel drops", "handler/s", "late ticks", "heap MB");
+
+        try {
+            Thread.sleep(250);
+            generator.start();
+            Thread.sleep(WARMUP_MILLIS);
+
+            // Counters at the end of the warmup are the baseline of the step
+            Sample first = sample(node, generator, handlers, port);
+            Sample previous = first;
+            long start = System.currentTimeMillis();
+            long end = start + stepMillis;
+            while (System.currentTimeMillis() < end) {
+                Thread.sleep(Math.min(reportMillis, Math.max(1L, end - System.currentTimeMillis())));
+                Sample current = sample(node, generator, handlers, port);
+                double seconds = (current.nanoTime - previous.nanoTime) / 1e9;
+                System.out.printf("%7ds %10.0f %10.0f %7.2f%% %12d %10.0f %10d %10.1f%n",
+                        (System.currentTimeMillis() - start) / 1000,
+                        (current.sent - previous.sent) / seconds,
+                        (current.received - previous.received) / seconds,
+                        loss(current.sent - previous.sent, current.received - previous.received),
+                        kernelDrops(current, previous),
+                        (current.handlerCalls - previous.handlerCalls) / seconds,
+                        current.lateTicks - previous.lateTicks,
+                        current.heapAfterGc / 1048576.0);
+                previous = current;
+            }
+
+            generator.stop();
+            Thread.sleep(500);
+            Sample last = sample(node, generator, handlers, port);
+            double seconds = (last.nanoTime - first.nanoTime) / 1e9;
+            return String.format("%-9d %12d %12d %7.2f%% %12d %12.0f %10d %10.1fMB",
+                    universes,
+                    last.sent - first.sent,
+                    last.received - first.received,
+                    loss(last.sent - first.sent, last.received - first.received),
+                    kernelDrops(last, first),
+                    (last.handlerCalls - first.handlerCalls) / seconds,
+                    last.lateTicks - first.lateTicks,
+                    (last.heapAfterGc - first.heapAfterGc) / 1048576.0);
+        } finally {
+            generator.stop();
+            node.stop();
+        }
+    }
+
+    private static double loss(long sent, long received) {
+        return sent == 0 ? 0.0 : Math.max(0, sent - received) * 100.0 / sent;
+    }
+
+    private static long kernelDrops(Sample current, Sample previous) {
+        return current.kernelDrops < 0 || previous.kernelDrops < 0 ? -1 : current.kernelDrops - previous.kernelDrops;
+    }
+
+    private static Sample sample(ArtNetNode node, LoadGenerator generator, List<CountingHandler> handlers, int port) {
+        Sample sample = new Sample();
+        sample.nanoTime = System.nanoTime();
+        sample.sent = generator.getSentFrames();
+        sample.received = node.getPacketCounts().getOrDefault("ARTNET_OP_DMX", 0L);
+        sample.lateTicks = generator.getLateTicks();
+        sample.handlerCalls = handlers.stream().mapToLong(handler -> handler.calls.get()).sum();
+        sample.kernelDrops = kernelDrops(port);
+        sample.heapAfterGc = heapAfterGc();
+        return sample;
+    }
+
+    /** Datagrams the kernel dropped on the receive queue of a UDP port
+     *
+     * @param port local port of the socket
+     * @return drop count of all sockets on the port, or -1 when /proc/net/udp is not available
+     */
+    static long kernelDrops(int port) {
+        long drops = 0;
+        boolean available = false;
+        for (String table : new String[] { "/proc/net/udp", "/proc/net/udp6" }) {
+            Path path = Paths.get(table);
+            if (!Files.isReadable(path)) {
+                continue;
+            }
+            available = true;
+            try {
+                for (String line : Files.readAllLines(path)) {
+                    // sl local_address rem_address st tx_queue:rx_queue ... drops
+                    String[] fields = line.trim().split("\\s+");
+                    if (fields.length < 13 || !fields[0].endsWith(":")) {
+                        continue;
+                    }
+                    String local = fields[1];
+                    if (Integer.parseInt(local.substring(local.lastIndexOf(':') + 1), 16) == port) {
+                        drops += Long.parseLong(fields[fields.length - 1]);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                return -1;
+            }
+        }
+        return available ? drops : -1;
+    }
+
+    /** Heap in use right after the last collection, summed over the heap pools
+     *
+     * Before the first collection this is the heap in use.
+     */
+    private static long heapAfterGc() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (pool.getType() == MemoryType.HEAP && usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        return used > 0 ? used : ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static int freePort() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static class Sample {
+        long nanoTime;
+        long sent;
+        long received;
+        long lateTicks;
+        long handlerCalls;
+        long kernelDrops;
+        long heapAfterGc;
+    }
+
+    private static class CountingHandler extends DmxHandler {
+        private final AtomicLong calls = new AtomicLong();
+
+        CountingHandler(int universe) {
+            super("Counting", universe, 1, 1);
+        }
+
+        @Override
+        public void onDmx(byte[] data) {
+            calls.incrementAndGet();
+        }
+    }
+}
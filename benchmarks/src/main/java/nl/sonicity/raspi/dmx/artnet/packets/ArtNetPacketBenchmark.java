@@ -0,0 +1,145 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet.packets;
+
+import nl.sonicity.raspi.dmx.artnet.ArtNetException;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse and build paths of the packet classes. parseReflective is the reflective packet
+ * construction that was used before the opcode dispatch table, as a baseline for parseBytes.
+ *
+ * Run with the gc profiler for allocation rates: java -jar target/benchmarks.jar ArtNetPacketBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ArtNetPacketBenchmark {
+    private static final Map<Integer, Class<?>> reflectiveTable = new HashMap<>();
+
+    static {
+        reflectiveTable.put(0x2000, ArtPoll.class);
+        reflectiveTable.put(0x2100, ArtPollReply.class);
+        reflectiveTable.put(0x5000, ArtDmx.class);
+        reflectiveTable.put(0x5200, ArtSync.class);
+    }
+
+    private ArtDmx artDmx;
+    private Inet4Address address;
+    private byte[] macAddress = new byte[6];
+
+    @State(Scope.Thread)
+    public static class Packet {
+        @Param({ "POLL", "POLLREPLY", "DMX", "SYNC", "UNKNOWN" })
+        private String opCode;
+
+        private byte[] data;
+
+        @Setup
+        public void setUp() throws UnknownHostException {
+            switch (opCode) {
+                case "POLL":
+                    data = new ArtPoll.Builder().talkToMe(2).build().toBytes();
+                    break;
+                case "POLLREPLY":
+                    data = new ArtPollReply.Builder()
+                            .ipAddress((Inet4Address) InetAddress.getByName("10.0.0.1"))
+                            .shortName("Benchmark")
+                            .macAddress(new byte[6])
+                            .build().toBytes();
+                    break;
+                case "DMX":
+                    data = new ArtDmx.Builder().dmx(new byte[512]).build().toBytes();
+                    break;
+                case "SYNC":
+                    data = new ArtSync.Builder().build().toBytes();
+                    break;
+                default:
+                    // ArtTodRequest, not handled by this node
+                    data = new ArtPoll.Builder().build().toBytes();
+                    ArtNetPacket.writeUint16Msb(data, 8, 0x8000);
+            }
+        }
+    }
+
+    @Setup
+    public void setUp() throws UnknownHostException {
+        address = (Inet4Address) InetAddress.getByName("10.0.0.1");
+        artDmx = ArtDmx.fromBytes(new ArtDmx.Builder().dmx(new byte[512]).build().toBytes());
+    }
+
+    @Benchmark
+    public ArtNetPacket parseBytes(Packet packet) {
+        return ArtNetPacket.parseBytes(packet.data);
+    }
+
+    @Benchmark
+    public ArtNetPacket parseReflective(Packet packet) {
+        byte[] data = packet.data;
+        byte[] id = Arrays.copyOfRange(data, 0, 8);
+        if (!Arrays.equals(ArtNetPacket.ARTNET_ID, id)) {
+            throw new ArtNetException("Malformed packet");
+        }
+
+        // The old lookup failed on unknown opcodes, return null like parseBytes does
+        Class<?> clazz = reflectiveTable.get(ArtNetPacket.readUint16Msb(data, 8));
+        if (clazz == null) {
+            return null;
+        }
+        try {
+            Method method = clazz.getMethod("fromBytes", byte[].class);
+            return (ArtNetPacket) method.invoke(clazz, data);
+        } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
+            throw new ArtNetException("Failed to construct class", e);
+        }
+    }
+
+    @Benchmark
+    public byte[] getDmxData() {
+        return artDmx.getDmxData();
+    }
+
+    @Benchmark
+    public ArtPollReply buildPollReply() {
+        // The same reply the node builds for a bind index with four ports
+        ArtPollReply.Builder builder = new ArtPollReply.Builder()
+                .firmwareVersion(0)
+                .shortName("ArtNetNode")
+                .longName("ArtNetNode")
+                .ipAddress(address)
+                .bindIp(address)
+                .bindIndex(1)
+                .macAddress(macAddress)
+                .numPorts(4);
+        for (int port = 0; port < 4; port++) {
+            builder.port(port, false, true, 0).swOut(port, port);
+        }
+        return builder.build();
+    }
+}
@@ -21,6 +21,7 @@ import lombok.extern.slf4j.Slf4j;
 import nl.sonicity.raspi.dmx.artnet.ArtNetNode;
 import nl.sonicity.raspi.dmx.artnet.ArtNetNodeConfig;
 import nl.sonicity.raspi.dmx.handlers.DmxToGPIOHandler;
+import nl.sonicity.raspi.dmx.journal.JournalWriter;
 import org.apache.log4j.BasicConfigurator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +29,7 @@ import org.slf4j.LoggerFactory;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Paths;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -52,18 +54,22 @@ public class App
         GpioFactory.setDefaultProvider(getGpioProvider(gpioProviderClass));
         GpioController gpioController = GpioFactory.getInstance();
 
+        String captureDirectory = properties.getProperty("artnet.capture");
+        JournalWriter capture = captureDirectory != null ? new JournalWriter(Paths.get(captureDirectory)) : null;
+
         ArtNetNodeConfig artNetNodeConfig = ArtNetNodeConfig.builder()
                 .network(0)
                 .subnet(0)
                 .universe(0)
                 .networkInterface(networkInterface)
+                .capture(capture)
                 .build();
 
         ArtNetNode artNetNode = new ArtNetNode(artNetNodeConfig);
         artNetNode.start();
 
         DmxToGPIOHandler dmxToGPIOHandler = new DmxToGPIOHandler(gpioController, 0, 1);
-        artNetNode.getHandlers().add(dmxToGPIOHandler);
+        artNetNode.addHandler(dmxToGPIOHandler);
 
         ConcurrentMap<GpioPin, PinState> previousStateStore = new ConcurrentHashMap<>();
 
@@ -93,6 +99,9 @@ public class App
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             LOG.info("Shutdown hook called, terminating app");
             artNetNode.stop();
+            if (capture != null) {
+                capture.close();
+            }
             shutdown = true;
         }));
 
@@ -50,4 +50,15 @@ public class Util {
         return rawAddress;
     }
 
+    /** Combine network, subnet and universe into a 15 bit Art-Net Port-Address
+     *
+     * @param network network, 0 - 127
+     * @param subnet subnet, 0 - 15
+     * @param universe universe, 0 - 15
+     * @return the Port-Address
+     */
+    public static int toPortAddress(int network, int subnet, int universe) {
+        return (network & 0x7F) << 8 | (subnet & 0x0F) << 4 | (universe & 0x0F);
+    }
+
 }
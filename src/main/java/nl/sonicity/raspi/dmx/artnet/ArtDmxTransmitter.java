@@ -0,0 +1,451 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtDmxEncoder;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtNetPacket;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtPoll;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtPollReply;
+import nl.sonicity.raspi.dmx.handlers.TimingRecorder;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Controller mode, transmits a fixed set of universes as ArtDmx.
+ *
+ * Frames are handed over with {@link #update(int, byte[])} from any thread. A transmit thread
+ * ticks at the refresh rate and sends the universes that changed since the previous tick,
+ * unchanged universes are only sent again once the keep-alive interval has passed. Every universe
+ * has its own pre-encoded packet, so a tick does not allocate.
+ *
+ * With a {@link SubscriptionTable} each frame is unicast to the nodes that reported its universe in
+ * their ArtPollReply, and the transmitter polls the network to keep the table current. Universes
+ * without subscribers, or a transmitter without a table, fall back to broadcast.
+ *
+ * Nodes reply to the Art-Net port, so the table is normally the one of an {@link ArtNetNode} on
+ * the same host. A standalone transmitter can receive the replies itself with
+ * {@link ArtDmxTransmitterConfig#isReceivePollReplies()}, it then binds the reply port and keeps
+ * its own table.
+ *
+ * Ticks are scheduled on absolute deadlines. The lateness of every tick is recorded, together
+ * with the measured frame rate it gives the actual send rate and jitter of the transmitter.
+ */
+@Slf4j
+public class ArtDmxTransmitter {
+    private static final int TIMING_SAMPLES = 4096;
+    private static final long RATE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    private static final InetSocketAddress[] NO_NODES = new InetSocketAddress[0];
+
+    private final ArtDmxTransmitterConfig config;
+    private final Universe[] universes;
+    private final Universe[] byPortAddress = new Universe[DmxRouter.PORT_ADDRESSES];
+    private final long periodNanos;
+    private final long keepAliveNanos;
+    private final InetSocketAddress target;
+    private final SubscriptionTable subscriptions;
+    private final NodeRegistry nodeRegistry;
+    private final long pollIntervalNanos;
+    private final ByteBuffer poll;
+    private final TimingRecorder tickLateness = new TimingRecorder(TIMING_SAMPLES);
+
+    private volatile boolean stopping = false;
+    private Thread thread;
+
+    private volatile long sentFrames;
+    private volatile long unicastPackets;
+    private volatile long broadcastPackets;
+    private volatile long keepAliveFrames;
+    private volatile long sendFailures;
+    private volatile long pollReplies;
+    private volatile long lateTicks;
+    private volatile double framesPerSecond;
+
+    public ArtDmxTransmitter(ArtDmxTransmitterConfig config) {
+        this(config, null);
+    }
+
+    /**
+     * @param config transmitter configuration
+     * @param subscriptions nodes per universe, usually {@link ArtNetNode#getSubscriptions()} of a node
+     *                      on the same interface, or null to always broadcast unless the transmitter
+     *                      receives the poll replies itself
+     */
+    public ArtDmxTransmitter(ArtDmxTransmitterConfig config, SubscriptionTable subscriptions) {
+        if (config.getPollIntervalMillis() <= 0) {
+            throw new IllegalArgumentException("Poll interval should be positive");
+        }
+        if (config.getRefreshRate() < 1 || config.getRefreshRate() > 1000) {
+            throw new IllegalArgumentException("Refresh rate should be between 1 and 1000");
+        }
+        if (config.getKeepAliveMillis() <= 0) {
+            throw new IllegalArgumentException("Keep-alive should be positive");
+        }
+        if (config.isReceivePollReplies() && subscriptions != null) {
+            throw new IllegalArgumentException("A transmitter that receives the poll replies keeps its own subscriptions");
+        }
+
+        this.config = config;
+        this.periodNanos = TimeUnit.SECONDS.toNanos(1) / config.getRefreshRate();
+        this.keepAliveNanos = TimeUnit.MILLISECONDS.toNanos(config.getKeepAliveMillis());
+        if (config.isReceivePollReplies()) {
+            this.nodeRegistry = new NodeRegistry(TimeUnit.MILLISECONDS.toNanos(config.getNodeExpiryMillis()),
+                    new SubscriptionTable(config.getPort()));
+            this.subscriptions = nodeRegistry.getSubscriptions();
+        } else {
+            this.nodeRegistry = null;
+            this.subscriptions = subscriptions;
+        }
+        this.pollIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getPollIntervalMillis());
+        byte[] encodedPoll = new ArtPoll.Builder().build().toBytes();
+        this.poll = ByteBuffer.allocateDirect(encodedPoll.length);
+        this.poll.put(encodedPoll);
+        this.universes = new Universe[config.getUniverses().size()];
+        for (int i = 0; i < universes.length; i++) {
+            int portAddress = config.getUniverses().get(i);
+            if (portAddress < 0 || portAddress > 0x7FFF) {
+                throw new IllegalArgumentException("Universe should be a valid Port-Address between 0 and 32767");
+            }
+            if (byPortAddress[portAddress] != null) {
+                throw new IllegalArgumentException("Universe " + portAddress + " is configured twice");
+            }
+            universes[i] = new Universe(portAddress);
+            byPortAddress[portAddress] = universes[i];
+        }
+
+        try {
+            this.target = new InetSocketAddress(resolveDestination(), config.getPort());
+        } catch (IOException e) {
+            throw new ArtNetException("Unable to determine the destination");
+        }
+    }
+
+    /** Set the next frame of a universe, called from any thread
+     *
+     * The frame is copied, it is sent on the next tick if it differs from the previous one. Frames
+     * that are replaced before the next tick are never sent.
+     *
+     * @param portAddress Port-Address of a configured universe
+     * @param dmx 512 slots
+     */
+    public void update(int portAddress, byte[] dmx) {
+        if (dmx.length != 512) {
+            throw new IllegalArgumentException("Array length must be 512");
+        }
+        Universe universe = portAddress >= 0 && portAddress < byPortAddress.length ? byPortAddress[portAddress] : null;
+        if (universe == null) {
+            throw new IllegalArgumentException("Universe " + portAddress + " is not transmitted");
+        }
+
+        synchronized (universe) {
+            if (Arrays.equals(dmx, universe.staging)) {
+                // Unchanged, the keep-alive resends it
+                return;
+            }
+            System.arraycopy(dmx, 0, universe.staging, 0, dmx.length);
+            universe.dirty = true;
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            throw new ArtNetException("Transmitter already started");
+        }
+
+        DatagramChannel channel = DatagramChannel.open();
+        channel.socket().setBroadcast(true);
+        DatagramChannel replyChannel = null;
+        if (nodeRegistry != null) {
+            replyChannel = DatagramChannel.open();
+            try {
+                replyChannel.bind(new InetSocketAddress(config.getReplyPort()));
+            } catch (IOException e) {
+                replyChannel.close();
+                channel.close();
+                throw new ArtNetException("Unable to receive poll replies on port " + config.getReplyPort()
+                        + ", use the subscriptions of the node that owns it: " + e.getMessage());
+            }
+            replyChannel.configureBlocking(false);
+            nodeRegistry.start(target.toString());
+        }
+
+        DatagramChannel replies = replyChannel;
+        stopping = false;
+        thread = new Thread(() -> {
+            try (DatagramChannel c = channel; DatagramChannel r = replies) {
+                transmit(c, r);
+            } catch (Exception e) {
+                log.error("Exception in transmit function", e);
+            }
+        });
+        thread.setName("ArtDmxTransmit-" + target);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Transmitting {} universes to {} at {}Hz", universes.length, target, config.getRefreshRate());
+    }
+
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        stopping = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(5000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+        if (nodeRegistry != null) {
+            nodeRegistry.stop(1000L);
+        }
+        log.info("Transmitter to {} stopped, {} frames sent", target, sentFrames);
+    }
+
+    private void transmit(DatagramChannel channel, DatagramChannel replyChannel) {
+        ByteBuffer reply = replyChannel != null ? ByteBuffer.allocate(1024) : null;
+        long next = System.nanoTime();
+        long rateStart = next;
+        long rateFrames = sentFrames;
+        long nextPoll = next;
+
+        while (!stopping) {
+            next += periodNanos;
+            long now;
+            while ((now = System.nanoTime()) - next < 0 && !stopping) {
+                LockSupport.parkNanos(next - now);
+            }
+            if (stopping) {
+                return;
+            }
+
+            long lateness = now - next;
+            tickLateness.record(lateness);
+            if (lateness > periodNanos) {
+                // Missed at least a whole tick, continue from now instead of sending a burst to catch up
+                lateTicks++;
+                next = now;
+            }
+
+            if (replyChannel != null) {
+                receivePollReplies(replyChannel, reply, now);
+            }
+
+            if (subscriptions != null && now - nextPoll >= 0) {
+                // Nodes answer with an ArtPollReply, which updates the subscriptions
+                sendPacket(channel, poll.clear(), target);
+                nextPoll = now + pollIntervalNanos;
+            }
+
+            for (Universe universe : universes) {
+                send(channel, universe, now);
+            }
+
+            if (now - rateStart >= RATE_INTERVAL) {
+                long frames = sentFrames;
+                framesPerSecond = (frames - rateFrames) * 1_000_000_000.0 / (now - rateStart);
+                rateStart = now;
+                rateFrames = frames;
+            }
+        }
+    }
+
+    private void receivePollReplies(DatagramChannel replyChannel, ByteBuffer buffer, long now) {
+        try {
+            while (replyChannel.receive(buffer.clear()) != null) {
+                // Other traffic on the port, such as our own broadcasts, is dropped before parsing
+                if (buffer.position() < 12
+                        || ArtNetPacket.readUint16Msb(buffer.array(), 8) != ArtNetOpCode.ARTNET_OP_POLLREPLY.getOpCode()) {
+                    continue;
+                }
+                try {
+                    ArtNetPacket packet = ArtNetPacket.parseBytes(Arrays.copyOf(buffer.array(), buffer.position()));
+                    if (packet instanceof ArtPollReply) {
+                        nodeRegistry.update((ArtPollReply) packet, now);
+                        pollReplies++;
+                    }
+                } catch (ArtNetException e) {
+                    log.debug("Invalid poll reply received: {}", e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Failed to receive poll replies: {}", e.getMessage());
+        }
+    }
+
+    private void send(DatagramChannel channel, Universe universe, long now) {
+        boolean changed;
+        synchronized (universe) {
+            changed = universe.dirty;
+            if (changed) {
+                universe.encoder.setDmx(universe.staging);
+                universe.dirty = false;
+            }
+        }
+
+        if (!changed) {
+            if (universe.lastSentNanos != 0 && now - universe.lastSentNanos < keepAliveNanos) {
+                return;
+            }
+            keepAliveFrames++;
+        }
+
+        ByteBuffer packet = universe.encoder.next();
+        InetSocketAddress[] nodes = subscriptions == null ? NO_NODES : subscriptions.subscribers(universe.encoder.getPortAddress());
+        if (nodes.length == 0) {
+            sendPacket(channel, packet, target);
+            broadcastPackets++;
+        } else {
+            for (InetSocketAddress node : nodes) {
+                sendPacket(channel, packet.clear(), node);
+            }
+            unicastPackets += nodes.length;
+        }
+        universe.lastSentNanos = now;
+        sentFrames++;
+    }
+
+    private void sendPacket(DatagramChannel channel, ByteBuffer packet, InetSocketAddress destination) {
+        try {
+            channel.send(packet, destination);
+        } catch (IOException e) {
+            sendFailures++;
+            log.debug("Failed to send to {}: {}", destination, e.getMessage());
+        }
+    }
+
+    private InetAddress resolveDestination() throws UnknownHostException, SocketException {
+        if (config.getDestination() != null) {
+            return InetAddress.getByName(config.getDestination());
+        }
+
+        NetworkInterface networkInterface = NetworkInterface.getByName(config.getNetworkInterface());
+        if (networkInterface == null) {
+            throw new ArtNetException("Unknown interface " + config.getNetworkInterface());
+        }
+        for (InterfaceAddress address : networkInterface.getInterfaceAddresses()) {
+            if (address.getAddress() instanceof Inet4Address) {
+                return address.getBroadcast() != null ? address.getBroadcast() : address.getAddress();
+            }
+        }
+        throw new ArtNetException("Interface " + config.getNetworkInterface() + " has no IPv4 address");
+    }
+
+    public InetSocketAddress getTarget() {
+        return target;
+    }
+
+    /** Number of frames sent, including keep-alives, a frame unicast to several nodes counts once
+     *
+     * @return sent frames
+     */
+    public long getSentFrames() {
+        return sentFrames;
+    }
+
+    /** Number of unchanged frames sent again because the keep-alive interval passed
+     *
+     * @return keep-alive frames
+     */
+    public long getKeepAliveFrames() {
+        return keepAliveFrames;
+    }
+
+    /** Number of ArtDmx packets unicast to subscribed nodes
+     *
+     * @return unicast packets
+     */
+    public long getUnicastPackets() {
+        return unicastPackets;
+    }
+
+    /** Number of ArtDmx packets broadcast because their universe had no subscribers
+     *
+     * @return broadcast packets
+     */
+    public long getBroadcastPackets() {
+        return broadcastPackets;
+    }
+
+    /** Subscriptions the frames are unicast with
+     *
+     * @return the table passed in, the own table of a transmitter that receives the poll replies, or null
+     */
+    public SubscriptionTable getSubscriptions() {
+        return subscriptions;
+    }
+
+    /** Number of ArtPollReply packets received on the reply port
+     *
+     * @return received poll replies
+     */
+    public long getPollReplies() {
+        return pollReplies;
+    }
+
+    public long getSendFailures() {
+        return sendFailures;
+    }
+
+    /** Number of ticks that were more than a full period late
+     *
+     * @return late ticks
+     */
+    public long getLateTicks() {
+        return lateTicks;
+    }
+
+    /** Frames sent per second over the last second
+     *
+     * @return measured send rate
+     */
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    /** Lateness of the ticks against their deadline over the recent ticks
+     *
+     * @param percentile between 0 and 100
+     * @return lateness in nanoseconds, or -1 if no tick ran yet
+     */
+    public long getTickJitterNanos(double percentile) {
+        return tickLateness.percentile(percentile);
+    }
+
+    private static class Universe {
+        private final ArtDmxEncoder encoder;
+        private final byte[] staging = new byte[512];
+        private boolean dirty = false;
+        private long lastSentNanos = 0;
+
+        private Universe(int portAddress) {
+            this.encoder = new ArtDmxEncoder(portAddress);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import lombok.Builder;
+import lombok.Singular;
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+@Builder
+public class ArtDmxTransmitterConfig {
+    /**
+     * Interface to send on, frames are broadcast on its network unless a destination is set.
+     */
+    private String networkInterface;
+
+    /**
+     * Address to send the frames to instead of the broadcast address of the interface.
+     */
+    private String destination;
+
+    /**
+     * Port-Addresses of the universes to transmit.
+     */
+    @Singular
+    private List<Integer> universes;
+
+    @Builder.Default
+    private int port = ArtNetNodeConfig.DEFAULT_PORT;
+
+    /**
+     * Ticks per second, a changed frame is sent on the next tick. Art-Net allows at most 44 frames
+     * per second per universe.
+     */
+    @Builder.Default
+    private int refreshRate = 44;
+
+    /**
+     * Time in milliseconds after which an unchanged frame is sent again, so receivers do not time out.
+     */
+    @Builder.Default
+    private long keepAliveMillis = 1000L;
+
+    /**
+     * Time in milliseconds between two ArtPoll broadcasts when frames are unicast to subscribed nodes,
+     * the replies keep the subscriptions up to date.
+     */
+    @Builder.Default
+    private long pollIntervalMillis = 2500L;
+
+    /**
+     * Receive the ArtPollReply packets on the reply port and keep an own subscription table, for a
+     * transmitter without an {@link ArtNetNode} on the same host. The reply port cannot be shared
+     * with a node, with a node on the same host pass {@link ArtNetNode#getSubscriptions()} instead.
+     */
+    @Builder.Default
+    private boolean receivePollReplies = false;
+
+    /**
+     * Port the ArtPollReply packets arrive on, nodes always reply to the Art-Net port.
+     */
+    @Builder.Default
+    private int replyPort = ArtNetNodeConfig.DEFAULT_PORT;
+
+    /**
+     * Time in milliseconds after which a node that stopped replying no longer receives unicast frames.
+     */
+    @Builder.Default
+    private long nodeExpiryMillis = 30000L;
+}
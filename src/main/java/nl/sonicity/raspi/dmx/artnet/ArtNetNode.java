@@ -16,36 +16,103 @@
 package nl.sonicity.raspi.dmx.artnet;
 
 import lombok.extern.slf4j.Slf4j;
-import nl.sonicity.raspi.dmx.artnet.packets.ArtDmx;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtDmxView;
 import nl.sonicity.raspi.dmx.artnet.packets.ArtNetPacket;
 import nl.sonicity.raspi.dmx.artnet.packets.ArtPoll;
 import nl.sonicity.raspi.dmx.artnet.packets.ArtPollReply;
-
+import nl.sonicity.raspi.dmx.artnet.packets.ArtSync;
+import nl.sonicity.raspi.dmx.sacn.E131Data;
+import nl.sonicity.raspi.dmx.sacn.E131DataView;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
-import java.text.SimpleDateFormat;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class ArtNetNode implements ArtNetNodeMBean {
-    private static final int DMX_PORT = 6454;
-
-    private List<DmxHandler> handlers = new ArrayList<>();
+    private static final int PORTS_PER_REPLY = 4;
+    // GoodOutput bit 7, DMX data is being output
+    private static final int GOOD_OUTPUT_DATA = 0x80;
+    private static final int SOCKET_RECEIVE_BUFFER = 1 << 20;
+    private static final long DMX_TIMEOUT = 10000L;
+    private static final long STATISTICS_INTERVAL = 10000L;
+    private static final long SYNC_TIMEOUT = 4000L;
+    private static final long DISPATCH_IDLE_WAIT = TimeUnit.SECONDS.toNanos(1);
+
+    private final DmxRouter router;
+    private final SequenceTracker sequenceTracker = new SequenceTracker();
+    private final SequenceTracker sacnSequenceTracker = SequenceTracker.forSacn();
+    private final DmxMerger merger;
+    private final FrameRing frameRing = new FrameRing();
+    private final NodeMetrics metrics = new NodeMetrics();
+    private final SacnPriorityFilter priorityFilter;
+    private final byte[] sacnSlots = new byte[DmxMerger.SLOTS];
     private Thread handlerThread;
-    private Map<String, ArtNetNodeInfo> discoveredNodes = new ConcurrentHashMap<>();
+    private Thread dispatchThread;
+    private final NodeRegistry nodeRegistry;
 
     private volatile boolean terminate = false;
+    private volatile Selector selector;
+    private ObjectName mbeanName;
+
+    private final LoopStatistics loopStatistics = new LoopStatistics();
+    private volatile long lastDmxSeen;
+    private boolean dmxTimeout;
+    private volatile boolean outputActive = false;
+    private volatile boolean timeoutPending;
+
+    private final SyncBuffer syncBuffer = new SyncBuffer();
+    private volatile boolean syncMode = false;
+    private long lastSyncSeen;
 
     private ArtNetNodeConfig artNetNodeConfig;
 
     private NetworkInterface networkInterface;
     private InterfaceAddress interfaceAddress;
+    private volatile PollReplySender pollReplySender;
+    private final PollReplyScheduler pollReplyScheduler;
 
     public ArtNetNode(ArtNetNodeConfig config) {
+        this(config, new DmxRouter(handlerBudgetNanos(config), config.getHandlerThreads()));
+    }
+
+    /** Node with a router of its own, e.g. one that calls the handlers on the dispatching thread
+     *
+     * @param config node configuration
+     * @param router router the dispatch thread delivers the frames to
+     */
+    ArtNetNode(ArtNetNodeConfig config, DmxRouter router) {
+        for (Integer portAddress : config.getOutputPortAddresses()) {
+            if (portAddress < 0 || portAddress > 0x7FFF) {
+                throw new IllegalArgumentException("Output port should be a valid Port-Address between 0 and 32767");
+            }
+        }
+        if (config.getNodeExpiryMillis() <= 0) {
+            throw new IllegalArgumentException("Node expiry should be positive");
+        }
+        if (config.getPollReplyMaxDelayMillis() < 0 || config.getPollReplyWindowMillis() < 0) {
+            throw new IllegalArgumentException("Poll reply delay and window should not be negative");
+        }
         this.artNetNodeConfig = config;
+        this.merger = new DmxMerger(config.getMergeMode());
+        this.priorityFilter = new SacnPriorityFilter(merger);
+        this.router = router;
+        this.pollReplyScheduler = new PollReplyScheduler(this::sendArtPollReply,
+                TimeUnit.MILLISECONDS.toNanos(config.getPollReplyWindowMillis()),
+                TimeUnit.MILLISECONDS.toNanos(config.getPollReplyMaxDelayMillis()));
+        this.nodeRegistry = new NodeRegistry(TimeUnit.MILLISECONDS.toNanos(config.getNodeExpiryMillis()),
+                new SubscriptionTable(config.getPort()));
 
         try {
             configureNetworkFromInterfaceName(artNetNodeConfig.getNetworkInterface());
@@ -55,13 +122,21 @@ public class ArtNetNode implements ArtNetNodeMBean {
 
     }
 
+    private static long handlerBudgetNanos(ArtNetNodeConfig config) {
+        if (config.getHandlerBudgetMillis() <= 0) {
+            throw new IllegalArgumentException("Handler budget should be positive");
+        }
+        return TimeUnit.MILLISECONDS.toNanos(config.getHandlerBudgetMillis());
+    }
+
     public void start() {
         if (handlerThread != null && handlerThread.isAlive())  {
             throw new ArtNetException("Node already started");
         }
-        log.info("Configuring ArtNetNode with interface:{}, address:{}, network:{}, subnet:{}",
+        registerMBean();
+        log.info("Configuring ArtNetNode with interface:{}, address:{}, output ports:{}",
                 networkInterface.getDisplayName(), interfaceAddress.getAddress().getHostAddress(),
-                artNetNodeConfig.getNetwork(), artNetNodeConfig.getSubnet());
+                artNetNodeConfig.getOutputPortAddresses().size());
         log.info("Starting ArtNetNode on {}", interfaceAddress.toString());
         Runnable artNetRunner = () -> {
             try {
@@ -70,6 +145,21 @@ public class ArtNetNode implements ArtNetNodeMBean {
                 log.error("Exception in handler function", e);
             }
         };
+        router.start(interfaceAddress.toString());
+        pollReplyScheduler.start(interfaceAddress.toString());
+        nodeRegistry.start(interfaceAddress.toString());
+        Runnable dispatchRunner = () -> {
+            try {
+                dispatcher();
+            } catch (Exception e) {
+                log.error("Exception in dispatch function", e);
+            }
+        };
+        dispatchThread = new Thread(dispatchRunner);
+        dispatchThread.setName("ArtNetDispatch-" + interfaceAddress.toString());
+        dispatchThread.setDaemon(true);
+        dispatchThread.start();
+
         handlerThread = new Thread(artNetRunner);
         handlerThread.setName("ArtNetHandler-" + interfaceAddress.toString());
         handlerThread.setDaemon(true);
@@ -81,165 +171,621 @@ public class ArtNetNode implements ArtNetNodeMBean {
         if (handlerThread != null && handlerThread.isAlive()) {
             log.info("Stopping ArtNetNode on {}", interfaceAddress.toString());
             terminate = true;
+            Selector receiveSelector = selector;
+            if (receiveSelector != null) {
+                receiveSelector.wakeup();
+            }
+            frameRing.wakeup();
 
             try {
                 handlerThread.join(5000L);
+                dispatchThread.join(5000L);
             } catch (InterruptedException e) {
                 log.error("Thread was interrupted while waiting for it to stop", e);
                 Thread.currentThread().interrupt();
             }
 
+            pollReplyScheduler.stop(5000L);
+            nodeRegistry.stop(5000L);
+
             log.info("Sending shutdown signal to handlers");
-            handlers.forEach(DmxHandler::shutdown);
+            router.shutdown();
+            unregisterMBean();
 
             handlerThread = null;
+            dispatchThread = null;
             terminate  = false;
             log.info("ArtNetNode on {} stopped", interfaceAddress.toString());
         }
     }
 
     public Collection<DmxHandler> getHandlers() {
-        return handlers;
+        return Collections.unmodifiableList(router.getHandlers());
+    }
+
+    public void addHandler(DmxHandler handler) {
+        router.add(handler);
+    }
+
+    /** Add a handler with its own time budget instead of the configured default
+     *
+     * @param handler handler to add
+     * @param budgetMillis maximum time a single call to the handler should take
+     */
+    public void addHandler(DmxHandler handler, long budgetMillis) {
+        router.add(handler, TimeUnit.MILLISECONDS.toNanos(budgetMillis));
+    }
+
+    public boolean removeHandler(DmxHandler handler) {
+        return router.remove(handler);
+    }
+
+    @Override
+    public List<ArtNetNodeInfo> getDiscoveredNodes() {
+        return nodeRegistry.getNodes(System.nanoTime());
+    }
+
+    /** Which discovered nodes output which universe, kept up to date as poll replies arrive
+     *
+     * @return subscription table to hand to an {@link ArtDmxTransmitter}
+     */
+    public SubscriptionTable getSubscriptions() {
+        return nodeRegistry.getSubscriptions();
+    }
+
+    /** The discovered nodes that output a universe
+     *
+     * @param portAddress 15 bit Port-Address of the universe
+     * @return nodes with an output port for the Port-Address
+     */
+    public List<ArtNetNodeInfo> getDiscoveredNodes(int portAddress) {
+        return nodeRegistry.getNodesForPortAddress(portAddress, System.nanoTime());
+    }
+
+    @Override
+    public Map<String, Double> getPacketsPerSecond() {
+        return metrics.getPacketsPerSecond();
+    }
+
+    @Override
+    public Map<String, Long> getPacketCounts() {
+        return metrics.getPacketCounts();
+    }
+
+    @Override
+    public long getParseFailures() {
+        return metrics.getParseFailures();
+    }
+
+    @Override
+    public Map<Integer, Long> getFramesPerUniverse() {
+        return metrics.getFramesPerUniverse();
+    }
+
+    @Override
+    public long getLastDmxAgeMillis() {
+        return metrics.getLastFrameAge(System.currentTimeMillis());
+    }
+
+    @Override
+    public long getDispatchedFrames() {
+        return metrics.getDispatchedFrames();
+    }
+
+    @Override
+    public double getAverageDispatchNanos() {
+        return metrics.getAverageDispatchNanos();
+    }
+
+    @Override
+    public long getMaxHandlerCallNanos() {
+        return router.getMaxHandlerCallNanos();
+    }
+
+    @Override
+    public long getHandlerSkippedFrames() {
+        return router.getHandlerSkippedFrames();
+    }
+
+    @Override
+    public double getWakeupsPerSecond() {
+        return loopStatistics.getWakeupsPerSecond();
+    }
+
+    @Override
+    public double getReceiveThreadCpuLoad() {
+        return loopStatistics.getCpuLoad();
+    }
+
+    @Override
+    public long getReorderedFrames() {
+        return sequenceTracker.getReorderedFrames() + sacnSequenceTracker.getReorderedFrames();
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return sequenceTracker.getDroppedFrames() + sacnSequenceTracker.getDroppedFrames();
+    }
+
+    @Override
+    public String getMergeMode() {
+        return merger.getMergeMode().name();
+    }
+
+    @Override
+    public long getMergeRejectedFrames() {
+        return merger.getRejectedFrames();
+    }
+
+    @Override
+    public long getSacnOutrankedFrames() {
+        return priorityFilter.getOutrankedFrames();
+    }
+
+    @Override
+    public long getOverwrittenFrames() {
+        return frameRing.getOverwrittenFrames();
+    }
+
+    @Override
+    public String[] getQuarantinedHandlers() {
+        return router.getQuarantinedHandlers().toArray(new String[0]);
     }
 
-    public Collection<ArtNetNodeInfo> getDiscoveredNodes() {
-        return discoveredNodes.values();
+    @Override
+    public long getHandlerOverruns() {
+        return router.getHandlerOverruns();
+    }
+
+    @Override
+    public boolean isSyncMode() {
+        return syncMode;
+    }
+
+    @Override
+    public long getSyncLatencyNanos() {
+        return syncBuffer.getLastCommitLatency();
+    }
+
+    @Override
+    public long getMaxSyncLatencyNanos() {
+        return syncBuffer.getMaxCommitLatency();
+    }
+
+    @Override
+    public long getPollReplies() {
+        return pollReplyScheduler.getSentReplies();
+    }
+
+    @Override
+    public long getSuppressedPollReplies() {
+        return pollReplyScheduler.getSuppressedReplies();
     }
 
     private void handler() throws IOException {
-        try (DatagramChannel server = DatagramChannel.open()) {
-            InetSocketAddress sAddr = new InetSocketAddress("0.0.0.0", DMX_PORT);
+        try (DatagramChannel server = DatagramChannel.open(); Selector receiveSelector = Selector.open();
+             SacnChannels sacnChannels = openSacnChannels();
+             PollReplySender replySender = new PollReplySender(this::generateArtPollReplies, pollReplyTargets())) {
+            replySender.open();
+            outputActive = false;
+            pollReplySender = replySender;
+
+            InetSocketAddress sAddr = new InetSocketAddress("0.0.0.0", artNetNodeConfig.getPort());
+            server.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_RECEIVE_BUFFER);
             server.bind(sAddr);
             server.configureBlocking(false);
+            server.register(receiveSelector, SelectionKey.OP_READ);
+            sacnChannels.register(receiveSelector);
+            selector = receiveSelector;
 
             // According to the spec, start off with ArtPollReply broadcast
             sendArtPollReply();
 
+            DatagramTap capture = artNetNodeConfig.getCapture();
             ByteBuffer buffer = ByteBuffer.allocate(8196);
-            var lastDmxSeen = System.currentTimeMillis();
-            var timeout = false;
+            ArtDmxView dmxView = new ArtDmxView(buffer);
+            E131DataView sacnView = new E131DataView(buffer);
+            lastDmxSeen = System.currentTimeMillis();
+            dmxTimeout = false;
+            syncMode = false;
+
+            long statisticsDeadline = System.currentTimeMillis() + STATISTICS_INTERVAL;
+            loopStatistics.start(System.nanoTime(), LoopStatistics.currentThreadCpuTime());
+            metrics.sample(System.nanoTime());
 
             while (!terminate) {
-                long loopStart = System.currentTimeMillis();
+                // Sleep until a datagram arrives or the first timer deadline expires
+                long now = System.currentTimeMillis();
+                long deadline = dmxTimeout ? statisticsDeadline : Math.min(statisticsDeadline, lastDmxSeen + DMX_TIMEOUT);
+                if (syncMode) {
+                    deadline = Math.min(deadline, lastSyncSeen + SYNC_TIMEOUT);
+                }
+                receiveSelector.select(Math.max(1L, deadline - now));
+                receiveSelector.selectedKeys().clear();
+                loopStatistics.wakeup();
 
-                SocketAddress source = server.receive(buffer);
-                if (source != null) {
-                    ArtNetPacket artNetPacket;
+                SocketAddress source;
+                while (!terminate && (source = server.receive(buffer)) != null) {
+                    buffer.flip();
                     try {
-                        artNetPacket = ArtNetPacket.parseBytes(Arrays.copyOf(buffer.array(), buffer.position()));
-                    } catch (ArtNetException e) {
-                        log.warn("Invalid packet received from {}: {}", source.toString(), e.getMessage());
-                        continue;
+                        if (capture != null) {
+                            capture.datagram(System.nanoTime(), (InetSocketAddress) source, buffer);
+                        }
+                        handlePacket(source, buffer, dmxView);
                     } finally {
                         buffer.clear();
                     }
-
-                    if (artNetPacket == null) {
-                        log.warn("Received something, but i don't recognize it");
-                        continue;
-                    }
-
-                    if (artNetPacket instanceof ArtPoll) {
-                        log.trace("Poll received from {}", source.toString());
-                        sendArtPollReply();
-                    }
-
-                    if (artNetPacket instanceof ArtPollReply) {
-                        log.trace("PollReply received from {}", source.toString());
-                        ArtPollReply artPollReply = (ArtPollReply) artNetPacket;
-                        handleArtPollReply(artPollReply);
-                    }
-
-                    if (artNetPacket instanceof ArtDmx) {
-                        ArtDmx dmxPacket = (ArtDmx) artNetPacket;
-                        log.trace("DMX data received for {}:{}:{}, {} bytes", dmxPacket.getNetwork(), dmxPacket.getSubnet(), dmxPacket.getUniverse(), dmxPacket.getDmxLength());
-                        if (dmxPacket.getNetwork() == artNetNodeConfig.getNetwork() && dmxPacket.getSubnet() == artNetNodeConfig.getSubnet()) {
-                            lastDmxSeen = System.currentTimeMillis();
-                            timeout = false;
-                            handleDmxData(dmxPacket);
+                }
+                for (DatagramChannel sacnChannel : sacnChannels.getChannels()) {
+                    while (!terminate && (source = sacnChannel.receive(buffer)) != null) {
+                        buffer.flip();
+                        try {
+                            if (capture != null) {
+                                capture.datagram(System.nanoTime(), (InetSocketAddress) source, buffer);
+                            }
+                            handleSacnPacket(source, buffer, sacnView);
+                        } finally {
+                            buffer.clear();
                         }
                     }
                 }
 
-                if (lastDmxSeen + 10000 < System.currentTimeMillis() && !timeout) {
+                now = System.currentTimeMillis();
+                if (syncMode && lastSyncSeen + SYNC_TIMEOUT <= now) {
+                    log.warn("No ArtSync received for 4 seconds, switching to immediate output");
+                    syncMode = false;
+                    syncBuffer.flush(frameRing);
+                }
+
+                if (lastDmxSeen + DMX_TIMEOUT <= now && !dmxTimeout) {
                     // No DMX data for 10 seconds
                     log.warn("No DMX data received for 10 seconds");
-                    timeout = true;
-                    handlers.forEach(DmxHandler::timeout);
+                    dmxTimeout = true;
+                    setOutputActive(false);
+                    timeoutPending = true;
+                    frameRing.wakeup();
                 }
 
-                long loopEnd = System.currentTimeMillis();
-                if (loopEnd + 500 < loopStart) {
-                    try {
-                        Thread.sleep(loopEnd + 500 - loopStart);
-                    } catch (InterruptedException e) {
-                        log.error("End-of-loop sleep interrupted");
-                        Thread.currentThread().interrupt();
-                    }
+                if (statisticsDeadline <= now) {
+                    loopStatistics.sample(System.nanoTime(), LoopStatistics.currentThreadCpuTime());
+                    metrics.sample(System.nanoTime());
+                    log.debug("Receive loop: {} wakeups/s, {} CPU",
+                            String.format("%.1f", loopStatistics.getWakeupsPerSecond()),
+                            String.format("%.2f%%", loopStatistics.getCpuLoad() * 100));
+                    statisticsDeadline = now + STATISTICS_INTERVAL;
                 }
             }
+        } finally {
+            selector = null;
+            pollReplySender = null;
         }
     }
 
-    private void sendArtPollReply() throws IOException {
-        try (DatagramChannel replyChannel = DatagramChannel.open()) {
-            replyChannel.socket().setBroadcast(true);
-            ArtPollReply artPollReply = generateArtPollReply();
+    private void dispatcher() {
+        // Only this thread feeds the handlers, a slow handler makes the ring skip frames instead of
+        // holding up the receive thread
+        while (!terminate) {
+            frameRing.await(DISPATCH_IDLE_WAIT);
+            dispatchPending();
+        }
+    }
+
+    /** Pass pending timeouts and frames on to the handlers, called from the dispatch thread only
+     *
+     * @return number of frames dispatched
+     */
+    int dispatchPending() {
+        if (timeoutPending) {
+            timeoutPending = false;
+            // Handlers reset their outputs, the next frame is delivered in full
+            router.timeout();
+        }
+
+        long start = System.nanoTime();
+        int frames = frameRing.drain(router);
+        // After the ring, the frames of a commit are newer than frames published before the ArtSync
+        frames += syncBuffer.apply(router);
+        if (frames > 0) {
+            metrics.dispatched(frames, System.nanoTime() - start);
+        }
+        return frames;
+    }
+
+    void handlePacket(SocketAddress source, ByteBuffer buffer, ArtDmxView dmxView) {
+        if (ArtDmxView.isArtDmx(buffer)) {
+            // Fast path, the packet is handled directly from the receive buffer
+            metrics.packet(ArtNetOpCode.ARTNET_OP_DMX);
+            try {
+                dmxView.wrap();
+            } catch (ArtNetException e) {
+                metrics.parseFailure();
+                log.warn("Invalid packet received from {}: {}", source.toString(), e.getMessage());
+                return;
+            }
+
+            if (log.isTraceEnabled()) {
+                log.trace("DMX data received for {}:{}:{}, {} bytes", dmxView.getNetwork(), dmxView.getSubnet(), dmxView.getUniverse(), dmxView.getDmxLength());
+            }
+            int portAddress = dmxView.getPortAddress();
+            if (router.routesFor(portAddress).length == 0) {
+                // Nobody listens to this universe
+                return;
+            }
+
+            // Inet4Address hashes to its 32 bit address, so this does not allocate
+            int sourceId = ((InetSocketAddress) source).getAddress().hashCode();
+            long now = System.nanoTime();
+            if (!sequenceTracker.accept(portAddress, sourceId, dmxView.getSequence(), now)) {
+                log.trace("Dropped out of order frame from {}", source);
+                return;
+            }
+
+            byte[] frame = merger.merge(portAddress, sourceId, dmxView, now);
+            if (frame == null) {
+                log.trace("Dropped frame from {}, universe already has the maximum number of sources", source);
+                return;
+            }
 
+            accepted(portAddress, frame);
+            return;
+        }
 
-            // Send on local network broadcast
-            ByteBuffer reply = ByteBuffer.wrap(artPollReply.toBytes());
-            replyChannel.send(reply, new InetSocketAddress(interfaceAddress.getBroadcast(), DMX_PORT));
+        if (buffer.limit() >= 10) {
+            metrics.packet(ArtNetOpCode.fromInt(ArtNetPacket.readUint16Msb(buffer.array(), 8)));
+        }
 
-            // Send on wire broadcast
-            reply = ByteBuffer.wrap(artPollReply.toBytes());
-            replyChannel.send(reply, new InetSocketAddress(InetAddress.getByName("255.255.255.255"), DMX_PORT));
+        ArtNetPacket artNetPacket;
+        try {
+            artNetPacket = ArtNetPacket.parseBytes(Arrays.copyOf(buffer.array(), buffer.limit()));
+        } catch (ArtNetException e) {
+            metrics.parseFailure();
+            log.warn("Invalid packet received from {}: {}", source.toString(), e.getMessage());
+            return;
+        }
+
+        if (artNetPacket == null) {
+            log.trace("Received something, but i don't recognize it");
+            return;
+        }
+
+        if (artNetPacket instanceof ArtPoll) {
+            log.trace("Poll received from {}", source.toString());
+            // Answered from the reply scheduler, polls in a burst share one reply
+            pollReplyScheduler.request();
+        }
+
+        if (artNetPacket instanceof ArtSync) {
+            handleArtSync();
+        }
+
+        if (artNetPacket instanceof ArtPollReply) {
+            log.trace("PollReply received from {}", source.toString());
+            ArtPollReply artPollReply = (ArtPollReply) artNetPacket;
+            handleArtPollReply(artPollReply);
         }
     }
 
-    private void handleArtPollReply(ArtPollReply artPollReply) {
-        SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss,SSS", Locale.getDefault());
-        GregorianCalendar calendar = new GregorianCalendar(TimeZone.getDefault());
-        calendar.setTimeInMillis(System.currentTimeMillis());
-        String lastSeen = sdf.format(calendar.getTime());
+    /** Handle a datagram received on the sACN channel, the E1.31 counterpart of the ArtDmx fast path
+     *
+     * @param source sender of the datagram
+     * @param buffer receive buffer, flipped
+     * @param sacnView view bound to the buffer
+     */
+    void handleSacnPacket(SocketAddress source, ByteBuffer buffer, E131DataView sacnView) {
+        if (!E131DataView.isE131Data(buffer)) {
+            log.trace("Received something on the sACN port, but i don't recognize it");
+            return;
+        }
 
-        if (discoveredNodes.containsKey(artPollReply.getShortName())) {
-            discoveredNodes.get(artPollReply.getShortName()).setLastSeen(lastSeen);
+        metrics.sacnPacket();
+        try {
+            sacnView.wrap();
+        } catch (ArtNetException e) {
+            metrics.parseFailure();
+            log.warn("Invalid sACN packet received from {}: {}", source.toString(), e.getMessage());
+            return;
+        }
+
+        // sACN universe 1 is Port-Address 0
+        int portAddress = sacnView.getUniverse() - 1;
+        if (sacnView.isPreview() || portAddress >= DmxRouter.PORT_ADDRESSES || router.routesFor(portAddress).length == 0) {
+            return;
+        }
+
+        int sourceId = sacnView.getSourceId();
+        if (sacnView.isStreamTerminated()) {
+            log.debug("sACN source {} terminated universe {}", source, sacnView.getUniverse());
+            priorityFilter.terminate(portAddress, sourceId);
+            return;
+        }
+
+        if (sacnView.getStartCode() != 0) {
+            // Alternate START codes, e.g. per address priority, are not DMX levels
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (!priorityFilter.accept(portAddress, sourceId, sacnView.getPriority(), now)) {
+            log.trace("Dropped frame from {}, a source with a higher priority is active", source);
+            return;
+        }
+
+        if (!sacnSequenceTracker.accept(portAddress, sourceId, sacnView.getSequence(), now)) {
+            log.trace("Dropped out of order frame from {}", source);
+            return;
+        }
+
+        sacnView.copySlots(0, sacnSlots, 0, sacnSlots.length);
+        byte[] frame = merger.merge(portAddress, sourceId, sacnSlots, now);
+        if (frame == null) {
+            log.trace("Dropped frame from {}, universe already has the maximum number of sources", source);
+            return;
+        }
+
+        accepted(portAddress, frame);
+    }
+
+    private void accepted(int portAddress, byte[] frame) {
+        lastDmxSeen = System.currentTimeMillis();
+        dmxTimeout = false;
+        if (!outputActive) {
+            setOutputActive(true);
+        }
+        metrics.frame(portAddress, lastDmxSeen);
+        if (syncMode) {
+            // Hold the frame until the next ArtSync
+            syncBuffer.store(portAddress, frame);
         } else {
-            log.info("First poll reply seen from \"{}\"", artPollReply.getShortName());
-            discoveredNodes.put(artPollReply.getShortName(), new ArtNetNodeInfo(artPollReply.getShortName(), lastSeen));
+            frameRing.publish(portAddress, frame);
         }
-        new ArtNetNodeInfo(artPollReply.getShortName(), lastSeen);
     }
 
-    private ArtPollReply generateArtPollReply() throws SocketException {
-        return new ArtPollReply.Builder()
-                .firmwareVersion(0)
-                .shortName("ArtNetNode")
-                .longName("ArnNetNode")
-                .ipAddress((Inet4Address) interfaceAddress.getAddress())
-                .netswitch(artNetNodeConfig.getNetwork())
-                .subswitch(artNetNodeConfig.getSubnet())
-                .macAddress(networkInterface.getHardwareAddress())
-                .port(0, false, true, 0)
-                .swIn(0, artNetNodeConfig.getUniverse())
-                .build();
+    private SacnChannels openSacnChannels() throws IOException {
+        if (!artNetNodeConfig.isSacn()) {
+            return SacnChannels.none();
+        }
+
+        // sACN universe N is Port-Address N - 1
+        List<Integer> universes = new ArrayList<>();
+        for (int portAddress : artNetNodeConfig.getOutputPortAddresses()) {
+            if (portAddress + 1 <= E131Data.MAX_UNIVERSE) {
+                universes.add(portAddress + 1);
+            }
+        }
+        SacnChannels channels = SacnChannels.open(artNetNodeConfig.getSacnPort(), universes, networkInterface);
+        log.info("Receiving sACN on port {} for {} universes", artNetNodeConfig.getSacnPort(), universes.size());
+        return channels;
     }
 
-    private void handleDmxData(ArtDmx dmxPacket) {
-        for (DmxHandler handlerEntry : handlers) {
-            if (handlerEntry.getUniverse() != dmxPacket.getUniverse()) {
-                return;
+    private void handleArtSync() {
+        long arrival = System.nanoTime();
+        if (!syncMode) {
+            log.info("ArtSync received, switching to synchronous output");
+            syncMode = true;
+        }
+        lastSyncSeen = System.currentTimeMillis();
+
+        int universes = syncBuffer.commit(arrival);
+        // The dispatch thread routes the commit as a whole
+        frameRing.wakeup();
+        log.trace("ArtSync committed {} universes", universes);
+    }
+
+    private void sendArtPollReply() {
+        PollReplySender replySender = pollReplySender;
+        if (replySender == null) {
+            return;
+        }
+
+        try {
+            replySender.send();
+        } catch (IOException e) {
+            log.warn("Failed to send ArtPollReply: {}", e.getMessage());
+        }
+    }
+
+    private List<InetSocketAddress> pollReplyTargets() throws UnknownHostException {
+        InetAddress broadcast = interfaceAddress.getBroadcast() != null
+                ? interfaceAddress.getBroadcast() : interfaceAddress.getAddress();
+        InetAddress wireBroadcast = InetAddress.getByAddress(new byte[] { (byte) 255, (byte) 255, (byte) 255, (byte) 255 });
+
+        // Local network broadcast and wire broadcast
+        return List.of(new InetSocketAddress(broadcast, artNetNodeConfig.getPort()),
+                new InetSocketAddress(wireBroadcast, artNetNodeConfig.getPort()));
+    }
+
+    private void setOutputActive(boolean active) {
+        outputActive = active;
+        // The output status is part of the poll reply
+        PollReplySender replySender = pollReplySender;
+        if (replySender != null) {
+            replySender.invalidate();
+        }
+    }
+
+    private void handleArtPollReply(ArtPollReply artPollReply) {
+        nodeRegistry.update(artPollReply, System.nanoTime());
+    }
+
+    List<ArtPollReply> generateArtPollReplies() throws SocketException {
+        // Ports in a single reply share the network and subnet switch
+        Map<Integer, List<Integer>> portsBySwitch = new LinkedHashMap<>();
+        for (Integer portAddress : artNetNodeConfig.getOutputPortAddresses()) {
+            portsBySwitch.computeIfAbsent(portAddress >> 4, k -> new ArrayList<>()).add(portAddress);
+        }
+
+        byte[] macAddress = networkInterface.getHardwareAddress();
+        if (macAddress == null) {
+            // Loopback and virtual interfaces have no hardware address
+            macAddress = new byte[6];
+        }
+
+        List<ArtPollReply> replies = new ArrayList<>();
+        for (List<Integer> ports : portsBySwitch.values()) {
+            for (int first = 0; first < ports.size(); first += PORTS_PER_REPLY) {
+                List<Integer> replyPorts = ports.subList(first, Math.min(first + PORTS_PER_REPLY, ports.size()));
+                int switches = replyPorts.get(0) >> 4;
+
+                ArtPollReply.Builder builder = new ArtPollReply.Builder()
+                        .firmwareVersion(0)
+                        .shortName("ArtNetNode")
+                        .longName("ArnNetNode")
+                        .ipAddress((Inet4Address) interfaceAddress.getAddress())
+                        .bindIp((Inet4Address) interfaceAddress.getAddress())
+                        .bindIndex(replies.size() + 1)
+                        .netswitch(switches >> 4)
+                        .subswitch(switches & 0x0F)
+                        .macAddress(macAddress)
+                        .numPorts(replyPorts.size());
+                for (int port = 0; port < replyPorts.size(); port++) {
+                    builder.port(port, false, true, 0)
+                            .swOut(port, replyPorts.get(port) & 0x0F)
+                            .goodOutput(port, outputActive ? GOOD_OUTPUT_DATA : 0);
+                }
+                replies.add(builder.build());
             }
+        }
+        return replies;
+    }
 
-            int startPosition = handlerEntry.getAddress();
-            int length = handlerEntry.getWidth();
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName(networkInterface.getName(), artNetNodeConfig.getPort());
+            // Only one node can receive on an interface and port, a registration under this name belongs to a live node
+            if (server.isRegistered(name)) {
+                log.warn("Another ArtNetNode is registered with JMX as {}, this node is not registered", name);
+                return;
+            }
+            // Registered as an MXBean, so the maps and node list show up as open data in any JMX client
+            server.registerMBean(new StandardMBean(this, ArtNetNodeMBean.class, true), name);
+            mbeanName = name;
+        } catch (JMException e) {
+            log.warn("Failed to register ArtNetNode with JMX: {}", e.getMessage());
+        }
+    }
 
-            // DMX addresses are from 1 to 512, offset by -1 for array indices
-            int from = startPosition - 1;
-            byte[] dataPart = Arrays.copyOfRange(dmxPacket.getDmxData(), from, from + length);
-            handlerEntry.onDmx(dataPart);
+    private void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        } catch (JMException e) {
+            log.warn("Failed to unregister ArtNetNode from JMX: {}", e.getMessage());
         }
+        mbeanName = null;
+    }
+
+    /** JMX name of the node that receives on an interface and port
+     *
+     * @param networkInterface name of the interface
+     * @param port UDP port
+     * @return object name the node is registered under while it runs
+     * @throws MalformedObjectNameException if the interface name cannot be quoted
+     */
+    static ObjectName objectName(String networkInterface, int port) throws MalformedObjectNameException {
+        return new ObjectName("nl.sonicity.raspi.dmx:type=ArtNetNode,name=" + ObjectName.quote(networkInterface) + ",port=" + port);
     }
 
     private void configureNetworkFromInterfaceName(String network) {
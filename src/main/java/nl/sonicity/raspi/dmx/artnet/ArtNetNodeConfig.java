@@ -16,13 +16,95 @@
 package nl.sonicity.raspi.dmx.artnet;
 
 import lombok.Builder;
+import lombok.Singular;
 import lombok.Value;
+import nl.sonicity.raspi.dmx.Util;
+import nl.sonicity.raspi.dmx.sacn.E131Data;
+
+import java.util.Collections;
+import java.util.List;
 
 @Value
 @Builder
 public class ArtNetNodeConfig {
+    public static final int DEFAULT_PORT = 6454;
+
     private String networkInterface;
     private int universe;
     private int subnet;
     private int network;
+
+    /**
+     * Port-Addresses of the output ports of this node. When empty the node has a single
+     * output port for network, subnet and universe.
+     */
+    @Singular
+    private List<Integer> outputPorts;
+
+    @Builder.Default
+    private int port = DEFAULT_PORT;
+
+    @Builder.Default
+    private MergeMode mergeMode = MergeMode.HTP;
+
+    /**
+     * Time budget in milliseconds for a single call to a handler. Handlers that keep exceeding
+     * their budget are quarantined.
+     */
+    @Builder.Default
+    private long handlerBudgetMillis = 20L;
+
+    /**
+     * Number of threads that call the handlers, shared by all handlers of the node.
+     */
+    @Builder.Default
+    private int handlerThreads = HandlerPool.DEFAULT_THREADS;
+
+    /**
+     * Maximum random delay in milliseconds before an ArtPoll is answered, spreads the replies
+     * of the nodes on the network.
+     */
+    @Builder.Default
+    private long pollReplyMaxDelayMillis = 1000L;
+
+    /**
+     * Minimum time in milliseconds between two ArtPollReply broadcasts, polls within this window
+     * share a single reply.
+     */
+    @Builder.Default
+    private long pollReplyWindowMillis = 1000L;
+
+    /**
+     * Time in milliseconds after which a discovered node that stopped replying is forgotten.
+     */
+    @Builder.Default
+    private long nodeExpiryMillis = 30000L;
+
+    /**
+     * Also receive sACN (E1.31) on the multicast groups of the output ports. sACN universe N is
+     * Port-Address N - 1.
+     */
+    @Builder.Default
+    private boolean sacn = false;
+
+    @Builder.Default
+    private int sacnPort = E131Data.DEFAULT_PORT;
+
+    /**
+     * Receives every datagram that arrives on the Art-Net and sACN ports, e.g. a
+     * {@link nl.sonicity.raspi.dmx.journal.JournalWriter}. The caller owns the tap and closes it
+     * after the node is stopped. Capture is off when not set.
+     */
+    private DatagramTap capture;
+
+    /** The Port-Addresses this node outputs, in the order they are advertised
+     *
+     * @return list of 15 bit Port-Addresses
+     */
+    public List<Integer> getOutputPortAddresses() {
+        if (outputPorts.isEmpty()) {
+            return Collections.singletonList(Util.toPortAddress(network, subnet, universe));
+        }
+        return outputPorts;
+    }
 }
@@ -15,12 +15,33 @@
  */
 package nl.sonicity.raspi.dmx.artnet;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
+import lombok.Builder;
+import lombok.Value;
 
-@Data
-@AllArgsConstructor
+import java.util.List;
+
+/**
+ * Snapshot of another node on the network, decoded from its last ArtPollReply.
+ *
+ * A physical node with more than four ports answers with one reply per bind index, each
+ * bind index is reported as a separate node.
+ */
+@Value
+@Builder
 public class ArtNetNodeInfo {
+    String ipAddress;
+    int bindIndex;
     String shortName;
-    String lastSeen;
+    String longName;
+    String nodeReport;
+    int status1;
+
+    /** Port-Addresses of the output ports */
+    List<Integer> outputPortAddresses;
+
+    /** GoodOutput status of the output ports, in the same order as the Port-Addresses */
+    List<Integer> goodOutput;
+
+    /** Milliseconds since the node last replied */
+    long lastSeenMillis;
 }
@@ -15,9 +15,117 @@
  */
 package nl.sonicity.raspi.dmx.artnet;
 
+import javax.management.MXBean;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Management interface of a node, registered with the platform MBeanServer when the node starts.
+ */
+@MXBean
 public interface ArtNetNodeMBean {
     public void start();
 
     public void stop();
 
+    /** Number of times per second the receive thread woke up during the last interval
+     */
+    public double getWakeupsPerSecond();
+
+    /** Fraction of a core used by the receive thread during the last interval
+     */
+    public double getReceiveThreadCpuLoad();
+
+    /** Packets received per second by opcode during the last interval
+     */
+    public Map<String, Double> getPacketsPerSecond();
+
+    /** Packets received by opcode since the node was created
+     */
+    public Map<String, Long> getPacketCounts();
+
+    /** Number of Art-Net packets that could not be parsed
+     */
+    public long getParseFailures();
+
+    /** Frames accepted per Port-Address, only for universes with handlers
+     */
+    public Map<Integer, Long> getFramesPerUniverse();
+
+    /** Milliseconds since the last accepted DMX frame, -1 if none was received yet
+     */
+    public long getLastDmxAgeMillis();
+
+    /** Number of frames the dispatch thread handed to the handlers
+     */
+    public long getDispatchedFrames();
+
+    /** Mean time the dispatch thread spends per frame
+     */
+    public double getAverageDispatchNanos();
+
+    /** Longest single call to a handler
+     */
+    public long getMaxHandlerCallNanos();
+
+    /** Number of frames a handler never saw because it was still busy with an earlier frame
+     */
+    public long getHandlerSkippedFrames();
+
+    /** Other Art-Net nodes that answered a poll
+     */
+    public List<ArtNetNodeInfo> getDiscoveredNodes();
+
+    /** Number of ArtDmx frames that arrived after a newer frame from the same source
+     */
+    public long getReorderedFrames();
+
+    /** Number of ArtDmx frames dropped because they were out of order or duplicates
+     */
+    public long getDroppedFrames();
+
+    /** HTP or LTP, how sources on the same universe are merged
+     */
+    public String getMergeMode();
+
+    /** Number of ArtDmx frames rejected because their universe already merges the maximum number of sources
+     */
+    public long getMergeRejectedFrames();
+
+    /** Number of sACN frames dropped because a source with a higher priority is active on the universe
+     */
+    public long getSacnOutrankedFrames();
+
+    /** Number of frames replaced by a newer frame of the same universe before the handlers could take them
+     */
+    public long getOverwrittenFrames();
+
+    /** Names of the handlers that kept exceeding their time budget and no longer receive frames
+     */
+    public String[] getQuarantinedHandlers();
+
+    /** Number of handler calls that took longer than the time budget of the handler
+     */
+    public long getHandlerOverruns();
+
+    /** True while ArtSync packets are received and output is latched on ArtSync
+     */
+    public boolean isSyncMode();
+
+    /** Time from the arrival of the last ArtSync until the last handler call of its commit returned
+     */
+    public long getSyncLatencyNanos();
+
+    /** Highest time from the arrival of an ArtSync until the last handler call of its commit returned
+     */
+    public long getMaxSyncLatencyNanos();
+
+    /** Number of ArtPollReply broadcasts sent in answer to polls
+     */
+    public long getPollReplies();
+
+    /** Number of polls that did not get a reply of their own because they were coalesced into another reply
+     */
+    public long getSuppressedPollReplies();
+
 }
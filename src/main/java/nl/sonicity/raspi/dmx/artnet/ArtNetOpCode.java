@@ -16,43 +16,62 @@
 package nl.sonicity.raspi.dmx.artnet;
 
 import nl.sonicity.raspi.dmx.artnet.packets.ArtDmx;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtNetPacket;
 import nl.sonicity.raspi.dmx.artnet.packets.ArtPoll;
 import nl.sonicity.raspi.dmx.artnet.packets.ArtPollReply;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtSync;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.function.Function;
 
 public enum ArtNetOpCode {
-    ARTNET_OP_POLL(0x2000, ArtPoll.class),
-    ARTNET_OP_POLLREPLY(0x2100, ArtPollReply.class),
-    ARTNET_OP_DMX(0x5000, ArtDmx.class),
-    ARNET_OP_NZS(0x5100, ArtDmx.class);
+    ARTNET_OP_POLL(0x2000, ArtPoll::fromBytes),
+    ARTNET_OP_POLLREPLY(0x2100, ArtPollReply::fromBytes),
+    ARTNET_OP_DMX(0x5000, ArtDmx::fromBytes),
+    ARNET_OP_NZS(0x5100, ArtDmx::fromBytes),
+    ARTNET_OP_SYNC(0x5200, ArtSync::fromBytes);
 
-    private static final Map<Integer, ArtNetOpCode> intToType = new HashMap<>();
+    /**
+     * Dispatch table indexed by the high byte of the opcode. The low byte is verified on
+     * lookup, so opcodes that share a high byte with a known opcode still resolve to null.
+     */
+    private static final ArtNetOpCode[] dispatchTable = new ArtNetOpCode[256];
 
     static {
         for (ArtNetOpCode artNetOpCode : ArtNetOpCode.values()) {
-            intToType.put(artNetOpCode.getOpCode(), artNetOpCode);
+            int index = artNetOpCode.getOpCode() >> 8;
+            if (dispatchTable[index] != null) {
+                throw new IllegalStateException("Duplicate dispatch table entry for " + artNetOpCode);
+            }
+            dispatchTable[index] = artNetOpCode;
         }
     }
 
     private final int opCode;
-    private final Class packetClass;
+    private final Function<byte[], ArtNetPacket> decoder;
 
-    ArtNetOpCode(int opCode, Class packetClass) {
+    ArtNetOpCode(int opCode, Function<byte[], ArtNetPacket> decoder) {
         this.opCode = opCode;
-        this.packetClass = packetClass;
+        this.decoder = decoder;
     }
 
     public int getOpCode() {
         return opCode;
     }
 
-    public Class getPacketClass() {
-        return packetClass;
+    /** Construct the packet for this opcode from raw packet data
+     *
+     * @param data complete packet, including the Art-Net header
+     * @return the decoded packet
+     */
+    public ArtNetPacket decode(byte[] data) {
+        return decoder.apply(data);
     }
 
-    public static ArtNetOpCode fromInt(Integer integer) {
-        return intToType.get(integer);
+    public static ArtNetOpCode fromInt(int opCode) {
+        ArtNetOpCode artNetOpCode = dispatchTable[(opCode >> 8) & 0xFF];
+        if (artNetOpCode == null || artNetOpCode.opCode != opCode) {
+            return null;
+        }
+        return artNetOpCode;
     }
 }
@@ -0,0 +1,110 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+/**
+ * Measures the time from the arrival of an ArtSync until every handler that got a frame of its
+ * commit has returned from the call.
+ *
+ * The dispatch thread opens the latch, routes the frames of the commit and closes it. Every
+ * {@link HandlerWorker} that accepts a frame of the commit enters the latch and exits it when the
+ * call that delivered the frame returns, handlers called on the dispatching thread are done before
+ * the latch is closed. Only the latest commit is tracked, a commit that is still running when the
+ * next one opens is not recorded.
+ */
+class CommitLatch {
+    private long sequence = 0;
+    private long arrival;
+    private int calls;
+    private boolean dispatched;
+    private boolean done = true;
+
+    private volatile long lastLatency;
+    private volatile long maxLatency;
+    private volatile long completedCommits;
+
+    /** Start tracking a commit, called from the dispatch thread before its frames are routed
+     *
+     * @param arrival {@link System#nanoTime()} at which the ArtSync arrived
+     */
+    synchronized void open(long arrival) {
+        sequence++;
+        this.arrival = arrival;
+        calls = 0;
+        dispatched = false;
+        done = false;
+    }
+
+    /** All frames of the commit were routed, called from the dispatch thread
+     */
+    synchronized void close() {
+        dispatched = true;
+        complete();
+    }
+
+    /** A worker accepted a frame of the open commit
+     *
+     * @return the commit to pass to {@link #exit(long)}
+     */
+    synchronized long enter() {
+        calls++;
+        return sequence;
+    }
+
+    /** The call that delivered a frame of a commit returned, or the frame was dropped
+     *
+     * @param commit value returned by {@link #enter()}
+     */
+    synchronized void exit(long commit) {
+        if (commit == sequence && !done) {
+            calls--;
+            complete();
+        }
+    }
+
+    private void complete() {
+        if (!dispatched || calls > 0 || done) {
+            return;
+        }
+        done = true;
+        long latency = System.nanoTime() - arrival;
+        lastLatency = latency;
+        if (latency > maxLatency) {
+            maxLatency = latency;
+        }
+        completedCommits++;
+    }
+
+    /** Time between the arrival of the last completed ArtSync and the return of its last handler call
+     *
+     * @return latency in nanoseconds
+     */
+    long getLastLatency() {
+        return lastLatency;
+    }
+
+    long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /** Number of commits of which all handler calls returned
+     *
+     * @return completed commits
+     */
+    long getCompletedCommits() {
+        return completedCommits;
+    }
+}
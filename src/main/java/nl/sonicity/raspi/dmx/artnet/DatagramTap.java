@@ -0,0 +1,32 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives a copy of every datagram the node receives on its Art-Net and sACN ports, before it is handled.
+ */
+public interface DatagramTap {
+    /** Called on the receive thread for every datagram
+     *
+     * @param nanoTime {@link System#nanoTime()} at arrival
+     * @param source sender of the datagram
+     * @param datagram the datagram between position and limit, must not be modified
+     */
+    void datagram(long nanoTime, InetSocketAddress source, ByteBuffer datagram);
+}
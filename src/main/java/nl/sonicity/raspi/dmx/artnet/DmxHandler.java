@@ -15,14 +15,25 @@
  */
 package nl.sonicity.raspi.dmx.artnet;
 
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
 public abstract class DmxHandler {
     private String name;
     private int universe;
     private int address;
     private int width;
 
+    // Window on the universe delivered to this handler, reused for every frame
+    final byte[] slots;
+    final ByteBuffer readOnlySlots;
+
 
     public DmxHandler(String name, int universe, int address, int width) {
+        if (universe < 0 || universe > 0x7FFF) {
+            throw new IllegalArgumentException("Universe should be a valid Port-Address between 0 and 32767");
+        }
+
         if (address < 1 || address > 512) {
             throw new IllegalArgumentException("Address should be a valid DMX address between 1 and 512");
         }
@@ -35,6 +46,9 @@ public abstract class DmxHandler {
         this.universe = universe;
         this.address = address;
         this.width = width;
+
+        this.slots = new byte[width];
+        this.readOnlySlots = ByteBuffer.wrap(slots).asReadOnlyBuffer();
     }
 
 
@@ -42,6 +56,10 @@ public abstract class DmxHandler {
         return name;
     }
 
+    /** The universe this handler listens to
+     *
+     * @return the full 15 bit Port-Address, network, subnet and universe combined
+     */
     public int getUniverse() {
         return universe;
     }
@@ -60,6 +78,39 @@ public abstract class DmxHandler {
      */
     public abstract void onDmx(byte[] data);
 
+    /** Called whenever the ArtNetNode receives new data from the network
+     *
+     * The buffer is a read-only view on the slots of this handler and is reused for
+     * every frame, it is only valid for the duration of the call. The default
+     * implementation passes the reused backing array on to {@link #onDmx(byte[])}.
+     *
+     * @param slots read-only view with the slots from address to address + width
+     */
+    public void onDmx(ByteBuffer slots) {
+        if (slots != readOnlySlots) {
+            slots.get(this.slots, 0, Math.min(width, slots.remaining()));
+        }
+        onDmx(this.slots);
+    }
+
+    /** Called when at least one slot of this handler changed
+     *
+     * The first frame and the first frame after a timeout are always delivered with all
+     * slots marked as changed. The default implementation ignores the bitmap and calls
+     * {@link #onDmx(ByteBuffer)}.
+     *
+     * @param slots read-only view with the slots from address to address + width
+     * @param changed bit i is set when slot address + i changed, reused for every frame
+     */
+    public void onDmx(ByteBuffer slots, BitSet changed) {
+        onDmx(slots);
+    }
+
+    /** Called when the ArtNetNode starts, or when the handler is added to a running node
+     *
+     */
+    public void start() { }
+
     /** Called when the ArtNetNode is about to shutdown
      *
      */
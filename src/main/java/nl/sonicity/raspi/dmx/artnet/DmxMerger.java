@@ -0,0 +1,205 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import nl.sonicity.raspi.dmx.artnet.packets.ArtDmxView;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges ArtDmx frames from up to {@link #MAX_SOURCES} sources per universe.
+ *
+ * Every universe has a fixed set of primitive arrays, allocated on its first frame, one per
+ * source and one for the merged output. The merge runs in place, so a second source does not
+ * add allocation. Sources that are silent for {@link #SOURCE_TIMEOUT} nanoseconds are dropped
+ * from the merge, frames from a third source are rejected until a slot is free.
+ *
+ * Only the receive thread uses the merger, the counters can be read from any thread.
+ */
+class DmxMerger {
+    /** The Art-Net spec limits merging to two sources per universe */
+    static final int MAX_SOURCES = 2;
+    static final long SOURCE_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+    static final int SLOTS = 512;
+
+    private final MergeMode mergeMode;
+    private final Universe[] universes = new Universe[DmxRouter.PORT_ADDRESSES];
+    private final byte[] incoming = new byte[SLOTS];
+
+    private volatile long rejectedFrames;
+
+    DmxMerger(MergeMode mergeMode) {
+        this.mergeMode = mergeMode;
+    }
+
+    MergeMode getMergeMode() {
+        return mergeMode;
+    }
+
+    /** Merge a received frame into the output of its universe
+     *
+     * @param portAddress Port-Address of the frame
+     * @param sourceId identification of the sender, e.g. the hash of its IP address
+     * @param dmxView the received frame
+     * @param nanoTime current value of {@link System#nanoTime()}
+     * @return the merged output of the universe, reused for every frame, or null if the frame was rejected
+     */
+    byte[] merge(int portAddress, int sourceId, ArtDmxView dmxView, long nanoTime) {
+        dmxView.copySlots(0, incoming, 0, SLOTS);
+        return merge(portAddress, sourceId, incoming, nanoTime);
+    }
+
+    /** Merge a received frame into the output of its universe
+     *
+     * @param portAddress Port-Address of the frame
+     * @param sourceId identification of the sender, e.g. the hash of its IP address
+     * @param data the 512 slots of the received frame
+     * @param nanoTime current value of {@link System#nanoTime()}
+     * @return the merged output of the universe, reused for every frame, or null if the frame was rejected
+     */
+    byte[] merge(int portAddress, int sourceId, byte[] data, long nanoTime) {
+        Universe universe = universes[portAddress];
+        if (universe == null) {
+            universe = new Universe();
+            universes[portAddress] = universe;
+        }
+
+        boolean expired = universe.expire(sourceId, nanoTime);
+
+        int slot = universe.slotFor(sourceId);
+        boolean joined = false;
+        if (slot < 0) {
+            slot = universe.join(sourceId);
+            if (slot < 0) {
+                rejectedFrames++;
+                return null;
+            }
+            joined = true;
+        }
+        universe.lastSeen[slot] = nanoTime;
+
+        byte[] source = universe.sources[slot];
+        byte[] output = universe.output;
+
+        if (universe.activeCount == 1) {
+            // Single source, nothing to merge
+            System.arraycopy(data, 0, source, 0, SLOTS);
+            System.arraycopy(data, 0, output, 0, SLOTS);
+        } else if (mergeMode == MergeMode.HTP) {
+            System.arraycopy(data, 0, source, 0, SLOTS);
+            universe.mergeHighest();
+        } else {
+            for (int i = 0; i < SLOTS; i++) {
+                byte value = data[i];
+                if (joined || expired || value != source[i]) {
+                    output[i] = value;
+                }
+                source[i] = value;
+            }
+        }
+
+        return output;
+    }
+
+    /** Remove a source from the merge of a universe before it times out
+     *
+     * The output is not recomputed until the next frame of a remaining source.
+     *
+     * @param portAddress Port-Address of the universe
+     * @param sourceId identification of the sender
+     */
+    void remove(int portAddress, int sourceId) {
+        Universe universe = universes[portAddress];
+        if (universe == null) {
+            return;
+        }
+        int slot = universe.slotFor(sourceId);
+        if (slot >= 0) {
+            universe.active[slot] = false;
+            universe.activeCount--;
+        }
+    }
+
+    /** Number of active sources on a universe
+     *
+     * @param portAddress Port-Address of the universe
+     * @return number of sources currently merged
+     */
+    int getActiveSources(int portAddress) {
+        Universe universe = universes[portAddress];
+        return universe == null ? 0 : universe.activeCount;
+    }
+
+    /** Number of frames rejected because the universe already had the maximum number of sources
+     */
+    long getRejectedFrames() {
+        return rejectedFrames;
+    }
+
+    private static class Universe {
+        private final byte[][] sources = new byte[MAX_SOURCES][SLOTS];
+        private final int[] ids = new int[MAX_SOURCES];
+        private final long[] lastSeen = new long[MAX_SOURCES];
+        private final boolean[] active = new boolean[MAX_SOURCES];
+        private final byte[] output = new byte[SLOTS];
+        private int activeCount = 0;
+
+        private int slotFor(int sourceId) {
+            for (int slot = 0; slot < MAX_SOURCES; slot++) {
+                if (active[slot] && ids[slot] == sourceId) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private int join(int sourceId) {
+            for (int slot = 0; slot < MAX_SOURCES; slot++) {
+                if (!active[slot]) {
+                    active[slot] = true;
+                    ids[slot] = sourceId;
+                    activeCount++;
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private boolean expire(int sourceId, long nanoTime) {
+            boolean expired = false;
+            for (int slot = 0; slot < MAX_SOURCES; slot++) {
+                if (active[slot] && ids[slot] != sourceId && nanoTime - lastSeen[slot] > SOURCE_TIMEOUT) {
+                    active[slot] = false;
+                    activeCount--;
+                    expired = true;
+                }
+            }
+            return expired;
+        }
+
+        private void mergeHighest() {
+            for (int i = 0; i < SLOTS; i++) {
+                int highest = 0;
+                for (int slot = 0; slot < MAX_SOURCES; slot++) {
+                    if (active[slot]) {
+                        highest = Math.max(highest, sources[slot][i] & 0xFF);
+                    }
+                }
+                output[i] = (byte) highest;
+            }
+        }
+    }
+}
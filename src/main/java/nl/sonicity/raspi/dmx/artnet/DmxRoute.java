@@ -0,0 +1,119 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A handler together with its precomputed window on the universe.
+ *
+ * The route keeps the last slice delivered to the handler, frames that do not change
+ * any slot in the window are not delivered at all. Without a {@link HandlerWorker} the
+ * handler is called on the dispatching thread, with a worker it runs on the handler pool.
+ */
+class DmxRoute {
+    private final DmxHandler handler;
+    private final int from;
+    private final int length;
+    private final HandlerWorker worker;
+
+    private final byte[] last;
+    private final BitSet changed;
+    private boolean valid = false;
+
+    DmxRoute(DmxHandler handler) {
+        this(handler, null);
+    }
+
+    DmxRoute(DmxHandler handler, HandlerWorker worker) {
+        this.handler = handler;
+        this.worker = worker;
+        // DMX addresses are from 1 to 512, offset by -1 for slot indices
+        this.from = handler.getAddress() - 1;
+        this.length = handler.getWidth();
+
+        this.last = new byte[length];
+        this.changed = new BitSet(length);
+    }
+
+    DmxHandler getHandler() {
+        return handler;
+    }
+
+    HandlerWorker getWorker() {
+        return worker;
+    }
+
+    /** Forget the last delivered slice, the next frame is delivered unconditionally
+     */
+    void invalidate() {
+        valid = false;
+    }
+
+    /** Deliver the window of this route if it changed since the last delivery
+     *
+     * @param frame array holding the 512 slots of the universe
+     * @param offset index of the first slot in the array
+     * @return true if the handler was called
+     */
+    boolean dispatch(byte[] frame, int offset) {
+        return dispatch(frame, offset, null);
+    }
+
+    /** Deliver the window of this route if it changed since the last delivery
+     *
+     * @param frame array holding the 512 slots of the universe
+     * @param offset index of the first slot in the array
+     * @param latch ArtSync commit the frame belongs to, or null
+     * @return true if the handler was called or queued
+     */
+    boolean dispatch(byte[] frame, int offset, CommitLatch latch) {
+        int start = offset + from;
+        int index = valid ? Arrays.mismatch(frame, start, start + length, last, 0, length) : 0;
+        if (index < 0) {
+            return false;
+        }
+
+        changed.clear();
+        for (; index < length; index++) {
+            if (!valid || frame[start + index] != last[index]) {
+                changed.set(index);
+            }
+        }
+        System.arraycopy(frame, start, last, 0, length);
+        valid = true;
+
+        if (worker != null) {
+            return worker.offer(last, changed, latch);
+        }
+
+        System.arraycopy(last, 0, handler.slots, 0, length);
+        handler.onDmx(handler.readOnlySlots.clear(), changed);
+        return true;
+    }
+
+    /** Pass a DMX timeout on to the handler
+     */
+    void timeout() {
+        if (worker != null) {
+            worker.timeout();
+        } else {
+            handler.timeout();
+        }
+        invalidate();
+    }
+}
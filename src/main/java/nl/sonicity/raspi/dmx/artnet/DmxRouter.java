@@ -0,0 +1,298 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Routing index from the 15 bit Port-Address to the handlers registered for that universe, and
+ * the single registry of the handlers of a node.
+ *
+ * Handlers are only called when their slice of the universe changed, see {@link DmxRoute}.
+ *
+ * Lookups are a single array access, so the cost of a frame only depends on the number of
+ * handlers listening to its universe. Handlers are added and removed copy-on-write, the
+ * receive thread never sees a partially updated route table.
+ *
+ * A router created with a budget runs the handlers on a {@link HandlerPool} with a fixed number
+ * of threads, each handler through a {@link HandlerWorker} that keeps only its latest window. A
+ * slow handler does not delay the dispatching thread, and is quarantined when it keeps exceeding
+ * its budget.
+ */
+class DmxRouter implements FrameSink {
+    static final int PORT_ADDRESSES = 0x8000;
+    private static final DmxRoute[] NO_ROUTES = new DmxRoute[0];
+
+    private static final long WORKER_STOP_TIMEOUT = 1000L;
+
+    private final AtomicReferenceArray<DmxRoute[]> routes = new AtomicReferenceArray<>(PORT_ADDRESSES);
+    // Port-Addresses with at least one route, in the order their first handler was added
+    private volatile int[] portAddresses = new int[0];
+    private final long defaultBudgetNanos;
+    private final HandlerPool pool;
+    private boolean running = false;
+
+    /** Router that calls the handlers on the dispatching thread
+     */
+    DmxRouter() {
+        this.defaultBudgetNanos = 0;
+        this.pool = null;
+    }
+
+    /** Router that runs the handlers on {@link HandlerPool#DEFAULT_THREADS} threads
+     *
+     * @param defaultBudgetNanos time budget for a single call of handlers added without a budget
+     */
+    DmxRouter(long defaultBudgetNanos) {
+        this(defaultBudgetNanos, HandlerPool.DEFAULT_THREADS);
+    }
+
+    /** Router that runs the handlers on a pool of threads
+     *
+     * @param defaultBudgetNanos time budget for a single call of handlers added without a budget
+     * @param threads number of threads that call the handlers
+     */
+    DmxRouter(long defaultBudgetNanos, int threads) {
+        if (defaultBudgetNanos <= 0) {
+            throw new IllegalArgumentException("Budget should be positive");
+        }
+        this.defaultBudgetNanos = defaultBudgetNanos;
+        this.pool = new HandlerPool(threads);
+    }
+
+    void add(DmxHandler handler) {
+        add(handler, defaultBudgetNanos);
+    }
+
+    /** Add a handler with its own time budget
+     *
+     * @param handler handler to add
+     * @param budgetNanos time budget for a single call, ignored when handlers run on the dispatching thread
+     */
+    synchronized void add(DmxHandler handler, long budgetNanos) {
+        if (running) {
+            handler.start();
+        }
+        HandlerWorker worker = null;
+        if (defaultBudgetNanos > 0) {
+            worker = new HandlerWorker(handler, budgetNanos, pool);
+        }
+
+        DmxRoute[] current = routesFor(handler.getUniverse());
+        DmxRoute[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = new DmxRoute(handler, worker);
+        routes.set(handler.getUniverse(), updated);
+        if (current.length == 0) {
+            int[] occupied = Arrays.copyOf(portAddresses, portAddresses.length + 1);
+            occupied[portAddresses.length] = handler.getUniverse();
+            portAddresses = occupied;
+        }
+    }
+
+    synchronized boolean remove(DmxHandler handler) {
+        DmxRoute[] current = routesFor(handler.getUniverse());
+        List<DmxRoute> updated = new ArrayList<>(current.length);
+        for (DmxRoute route : current) {
+            if (route.getHandler() != handler) {
+                updated.add(route);
+            } else if (route.getWorker() != null) {
+                route.getWorker().stop(false, WORKER_STOP_TIMEOUT);
+            }
+        }
+
+        if (updated.size() == current.length) {
+            return false;
+        }
+
+        routes.set(handler.getUniverse(), updated.isEmpty() ? null : updated.toArray(NO_ROUTES));
+        if (updated.isEmpty()) {
+            int[] occupied = new int[portAddresses.length - 1];
+            int n = 0;
+            for (int portAddress : portAddresses) {
+                if (portAddress != handler.getUniverse()) {
+                    occupied[n++] = portAddress;
+                }
+            }
+            portAddresses = occupied;
+        }
+        return true;
+    }
+
+    /** All handlers, grouped by universe
+     *
+     * @return snapshot of the registered handlers
+     */
+    List<DmxHandler> getHandlers() {
+        List<DmxHandler> handlers = new ArrayList<>();
+        forEachRoute(route -> handlers.add(route.getHandler()));
+        return handlers;
+    }
+
+    DmxRoute[] routesFor(int portAddress) {
+        DmxRoute[] entry = routes.get(portAddress);
+        return entry == null ? NO_ROUTES : entry;
+    }
+
+    /** Deliver a frame to all handlers of its universe whose slice changed
+     *
+     * @param portAddress Port-Address of the frame
+     * @param frame array holding the 512 slots of the universe
+     * @param offset index of the first slot in the array
+     * @return the number of handlers listening to the universe of the frame
+     */
+    int dispatch(int portAddress, byte[] frame, int offset) {
+        return dispatch(portAddress, frame, offset, null);
+    }
+
+    private int dispatch(int portAddress, byte[] frame, int offset, CommitLatch latch) {
+        DmxRoute[] entry = routes.get(portAddress);
+        if (entry == null) {
+            return 0;
+        }
+
+        for (DmxRoute route : entry) {
+            route.dispatch(frame, offset, latch);
+        }
+        return entry.length;
+    }
+
+    @Override
+    public void publish(int portAddress, byte[] frame) {
+        dispatch(portAddress, frame, 0, null);
+    }
+
+    @Override
+    public void publish(int portAddress, byte[] frame, CommitLatch latch) {
+        dispatch(portAddress, frame, 0, latch);
+    }
+
+    /** Make sure the next frame for every universe is delivered to all handlers
+     */
+    void invalidate() {
+        forEachRoute(DmxRoute::invalidate);
+    }
+
+    /** Tell all handlers that no DMX data was received, the next frame is delivered in full
+     */
+    void timeout() {
+        forEachRoute(DmxRoute::timeout);
+    }
+
+    /** Call {@link DmxHandler#start()} on all handlers and start the threads that call them,
+     * handlers added later start immediately
+     *
+     * @param name added to the names of the threads
+     */
+    synchronized void start(String name) {
+        running = true;
+        forEachRoute(route -> {
+            route.getHandler().start();
+            if (route.getWorker() != null) {
+                route.getWorker().start();
+            }
+        });
+        if (pool != null) {
+            pool.start(name);
+        }
+    }
+
+    /** Stop calling the handlers, call {@link DmxHandler#shutdown()} on all handlers and stop
+     * the threads
+     */
+    synchronized void shutdown() {
+        running = false;
+        forEachRoute(route -> {
+            if (route.getWorker() != null) {
+                route.getWorker().stop(true, WORKER_STOP_TIMEOUT);
+            } else {
+                route.getHandler().shutdown();
+            }
+        });
+        if (pool != null) {
+            pool.stop(WORKER_STOP_TIMEOUT);
+        }
+    }
+
+    /** Names of the handlers that were quarantined for exceeding their budget
+     *
+     * @return handler names
+     */
+    List<String> getQuarantinedHandlers() {
+        List<String> names = new ArrayList<>();
+        forEachRoute(route -> {
+            if (route.getWorker() != null && route.getWorker().isQuarantined()) {
+                names.add(route.getHandler().getName());
+            }
+        });
+        return names;
+    }
+
+    /** Total number of handler calls that took longer than their budget
+     *
+     * @return overruns
+     */
+    long getHandlerOverruns() {
+        return sumWorkers(HandlerWorker::getOverruns);
+    }
+
+    /** Total number of windows replaced by a newer one while their handler was busy
+     *
+     * @return skipped frames
+     */
+    long getHandlerSkippedFrames() {
+        return sumWorkers(HandlerWorker::getSkippedFrames);
+    }
+
+    /** Longest single call of any handler
+     *
+     * @return call time in nanoseconds
+     */
+    long getMaxHandlerCallNanos() {
+        long[] max = new long[1];
+        forEachRoute(route -> {
+            if (route.getWorker() != null) {
+                max[0] = Math.max(max[0], route.getWorker().getMaxCallNanos());
+            }
+        });
+        return max[0];
+    }
+
+    private long sumWorkers(ToLongFunction<HandlerWorker> counter) {
+        long[] sum = new long[1];
+        forEachRoute(route -> {
+            if (route.getWorker() != null) {
+                sum[0] += counter.applyAsLong(route.getWorker());
+            }
+        });
+        return sum[0];
+    }
+
+    private void forEachRoute(Consumer<DmxRoute> action) {
+        for (int portAddress : portAddresses) {
+            DmxRoute[] entry = routes.get(portAddress);
+            if (entry != null) {
+                for (DmxRoute route : entry) {
+                    action.accept(route);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lossy single producer, single consumer hand-over of frames between the receive thread and
+ * the thread that runs the handlers.
+ *
+ * Every universe has one slot of three preallocated frame buffers. The receive thread writes
+ * into its own buffer and swaps it with the ready buffer, the dispatch thread swaps the ready
+ * buffer with the one it reads from. When a new frame is published before the previous one was
+ * taken, the previous frame is overwritten and counted: a slow consumer always gets the latest
+ * frame of a universe instead of a backlog. Universes with a fresh frame are queued in a ring of
+ * Port-Addresses, a universe is in the ring at most once so the ring can never overflow.
+ *
+ * Publishing never blocks and does not allocate once a universe has been seen.
+ */
+class FrameRing implements FrameSink {
+    private static final int FRESH = 0x4;
+    private static final int INDEX = 0x3;
+    private static final int MASK = DmxRouter.PORT_ADDRESSES - 1;
+
+    private final Slot[] slots = new Slot[DmxRouter.PORT_ADDRESSES];
+    private final AtomicIntegerArray queue = new AtomicIntegerArray(DmxRouter.PORT_ADDRESSES);
+    private final AtomicInteger tail = new AtomicInteger();
+    private int head = 0;
+
+    private volatile Thread consumer;
+    private volatile boolean waiting;
+
+    private volatile long publishedFrames;
+    private volatile long overwrittenFrames;
+
+    /** Publish the latest frame of a universe, called from the receive thread only
+     *
+     * @param portAddress Port-Address of the frame
+     * @param frame the 512 slots of the universe
+     */
+    @Override
+    public void publish(int portAddress, byte[] frame) {
+        Slot slot = slots[portAddress];
+        if (slot == null) {
+            slot = new Slot();
+            slots[portAddress] = slot;
+        }
+
+        System.arraycopy(frame, 0, slot.buffers[slot.back], 0, DmxMerger.SLOTS);
+        int previous = slot.ready.getAndSet(slot.back | FRESH);
+        slot.back = previous & INDEX;
+        publishedFrames++;
+
+        if ((previous & FRESH) != 0) {
+            // The consumer did not pick up the previous frame, it is replaced by this one
+            overwrittenFrames++;
+            return;
+        }
+
+        int position = tail.get();
+        queue.lazySet(position & MASK, portAddress);
+        tail.set(position + 1);
+        if (waiting) {
+            wakeup();
+        }
+    }
+
+    /** Deliver the latest frame of every universe published since the last call, called from the dispatch thread only
+     *
+     * @param sink destination of the frames
+     * @return number of frames delivered
+     */
+    int drain(FrameSink sink) {
+        int end = tail.get();
+        int delivered = 0;
+        while (head != end) {
+            int portAddress = queue.get(head & MASK);
+            head++;
+
+            Slot slot = slots[portAddress];
+            int previous = slot.ready.getAndSet(slot.front);
+            slot.front = previous & INDEX;
+            if ((previous & FRESH) != 0) {
+                sink.publish(portAddress, slot.buffers[slot.front]);
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    /** Wait until frames are published, {@link #wakeup()} is called or the timeout expires
+     *
+     * @param timeoutNanos maximum time to wait
+     * @return true if frames are waiting to be drained
+     */
+    boolean await(long timeoutNanos) {
+        if (head != tail.get()) {
+            return true;
+        }
+
+        consumer = Thread.currentThread();
+        waiting = true;
+        try {
+            // Checked again after announcing that we wait, so a publish in between is never missed
+            if (head == tail.get()) {
+                LockSupport.parkNanos(this, timeoutNanos);
+            }
+        } finally {
+            waiting = false;
+        }
+        return head != tail.get();
+    }
+
+    /** Wake the dispatch thread up from {@link #await(long)}
+     */
+    void wakeup() {
+        Thread waiter = consumer;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    long getPublishedFrames() {
+        return publishedFrames;
+    }
+
+    /** Number of frames replaced by a newer frame of the same universe before the dispatch thread took them
+     *
+     * @return overwritten frames
+     */
+    long getOverwrittenFrames() {
+        return overwrittenFrames;
+    }
+
+    private static class Slot {
+        private final byte[][] buffers = new byte[3][DmxMerger.SLOTS];
+        private final AtomicInteger ready = new AtomicInteger(1);
+        private int back = 0;
+        private int front = 2;
+    }
+}
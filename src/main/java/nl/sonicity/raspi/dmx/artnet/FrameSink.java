@@ -0,0 +1,42 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+/**
+ * Destination for merged universe frames.
+ */
+interface FrameSink {
+    /** Hand over the 512 slots of a universe
+     *
+     * The frame is only valid during the call, implementations copy what they need to keep.
+     *
+     * @param portAddress Port-Address of the frame
+     * @param frame the 512 slots of the universe
+     */
+    void publish(int portAddress, byte[] frame);
+
+    /** Hand over a universe of an ArtSync commit
+     *
+     * Sinks that call handlers asynchronously enter the latch for every call they queue.
+     *
+     * @param portAddress Port-Address of the frame
+     * @param frame the 512 slots of the universe
+     * @param latch tracks the handler calls of the commit
+     */
+    default void publish(int portAddress, byte[] frame, CommitLatch latch) {
+        publish(portAddress, frame);
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fixed number of threads that run the pending calls of the {@link HandlerWorker}s.
+ *
+ * A worker with a pending window is queued once, however many windows arrive before it runs, and
+ * is queued again after its call when a newer window came in. The threads take the workers in
+ * order, so every handler gets its turn. A handler that is stuck in a call keeps its thread, when
+ * it is quarantined for that the pool starts a spare thread so the others keep the same number of
+ * threads. The stuck thread ends when its call returns.
+ */
+class HandlerPool {
+    static final int DEFAULT_THREADS = 4;
+
+    private final int size;
+    private final ArrayDeque<HandlerWorker> ready = new ArrayDeque<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+    private String name;
+    private boolean running = false;
+    private int started = 0;
+
+    HandlerPool(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("A handler pool needs at least 1 thread");
+        }
+        this.size = size;
+    }
+
+    /** Start the threads, workers queued before the start run now
+     *
+     * @param name added to the names of the threads
+     */
+    synchronized void start(String name) {
+        if (running) {
+            return;
+        }
+        this.name = name;
+        running = true;
+        for (int i = 0; i < size; i++) {
+            startThread();
+        }
+    }
+
+    /** Stop the threads, workers that are still queued are dropped
+     *
+     * @param timeoutMillis maximum time to wait for each thread to end
+     */
+    void stop(long timeoutMillis) {
+        List<Thread> stopping;
+        synchronized (this) {
+            running = false;
+            ready.clear();
+            stopping = new ArrayList<>(threads);
+            threads.clear();
+            notifyAll();
+        }
+
+        for (Thread thread : stopping) {
+            try {
+                thread.join(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Queue a worker that has a pending call
+     *
+     * @param worker worker to run
+     */
+    synchronized void schedule(HandlerWorker worker) {
+        ready.add(worker);
+        notify();
+    }
+
+    /** Start an extra thread in place of one that is held by a stuck handler
+     */
+    synchronized void replaceStuckThread() {
+        if (running) {
+            startThread();
+        }
+    }
+
+    synchronized int getThreads() {
+        return threads.size();
+    }
+
+    private void startThread() {
+        Thread thread = new Thread(this::run);
+        thread.setName("DmxHandler-" + name + "-" + started++);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+    }
+
+    private void run() {
+        while (true) {
+            HandlerWorker worker;
+            synchronized (this) {
+                while (running && ready.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                worker = ready.poll();
+            }
+
+            // A thread that comes back from a stuck call gives way to the spare started for it
+            if (worker.run()) {
+                synchronized (this) {
+                    // After a restart the pool has a new set of threads, without this one
+                    if (!threads.contains(Thread.currentThread()) || threads.size() > size) {
+                        threads.remove(Thread.currentThread());
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the calls of a single handler on a {@link HandlerPool} and enforces its time budget.
+ *
+ * The dispatch thread offers changed windows to the worker and never waits for the handler.
+ * The worker has a single slot for the latest window: while the handler is busy or queued,
+ * newer windows replace the pending one and the changed bits are combined, so no change is
+ * lost. The worker is queued on the pool at most once and only one pool thread calls the handler
+ * at a time. Every call to the handler is timed, a handler that exceeds its budget on
+ * {@link #QUARANTINE_AFTER} consecutive calls, or that is stuck in a single call for that many
+ * budgets, is quarantined: it gets no more frames until it is added again.
+ */
+@Slf4j
+class HandlerWorker {
+    static final int QUARANTINE_AFTER = 5;
+
+    private final DmxHandler handler;
+    private final long budgetNanos;
+    private final HandlerPool pool;
+
+    private final byte[] pending;
+    private final BitSet pendingChanged;
+    private final BitSet changed;
+    private boolean hasPending = false;
+    private boolean timeoutPending = false;
+    private boolean scheduled = false;
+    private boolean inCall = false;
+    private boolean stuckCall = false;
+    private boolean stopping = false;
+    private boolean shutdownPending = false;
+    private CommitLatch pendingLatch;
+    private long pendingCommit;
+
+    private volatile long runningSince = 0;
+    private int consecutiveOverruns = 0;
+
+    private volatile boolean quarantined = false;
+    private volatile long overruns;
+    private volatile long skippedFrames;
+    private volatile long maxCallNanos;
+
+    HandlerWorker(DmxHandler handler, long budgetNanos, HandlerPool pool) {
+        if (budgetNanos <= 0) {
+            throw new IllegalArgumentException("Budget should be positive");
+        }
+        this.handler = handler;
+        this.budgetNanos = budgetNanos;
+        this.pool = pool;
+        this.pending = new byte[handler.getWidth()];
+        this.pendingChanged = new BitSet(handler.getWidth());
+        this.changed = new BitSet(handler.getWidth());
+    }
+
+    /** Accept windows again after {@link #stop(boolean, long)}
+     */
+    synchronized void start() {
+        stopping = false;
+        shutdownPending = false;
+        // The pool drops its queue when it stops
+        scheduled = inCall;
+    }
+
+    /** Stop calling the handler, waits for a call that is in progress
+     *
+     * @param shutdownHandler call {@link DmxHandler#shutdown()} after the last call
+     * @param timeoutMillis maximum time to wait for a call in progress
+     */
+    void stop(boolean shutdownHandler, long timeoutMillis) {
+        synchronized (this) {
+            stopping = true;
+            hasPending = false;
+            timeoutPending = false;
+            releaseLatch();
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            long remaining;
+            while (inCall && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (inCall) {
+                // The pool thread calls shutdown when the handler returns
+                log.warn("Handler {} did not stop within {}ms", handler.getName(), timeoutMillis);
+                shutdownPending = shutdownHandler;
+                return;
+            }
+        }
+
+        if (shutdownHandler) {
+            handler.shutdown();
+        }
+    }
+
+    /** Hand a changed window to the handler, called from the dispatch thread
+     *
+     * @param window the slots of the handler
+     * @param windowChanged bit i is set when slot i changed
+     * @return false if the handler is quarantined or stopped and the window was dropped
+     */
+    boolean offer(byte[] window, BitSet windowChanged) {
+        return offer(window, windowChanged, null);
+    }
+
+    /** Hand a changed window of an ArtSync commit to the handler, called from the dispatch thread
+     *
+     * The worker exits the latch when the call that delivers the window returns.
+     *
+     * @param window the slots of the handler
+     * @param windowChanged bit i is set when slot i changed
+     * @param latch ArtSync commit the window belongs to, or null
+     * @return false if the handler is quarantined or stopped and the window was dropped
+     */
+    boolean offer(byte[] window, BitSet windowChanged, CommitLatch latch) {
+        if (quarantined) {
+            return false;
+        }
+
+        long since = runningSince;
+        if (since != 0 && System.nanoTime() - since > budgetNanos * QUARANTINE_AFTER) {
+            quarantine("stuck in a single call");
+            synchronized (this) {
+                stuckCall = inCall;
+            }
+            pool.replaceStuckThread();
+            return false;
+        }
+
+        synchronized (this) {
+            if (stopping) {
+                return false;
+            }
+            System.arraycopy(window, 0, pending, 0, pending.length);
+            pendingChanged.or(windowChanged);
+            if (hasPending) {
+                skippedFrames++;
+            }
+            hasPending = true;
+            if (latch != null) {
+                // Replaces the window of an older commit, which is no longer tracked
+                releaseLatch();
+                pendingLatch = latch;
+                pendingCommit = latch.enter();
+            }
+            schedule();
+        }
+        return true;
+    }
+
+    /** Ask the handler to reset its outputs, called from the dispatch thread
+     */
+    synchronized void timeout() {
+        if (!stopping) {
+            timeoutPending = true;
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            pool.schedule(this);
+        }
+    }
+
+    /** Make the pending calls, called from a pool thread
+     *
+     * @return true if the handler was quarantined for being stuck during the call
+     */
+    boolean run() {
+        boolean callTimeout;
+        boolean callDmx;
+        CommitLatch latch;
+        long commit;
+        synchronized (this) {
+            if (inCall) {
+                // Queued again after a restart while the old call is still going
+                return false;
+            }
+            callTimeout = timeoutPending && !stopping;
+            callDmx = hasPending && !stopping;
+            timeoutPending = false;
+            hasPending = false;
+            if (callDmx) {
+                System.arraycopy(pending, 0, handler.slots, 0, pending.length);
+                changed.clear();
+                changed.or(pendingChanged);
+                pendingChanged.clear();
+            }
+            latch = callDmx ? pendingLatch : null;
+            commit = pendingCommit;
+            pendingLatch = null;
+            inCall = true;
+        }
+
+        try {
+            if (callTimeout) {
+                handler.timeout();
+            }
+            if (callDmx && !quarantined) {
+                call();
+            }
+        } catch (RuntimeException e) {
+            log.error("Handler {} failed", handler.getName(), e);
+        }
+        if (latch != null) {
+            latch.exit(commit);
+        }
+
+        boolean stuck;
+        boolean callShutdown;
+        synchronized (this) {
+            inCall = false;
+            stuck = stuckCall;
+            stuckCall = false;
+            callShutdown = shutdownPending;
+            shutdownPending = false;
+            if (!stopping && (hasPending || timeoutPending)) {
+                // Back of the queue, the other handlers get their turn first
+                pool.schedule(this);
+            } else {
+                scheduled = false;
+            }
+            notifyAll();
+        }
+
+        if (callShutdown) {
+            try {
+                handler.shutdown();
+            } catch (RuntimeException e) {
+                log.error("Handler {} failed to shut down", handler.getName(), e);
+            }
+        }
+        return stuck;
+    }
+
+    private void releaseLatch() {
+        if (pendingLatch != null) {
+            pendingLatch.exit(pendingCommit);
+            pendingLatch = null;
+        }
+    }
+
+    private void call() {
+        long start = System.nanoTime();
+        runningSince = start;
+        try {
+            handler.onDmx(handler.readOnlySlots.clear(), changed);
+        } finally {
+            runningSince = 0;
+            account(System.nanoTime() - start);
+        }
+    }
+
+    private void account(long elapsed) {
+        if (elapsed > maxCallNanos) {
+            maxCallNanos = elapsed;
+        }
+
+        if (elapsed <= budgetNanos) {
+            consecutiveOverruns = 0;
+            return;
+        }
+
+        overruns++;
+        consecutiveOverruns++;
+        if (consecutiveOverruns >= QUARANTINE_AFTER) {
+            quarantine(consecutiveOverruns + " consecutive calls over budget");
+        }
+    }
+
+    private void quarantine(String reason) {
+        if (!quarantined) {
+            quarantined = true;
+            log.warn("Handler {} quarantined, {} (budget {}us)",
+                    handler.getName(), reason, TimeUnit.NANOSECONDS.toMicros(budgetNanos));
+        }
+    }
+
+    DmxHandler getHandler() {
+        return handler;
+    }
+
+    long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    boolean isQuarantined() {
+        return quarantined;
+    }
+
+    /** Number of calls that took longer than the budget
+     *
+     * @return overruns
+     */
+    long getOverruns() {
+        return overruns;
+    }
+
+    /** Number of windows replaced by a newer one while the handler was busy
+     *
+     * @return skipped frames
+     */
+    long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    long getMaxCallNanos() {
+        return maxCallNanos;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Wakeup and CPU statistics for a receive loop.
+ *
+ * Wakeups are counted by the loop thread itself, once per sample interval the loop calls
+ * {@link #sample(long, long)} to turn the counters into rates. The rates can be read from any thread.
+ */
+class LoopStatistics {
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private long wakeups;
+    private long intervalStart;
+    private long cpuTimeStart;
+
+    private volatile double wakeupsPerSecond;
+    private volatile double cpuLoad;
+
+    void start(long nanoTime, long cpuTime) {
+        wakeups = 0;
+        intervalStart = nanoTime;
+        cpuTimeStart = cpuTime;
+    }
+
+    void wakeup() {
+        wakeups++;
+    }
+
+    /** Close the current interval and start a new one
+     *
+     * @param nanoTime current value of {@link System#nanoTime()}
+     * @param cpuTime cpu time used by the loop thread in nanoseconds, or -1 if not available
+     */
+    void sample(long nanoTime, long cpuTime) {
+        long elapsed = nanoTime - intervalStart;
+        if (elapsed <= 0) {
+            return;
+        }
+
+        wakeupsPerSecond = wakeups * 1_000_000_000.0 / elapsed;
+        cpuLoad = cpuTime < 0 || cpuTimeStart < 0 ? -1 : (double)(cpuTime - cpuTimeStart) / elapsed;
+
+        start(nanoTime, cpuTime);
+    }
+
+    double getWakeupsPerSecond() {
+        return wakeupsPerSecond;
+    }
+
+    /** Fraction of a single core used by the loop thread during the last interval
+     *
+     * @return cpu load between 0 and 1, or -1 if thread cpu time is not supported
+     */
+    double getCpuLoad() {
+        return cpuLoad;
+    }
+
+    static long currentThreadCpuTime() {
+        if (!threadMXBean.isCurrentThreadCpuTimeSupported()) {
+            return -1;
+        }
+        return threadMXBean.getCurrentThreadCpuTime();
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+/**
+ * How frames from multiple sources on the same universe are combined.
+ */
+public enum MergeMode {
+    /** Highest Takes Precedence, each channel outputs the highest value of all sources */
+    HTP,
+    /** Latest Takes Precedence, each channel outputs the value of the source that changed it last */
+    LTP
+}
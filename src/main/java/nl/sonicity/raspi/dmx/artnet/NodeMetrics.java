@@ -0,0 +1,174 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Operational counters of a node, published through {@link ArtNetNodeMBean}.
+ *
+ * Counters are {@link LongAdder}s, so updating them from the receive and dispatch threads is
+ * cheap and never contends with a JMX client reading them. The frame counter of a universe is
+ * created on the first frame for that universe. Rates are computed when the receive loop
+ * samples its statistics.
+ */
+class NodeMetrics {
+    private static final ArtNetOpCode[] OP_CODES = ArtNetOpCode.values();
+    private static final int UNKNOWN = OP_CODES.length;
+    private static final String UNKNOWN_NAME = "Unknown";
+    private static final int E131_DATA = OP_CODES.length + 1;
+    private static final String E131_DATA_NAME = "E131Data";
+
+    private final LongAdder[] packets = new LongAdder[OP_CODES.length + 2];
+    private final LongAdder parseFailures = new LongAdder();
+    private final AtomicReferenceArray<LongAdder> frames = new AtomicReferenceArray<>(DmxRouter.PORT_ADDRESSES);
+    private final LongAdder dispatchedFrames = new LongAdder();
+    private final LongAdder dispatchNanos = new LongAdder();
+    private volatile long lastFrameMillis = 0;
+
+    private final long[] lastPackets = new long[packets.length];
+    private long lastSample;
+    private volatile Map<String, Double> packetsPerSecond = Collections.emptyMap();
+
+    NodeMetrics() {
+        for (int i = 0; i < packets.length; i++) {
+            packets[i] = new LongAdder();
+        }
+    }
+
+    /** Count a received packet
+     *
+     * @param opCode opcode of the packet, null if the opcode is not known
+     */
+    void packet(ArtNetOpCode opCode) {
+        packets[opCode == null ? UNKNOWN : opCode.ordinal()].increment();
+    }
+
+    /** Count a received sACN data packet
+     */
+    void sacnPacket() {
+        packets[E131_DATA].increment();
+    }
+
+    void parseFailure() {
+        parseFailures.increment();
+    }
+
+    /** Count a frame that was accepted for a universe with handlers
+     *
+     * @param portAddress Port-Address of the frame
+     * @param nowMillis {@link System#currentTimeMillis()}
+     */
+    void frame(int portAddress, long nowMillis) {
+        LongAdder counter = frames.get(portAddress);
+        if (counter == null) {
+            counter = new LongAdder();
+            frames.set(portAddress, counter);
+        }
+        counter.increment();
+        lastFrameMillis = nowMillis;
+    }
+
+    /** Record a pass of the dispatch thread
+     *
+     * @param frameCount frames handed to the handlers
+     * @param nanos time it took
+     */
+    void dispatched(int frameCount, long nanos) {
+        dispatchedFrames.add(frameCount);
+        dispatchNanos.add(nanos);
+    }
+
+    /** Compute the packet rates since the previous sample, called from the receive thread only
+     *
+     * @param nanoTime {@link System#nanoTime()}
+     */
+    void sample(long nanoTime) {
+        long elapsed = nanoTime - lastSample;
+        Map<String, Double> rates = new LinkedHashMap<>();
+        for (int i = 0; i < packets.length; i++) {
+            long count = packets[i].sum();
+            if (lastSample != 0 && elapsed > 0) {
+                rates.put(name(i), (count - lastPackets[i]) * 1_000_000_000.0 / elapsed);
+            }
+            lastPackets[i] = count;
+        }
+        lastSample = nanoTime;
+        packetsPerSecond = Collections.unmodifiableMap(rates);
+    }
+
+    Map<String, Double> getPacketsPerSecond() {
+        return packetsPerSecond;
+    }
+
+    Map<String, Long> getPacketCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < packets.length; i++) {
+            counts.put(name(i), packets[i].sum());
+        }
+        return counts;
+    }
+
+    long getParseFailures() {
+        return parseFailures.sum();
+    }
+
+    Map<Integer, Long> getFramesPerUniverse() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (int portAddress = 0; portAddress < DmxRouter.PORT_ADDRESSES; portAddress++) {
+            LongAdder counter = frames.get(portAddress);
+            if (counter != null) {
+                counts.put(portAddress, counter.sum());
+            }
+        }
+        return counts;
+    }
+
+    long getDispatchedFrames() {
+        return dispatchedFrames.sum();
+    }
+
+    /** Mean time the dispatch thread spends per frame, including the change detection of all routes
+     *
+     * @return nanoseconds per frame, 0 if nothing was dispatched yet
+     */
+    double getAverageDispatchNanos() {
+        long count = dispatchedFrames.sum();
+        return count == 0 ? 0 : (double) dispatchNanos.sum() / count;
+    }
+
+    /** Time since the last accepted frame
+     *
+     * @param nowMillis {@link System#currentTimeMillis()}
+     * @return age in milliseconds, -1 if no frame was received yet
+     */
+    long getLastFrameAge(long nowMillis) {
+        long last = lastFrameMillis;
+        return last == 0 ? -1 : nowMillis - last;
+    }
+
+    private static String name(int index) {
+        if (index == UNKNOWN) {
+            return UNKNOWN_NAME;
+        }
+        return index == E131_DATA ? E131_DATA_NAME : OP_CODES[index].name();
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtPollReply;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of the other nodes on the network, fed by the ArtPollReply packets they send.
+ *
+ * Nodes are keyed by IP address and bind index, so nodes that share a name, or the bind indexes
+ * of a single large node, are tracked separately. A reply only refreshes the timestamp of a known
+ * node and decodes its output ports, the other fields are decoded from the stored reply when a
+ * snapshot is requested. An index from Port-Address to nodes answers "which nodes output this
+ * universe" without scanning the registry. Nodes that have not replied within the expiry time
+ * are removed by a background sweep. Changes of the output ports are passed on to a
+ * {@link SubscriptionTable}.
+ *
+ * The map updates only record the new ports of a node. The index and the subscriptions are brought
+ * in line afterwards, outside the map's bin lock, from whatever the latest state of the node is, so
+ * a reply and a sweep of the same node can finish in any order.
+ */
+@Slf4j
+class NodeRegistry {
+    private static final int[] NO_PORTS = new int[0];
+
+    private final long expiryNanos;
+    private final Map<Long, Node> nodes = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Node>> byPortAddress = new ConcurrentHashMap<>();
+    private final SubscriptionTable subscriptions;
+    private final Object indexLock = new Object();
+
+    private boolean stopping = false;
+    private Thread sweeper;
+    private volatile long expiredNodes;
+
+    NodeRegistry(long expiryNanos) {
+        this(expiryNanos, new SubscriptionTable(ArtNetNodeConfig.DEFAULT_PORT));
+    }
+
+    NodeRegistry(long expiryNanos, SubscriptionTable subscriptions) {
+        if (expiryNanos <= 0) {
+            throw new IllegalArgumentException("Expiry should be positive");
+        }
+        this.expiryNanos = expiryNanos;
+        this.subscriptions = subscriptions;
+    }
+
+    synchronized void start(String name) {
+        if (sweeper != null) {
+            return;
+        }
+        stopping = false;
+        sweeper = new Thread(this::run);
+        sweeper.setName("ArtNetNodeSweep-" + name);
+        sweeper.setDaemon(true);
+        sweeper.start();
+    }
+
+    void stop(long timeoutMillis) {
+        Thread thread;
+        synchronized (this) {
+            thread = sweeper;
+            if (thread == null) {
+                return;
+            }
+            stopping = true;
+            notifyAll();
+        }
+
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            sweeper = null;
+        }
+    }
+
+    /** Register or refresh the node that sent a reply
+     *
+     * @param reply received ArtPollReply
+     * @param nanoTime {@link System#nanoTime()} at arrival
+     * @return true if the node was not known yet
+     */
+    boolean update(ArtPollReply reply, long nanoTime) {
+        long key = key(reply);
+        int[] ports = outputPortAddresses(reply);
+        boolean[] added = new boolean[1];
+        Node[] changed = new Node[1];
+        nodes.compute(key, (k, node) -> {
+            if (node == null) {
+                node = new Node(k, reply.getIpAddress());
+                added[0] = true;
+            }
+            node.reply = reply;
+            node.lastSeenNanos = nanoTime;
+            if (!Arrays.equals(ports, node.portAddresses)) {
+                node.portAddresses = ports;
+                changed[0] = node;
+            }
+            return node;
+        });
+        if (changed[0] != null) {
+            reconcile(changed[0]);
+        }
+
+        if (added[0]) {
+            log.info("First poll reply seen from \"{}\" at {} bind index {}",
+                    reply.getShortName(), reply.getIpAddress().getHostAddress(), reply.getBindIndex());
+        }
+        return added[0];
+    }
+
+    /** Remove the nodes that did not reply within the expiry time
+     *
+     * @param nanoTime {@link System#nanoTime()}
+     * @return number of nodes removed
+     */
+    int sweep(long nanoTime) {
+        int removed = 0;
+        for (Long key : nodes.keySet()) {
+            Node[] expired = new Node[1];
+            nodes.computeIfPresent(key, (k, node) -> {
+                if (nanoTime - node.lastSeenNanos < expiryNanos) {
+                    return node;
+                }
+                node.removed = true;
+                expired[0] = node;
+                return null;
+            });
+            if (expired[0] != null) {
+                reconcile(expired[0]);
+                removed++;
+            }
+        }
+
+        if (removed > 0) {
+            expiredNodes += removed;
+            log.info("Removed {} nodes that stopped replying", removed);
+        }
+        return removed;
+    }
+
+    List<ArtNetNodeInfo> getNodes(long nanoTime) {
+        return snapshot(nodes.values(), nanoTime);
+    }
+
+    /** The nodes that have an output port for a Port-Address
+     *
+     * @param portAddress 15 bit Port-Address
+     * @param nanoTime {@link System#nanoTime()}
+     * @return the nodes, ordered by IP address and bind index
+     */
+    List<ArtNetNodeInfo> getNodesForPortAddress(int portAddress, long nanoTime) {
+        Set<Node> outputs = byPortAddress.get(portAddress);
+        if (outputs == null) {
+            return Collections.emptyList();
+        }
+        return snapshot(outputs, nanoTime);
+    }
+
+    SubscriptionTable getSubscriptions() {
+        return subscriptions;
+    }
+
+    int size() {
+        return nodes.size();
+    }
+
+    long getExpiredNodes() {
+        return expiredNodes;
+    }
+
+    private void run() {
+        // Sweep twice per expiry time, a node is removed at most half an expiry late
+        long interval = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(expiryNanos / 2));
+        while (true) {
+            synchronized (this) {
+                try {
+                    if (!stopping) {
+                        wait(interval);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (stopping) {
+                    return;
+                }
+            }
+            sweep(System.nanoTime());
+        }
+    }
+
+    /** Bring the index and the subscriptions in line with the latest ports of a node
+     *
+     * @param node node of which the ports changed or that was removed
+     */
+    private void reconcile(Node node) {
+        synchronized (indexLock) {
+            int[] ports = node.removed ? NO_PORTS : node.portAddresses;
+            if (Arrays.equals(ports, node.indexedPortAddresses)) {
+                return;
+            }
+            subscriptions.update(node.address, node.indexedPortAddresses, ports);
+            unindex(node, node.indexedPortAddresses);
+            index(node, ports);
+            node.indexedPortAddresses = ports;
+        }
+    }
+
+    private void index(Node node, int[] portAddresses) {
+        for (int portAddress : portAddresses) {
+            byPortAddress.computeIfAbsent(portAddress, p -> ConcurrentHashMap.newKeySet()).add(node);
+        }
+    }
+
+    private void unindex(Node node, int[] portAddresses) {
+        for (int portAddress : portAddresses) {
+            byPortAddress.computeIfPresent(portAddress, (p, outputs) -> {
+                outputs.remove(node);
+                return outputs.isEmpty() ? null : outputs;
+            });
+        }
+    }
+
+    private static List<ArtNetNodeInfo> snapshot(Iterable<Node> source, long nanoTime) {
+        List<Node> sorted = new ArrayList<>();
+        source.forEach(sorted::add);
+        sorted.sort(Comparator.comparingLong(node -> node.key));
+
+        List<ArtNetNodeInfo> infos = new ArrayList<>(sorted.size());
+        for (Node node : sorted) {
+            infos.add(node.toInfo(nanoTime));
+        }
+        return infos;
+    }
+
+    private static long key(ArtPollReply reply) {
+        // Inet4Address hashes to its 32 bit address
+        return (reply.getIpAddress().hashCode() & 0xFFFFFFFFL) << 8 | reply.getBindIndex();
+    }
+
+    private static int[] outputPortAddresses(ArtPollReply reply) {
+        int count = Math.min(reply.getNumPorts(), 4);
+        int[] ports = new int[count];
+        int outputs = 0;
+        for (int port = 0; port < count; port++) {
+            if (reply.isOutput(port)) {
+                ports[outputs++] = reply.getPortAddress(port);
+            }
+        }
+        return outputs == 0 ? NO_PORTS : Arrays.copyOf(ports, outputs);
+    }
+
+    private static class Node {
+        private final long key;
+        private final InetAddress address;
+        private volatile ArtPollReply reply;
+        private volatile long lastSeenNanos;
+        // Written in the map updates, read by reconcile
+        private volatile int[] portAddresses = NO_PORTS;
+        private volatile boolean removed = false;
+        // Guarded by indexLock
+        private int[] indexedPortAddresses = NO_PORTS;
+
+        private Node(long key, InetAddress address) {
+            this.key = key;
+            this.address = address;
+        }
+
+        private ArtNetNodeInfo toInfo(long nanoTime) {
+            ArtPollReply current = reply;
+            List<Integer> outputs = new ArrayList<>();
+            List<Integer> goodOutput = new ArrayList<>();
+            for (int port = 0; port < Math.min(current.getNumPorts(), 4); port++) {
+                if (current.isOutput(port)) {
+                    outputs.add(current.getPortAddress(port));
+                    goodOutput.add(current.getGoodOutput(port));
+                }
+            }
+
+            return ArtNetNodeInfo.builder()
+                    .ipAddress(current.getIpAddress().getHostAddress())
+                    .bindIndex(current.getBindIndex())
+                    .shortName(current.getShortName())
+                    .longName(current.getLongName())
+                    .nodeReport(current.getNodeReport())
+                    .status1(current.getStatus1())
+                    .outputPortAddresses(outputs)
+                    .goodOutput(goodOutput)
+                    .lastSeenMillis(TimeUnit.NANOSECONDS.toMillis(nanoTime - lastSeenNanos))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers ArtPoll packets from its own thread, so a poll storm never holds up the receive thread.
+ *
+ * Every reply is sent after a random delay of up to the maximum delay, as the Art-Net spec asks
+ * of nodes to avoid reply collisions on the network. Polls that arrive while a reply is pending
+ * are coalesced into that reply, and after a reply went out the next one is held back until the
+ * coalescing window has passed. Polls that did not cause a reply of their own are counted as
+ * suppressed.
+ */
+@Slf4j
+class PollReplyScheduler {
+    private final Runnable reply;
+    private final long windowNanos;
+    private final long maxDelayNanos;
+
+    private boolean pending = false;
+    private long dueNanos;
+    private boolean replied = false;
+    private long lastReplyNanos;
+    private boolean stopping = false;
+    private Thread thread;
+
+    private volatile long requests;
+    private volatile long sentReplies;
+    private volatile long suppressedReplies;
+
+    /**
+     * @param reply sends the replies, runs on the thread of the scheduler
+     * @param windowNanos minimum time between two replies
+     * @param maxDelayNanos upper bound of the random delay before a reply
+     */
+    PollReplyScheduler(Runnable reply, long windowNanos, long maxDelayNanos) {
+        if (windowNanos < 0 || maxDelayNanos < 0) {
+            throw new IllegalArgumentException("Window and delay should not be negative");
+        }
+        this.reply = reply;
+        this.windowNanos = windowNanos;
+        this.maxDelayNanos = maxDelayNanos;
+    }
+
+    synchronized void start(String name) {
+        if (thread != null) {
+            return;
+        }
+        stopping = false;
+        pending = false;
+        thread = new Thread(this::run);
+        thread.setName("ArtPollReply-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Stop the thread of the scheduler, a pending reply is dropped
+     *
+     * @param timeoutMillis maximum time to wait for the thread to end
+     */
+    void stop(long timeoutMillis) {
+        Thread scheduler;
+        synchronized (this) {
+            scheduler = thread;
+            if (scheduler == null) {
+                return;
+            }
+            stopping = true;
+            notifyAll();
+        }
+
+        try {
+            scheduler.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            thread = null;
+        }
+    }
+
+    /** Schedule a reply to a poll, called from the receive thread
+     *
+     * @return false if the poll was coalesced into a reply that is already pending
+     */
+    synchronized boolean request() {
+        requests++;
+        if (pending) {
+            suppressedReplies++;
+            return false;
+        }
+
+        long now = System.nanoTime();
+        long due = now + (maxDelayNanos > 0 ? ThreadLocalRandom.current().nextLong(maxDelayNanos + 1) : 0);
+        if (replied && due - (lastReplyNanos + windowNanos) < 0) {
+            due = lastReplyNanos + windowNanos;
+        }
+
+        pending = true;
+        dueNanos = due;
+        notifyAll();
+        return true;
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    while (!stopping && (!pending || dueNanos - System.nanoTime() > 0)) {
+                        if (pending) {
+                            TimeUnit.NANOSECONDS.timedWait(this, dueNanos - System.nanoTime());
+                        } else {
+                            wait();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                if (stopping) {
+                    return;
+                }
+                // Polls from here on schedule the next reply
+                pending = false;
+                replied = true;
+                lastReplyNanos = System.nanoTime();
+            }
+
+            try {
+                reply.run();
+                sentReplies++;
+            } catch (RuntimeException e) {
+                log.error("Failed to reply to ArtPoll", e);
+            }
+        }
+    }
+
+    /** Number of polls received
+     *
+     * @return requests
+     */
+    long getRequests() {
+        return requests;
+    }
+
+    long getSentReplies() {
+        return sentReplies;
+    }
+
+    /** Number of polls that were answered by the reply to an earlier poll
+     *
+     * @return suppressed replies
+     */
+    long getSuppressedReplies() {
+        return suppressedReplies;
+    }
+}
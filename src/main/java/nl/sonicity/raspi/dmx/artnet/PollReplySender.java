@@ -0,0 +1,135 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import nl.sonicity.raspi.dmx.artnet.packets.ArtPollReply;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+
+/**
+ * Sends the ArtPollReply packets of a node over a long-lived broadcast channel.
+ *
+ * The replies are encoded once into direct buffers and only generated again after
+ * {@link #invalidate()}, when the configuration or status of the node changed. Sending
+ * the cached replies does not allocate, the only system calls are the sends.
+ */
+class PollReplySender implements Closeable {
+    private final ReplyGenerator generator;
+    private final InetSocketAddress[] targets;
+
+    private DatagramChannel channel;
+    private ByteBuffer[] replies = new ByteBuffer[0];
+    private volatile boolean stale = true;
+
+    private volatile long rebuilds;
+    private volatile long sentReplies;
+
+    /**
+     * @param generator generates the replies after the cache was invalidated
+     * @param targets every reply is sent to each of these addresses
+     */
+    PollReplySender(ReplyGenerator generator, List<InetSocketAddress> targets) {
+        this.generator = generator;
+        this.targets = targets.toArray(new InetSocketAddress[0]);
+    }
+
+    synchronized void open() throws IOException {
+        if (channel == null) {
+            channel = DatagramChannel.open();
+            channel.socket().setBroadcast(true);
+        }
+    }
+
+    /** Generate the replies again before the next send
+     */
+    void invalidate() {
+        stale = true;
+    }
+
+    /** Send all replies to all targets
+     *
+     * @return number of replies sent
+     * @throws IOException when the channel is not open or a send fails
+     */
+    synchronized int send() throws IOException {
+        if (channel == null) {
+            throw new IOException("Reply channel not open");
+        }
+
+        if (stale) {
+            rebuild();
+        }
+
+        int sent = 0;
+        for (ByteBuffer reply : replies) {
+            for (InetSocketAddress target : targets) {
+                reply.clear();
+                channel.send(reply, target);
+                sent++;
+            }
+        }
+        sentReplies += sent;
+        return sent;
+    }
+
+    private void rebuild() throws IOException {
+        // Clear the flag first, an invalidate during the rebuild triggers another one
+        stale = false;
+        List<ArtPollReply> generated = generator.generate();
+        if (generated.size() != replies.length) {
+            replies = new ByteBuffer[generated.size()];
+        }
+
+        for (int i = 0; i < replies.length; i++) {
+            byte[] encoded = generated.get(i).toBytes();
+            if (replies[i] == null || replies[i].capacity() != encoded.length) {
+                replies[i] = ByteBuffer.allocateDirect(encoded.length);
+            }
+            replies[i].clear();
+            replies[i].put(encoded);
+        }
+        rebuilds++;
+    }
+
+    /** Number of times the replies were generated
+     *
+     * @return rebuilds
+     */
+    long getRebuilds() {
+        return rebuilds;
+    }
+
+    long getSentReplies() {
+        return sentReplies;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    interface ReplyGenerator {
+        List<ArtPollReply> generate() throws IOException;
+    }
+}
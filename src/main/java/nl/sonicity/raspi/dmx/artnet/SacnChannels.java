@@ -0,0 +1,115 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import nl.sonicity.raspi.dmx.sacn.E131Data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.List;
+
+/**
+ * The multicast channels sACN is received on.
+ *
+ * Every universe is a multicast group of its own. Linux allows a socket to join 20 groups by
+ * default (net.ipv4.igmp_max_memberships), so the groups are spread over as many channels as
+ * needed, all bound to the sACN port. The JDK turns off IP_MULTICAST_ALL on Linux, so each channel
+ * only receives the groups it joined; where a platform delivers a datagram to every channel the
+ * sequence check drops the duplicates.
+ */
+class SacnChannels implements Closeable {
+    static final int GROUPS_PER_CHANNEL = 20;
+    private static final int SOCKET_RECEIVE_BUFFER = 1 << 20;
+
+    private final DatagramChannel[] channels;
+
+    private SacnChannels(DatagramChannel[] channels) {
+        this.channels = channels;
+    }
+
+    /** No sACN reception
+     *
+     * @return instance without channels
+     */
+    static SacnChannels none() {
+        return new SacnChannels(new DatagramChannel[0]);
+    }
+
+    /** Open non-blocking channels joined to the groups of a set of universes
+     *
+     * @param port UDP port to bind to
+     * @param universes sACN universes to join
+     * @param networkInterface interface to join the groups on
+     * @return the channels
+     * @throws IOException when a channel can not be opened or a group can not be joined
+     */
+    static SacnChannels open(int port, List<Integer> universes, NetworkInterface networkInterface) throws IOException {
+        DatagramChannel[] channels = new DatagramChannel[(universes.size() + GROUPS_PER_CHANNEL - 1) / GROUPS_PER_CHANNEL];
+        SacnChannels sacnChannels = new SacnChannels(channels);
+        try {
+            for (int i = 0; i < channels.length; i++) {
+                DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+                channels[i] = channel;
+                channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_RECEIVE_BUFFER);
+                channel.bind(new InetSocketAddress(port));
+                for (int universe : universes.subList(i * GROUPS_PER_CHANNEL, Math.min((i + 1) * GROUPS_PER_CHANNEL, universes.size()))) {
+                    channel.join(E131Data.multicastGroup(universe), networkInterface);
+                }
+                channel.configureBlocking(false);
+            }
+        } catch (IOException | RuntimeException e) {
+            sacnChannels.close();
+            throw e;
+        }
+        return sacnChannels;
+    }
+
+    void register(Selector selector) throws IOException {
+        for (DatagramChannel channel : channels) {
+            channel.register(selector, SelectionKey.OP_READ);
+        }
+    }
+
+    DatagramChannel[] getChannels() {
+        return channels;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (DatagramChannel channel : channels) {
+            if (channel == null) {
+                continue;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the sACN source priority per universe.
+ *
+ * Only the sources with the highest priority on a universe are passed on to the merger, a
+ * source that is outranked is removed from the merge straight away. A source that is silent for
+ * {@link #SOURCE_TIMEOUT} nanoseconds, the E1.31 network data loss timeout, or that terminated
+ * its stream no longer counts, so the sources with the next highest priority take over.
+ *
+ * Only the receive thread uses the filter, the counters can be read from any thread.
+ */
+class SacnPriorityFilter {
+    static final int MAX_SOURCES = 8;
+    static final long SOURCE_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(2500);
+
+    private final DmxMerger merger;
+    private final Universe[] universes = new Universe[DmxRouter.PORT_ADDRESSES];
+
+    private volatile long outrankedFrames;
+
+    SacnPriorityFilter(DmxMerger merger) {
+        this.merger = merger;
+    }
+
+    /** Check the priority of a received frame
+     *
+     * @param portAddress Port-Address of the frame
+     * @param sourceId identification of the source, the hash of its CID
+     * @param priority priority of the frame, 0 - 200
+     * @param nanoTime current value of {@link System#nanoTime()}
+     * @return true if the frame has the highest priority on its universe
+     */
+    boolean accept(int portAddress, int sourceId, int priority, long nanoTime) {
+        Universe universe = universes[portAddress];
+        if (universe == null) {
+            universe = new Universe();
+            universes[portAddress] = universe;
+        }
+
+        int slot = universe.slotFor(sourceId, nanoTime);
+        if (slot < 0) {
+            // More sources than tracked, only the ones already known take part
+            outrankedFrames++;
+            return false;
+        }
+        universe.priorities[slot] = priority;
+        universe.lastSeen[slot] = nanoTime;
+
+        int highest = universe.highest(nanoTime);
+        if (priority < highest) {
+            // A source that lowered its priority leaves the merge as well
+            merger.remove(portAddress, sourceId);
+            outrankedFrames++;
+            return false;
+        }
+
+        if (priority > universe.current) {
+            // Sources with a lower priority leave the merge
+            for (int other = 0; other < MAX_SOURCES; other++) {
+                if (universe.active[other] && universe.priorities[other] < priority) {
+                    merger.remove(portAddress, universe.ids[other]);
+                }
+            }
+        }
+        universe.current = priority;
+        return true;
+    }
+
+    /** A source terminated its stream on a universe
+     *
+     * @param portAddress Port-Address of the universe
+     * @param sourceId identification of the source
+     */
+    void terminate(int portAddress, int sourceId) {
+        Universe universe = universes[portAddress];
+        if (universe != null) {
+            for (int slot = 0; slot < MAX_SOURCES; slot++) {
+                if (universe.active[slot] && universe.ids[slot] == sourceId) {
+                    universe.active[slot] = false;
+                }
+            }
+            universe.current = -1;
+        }
+        merger.remove(portAddress, sourceId);
+    }
+
+    /** Number of frames dropped because a source with a higher priority is active on the universe
+     */
+    long getOutrankedFrames() {
+        return outrankedFrames;
+    }
+
+    private static class Universe {
+        private final int[] ids = new int[MAX_SOURCES];
+        private final int[] priorities = new int[MAX_SOURCES];
+        private final long[] lastSeen = new long[MAX_SOURCES];
+        private final boolean[] active = new boolean[MAX_SOURCES];
+        private int current = -1;
+
+        private int slotFor(int sourceId, long nanoTime) {
+            int free = -1;
+            for (int slot = 0; slot < MAX_SOURCES; slot++) {
+                if (active[slot] && nanoTime - lastSeen[slot] > SOURCE_TIMEOUT) {
+                    active[slot] = false;
+                    current = -1;
+                }
+                if (active[slot] && ids[slot] == sourceId) {
+                    return slot;
+                }
+                if (!active[slot] && free < 0) {
+                    free = slot;
+                }
+            }
+
+            if (free >= 0) {
+                active[free] = true;
+                ids[free] = sourceId;
+            }
+            return free;
+        }
+
+        private int highest(long nanoTime) {
+            int highest = -1;
+            for (int slot = 0; slot < MAX_SOURCES; slot++) {
+                if (active[slot] && nanoTime - lastSeen[slot] <= SOURCE_TIMEOUT) {
+                    highest = Math.max(highest, priorities[slot]);
+                }
+            }
+            return highest;
+        }
+    }
+}
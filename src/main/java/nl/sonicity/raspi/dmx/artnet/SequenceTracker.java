@@ -0,0 +1,161 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the ArtDmx or E1.31 sequence number per universe and per source and rejects frames
+ * that arrive out of order.
+ *
+ * A frame is rejected when its sequence number is equal to, or up to {@link #REORDER_WINDOW}
+ * steps behind, the last accepted sequence number of the same source. Larger backward
+ * jumps are treated as a restart of the source, as is a source that was silent for
+ * {@link #SOURCE_RESET_INTERVAL} nanoseconds. In Art-Net sequence number 0 disables the check,
+ * in sACN it is a normal value that follows 255, see {@link #forSacn()}.
+ *
+ * The state of a silent source is reused for the next new source of the universe, and a universe
+ * tracks at most {@link #MAX_SOURCES} sources, so the table does not grow with every sender that
+ * was ever seen.
+ *
+ * Only the receive thread updates the tracker, the counters can be read from any thread.
+ */
+class SequenceTracker {
+    static final int REORDER_WINDOW = 20;
+    static final long SOURCE_RESET_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    static final int MAX_SOURCES = 16;
+
+    private final Source[][] sources = new Source[DmxRouter.PORT_ADDRESSES][];
+    private final boolean zeroDisablesCheck;
+
+    private volatile long reorderedFrames;
+    private volatile long droppedFrames;
+
+    /** Tracker for ArtDmx, where sequence number 0 disables the check
+     */
+    SequenceTracker() {
+        this(true);
+    }
+
+    private SequenceTracker(boolean zeroDisablesCheck) {
+        this.zeroDisablesCheck = zeroDisablesCheck;
+    }
+
+    /** Tracker for E1.31, where the sequence number is a plain 8 bit counter
+     *
+     * @return new tracker
+     */
+    static SequenceTracker forSacn() {
+        return new SequenceTracker(false);
+    }
+
+    /** Check a received frame
+     *
+     * @param portAddress Port-Address of the frame
+     * @param sourceId identification of the sender, e.g. the hash of its IP address
+     * @param sequence sequence number of the frame
+     * @param nanoTime current value of {@link System#nanoTime()}
+     * @return true if the frame should be processed, false if it is stale
+     */
+    boolean accept(int portAddress, int sourceId, int sequence, long nanoTime) {
+        Source source = sourceFor(portAddress, sourceId, nanoTime);
+        int last = source.sequence;
+        boolean reset = !source.active || nanoTime - source.lastSeen > SOURCE_RESET_INTERVAL;
+        source.active = true;
+        source.lastSeen = nanoTime;
+
+        if (reset || zeroDisablesCheck && (sequence == 0 || last == 0)) {
+            source.sequence = sequence;
+            return true;
+        }
+
+        // Signed distance, wraps around at 256
+        int distance = (byte) (sequence - last);
+        if (distance > 0 || distance <= -REORDER_WINDOW) {
+            source.sequence = sequence;
+            return true;
+        }
+
+        if (distance < 0) {
+            reorderedFrames++;
+        }
+        droppedFrames++;
+        return false;
+    }
+
+    /** Number of frames that arrived after a newer frame of the same source
+     */
+    long getReorderedFrames() {
+        return reorderedFrames;
+    }
+
+    /** Number of frames rejected, reordered frames and duplicates
+     */
+    long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /** Number of sources tracked for a universe, including silent ones that were not reused yet
+     */
+    int getSources(int portAddress) {
+        Source[] universe = sources[portAddress];
+        return universe == null ? 0 : universe.length;
+    }
+
+    private Source sourceFor(int portAddress, int sourceId, long nanoTime) {
+        Source[] universe = sources[portAddress];
+        if (universe == null) {
+            Source source = new Source(sourceId);
+            sources[portAddress] = new Source[] { source };
+            return source;
+        }
+
+        Source oldest = null;
+        for (Source source : universe) {
+            if (source.id == sourceId) {
+                return source;
+            }
+            if (oldest == null || source.lastSeen - oldest.lastSeen < 0) {
+                oldest = source;
+            }
+        }
+
+        // A silent source would be reset anyway, so its slot can be taken over
+        if (nanoTime - oldest.lastSeen > SOURCE_RESET_INTERVAL || universe.length >= MAX_SOURCES) {
+            oldest.id = sourceId;
+            oldest.active = false;
+            return oldest;
+        }
+
+        Source source = new Source(sourceId);
+        Source[] updated = Arrays.copyOf(universe, universe.length + 1);
+        updated[universe.length] = source;
+        sources[portAddress] = updated;
+        return source;
+    }
+
+    private static class Source {
+        private int id;
+        private int sequence;
+        private long lastSeen;
+        private boolean active = false;
+
+        Source(int id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The nodes that output each universe, so a transmitter can unicast a frame to those nodes only.
+ *
+ * The table is maintained incrementally by the {@link NodeRegistry}: only when the output ports of
+ * a node change, or the node expires, are the universes involved updated. A node that reports the
+ * same universe on several bind indexes is a single subscriber. Readers get an array that is
+ * replaced, never modified, so looking up the subscribers of a universe on every send is a single
+ * volatile read.
+ */
+public class SubscriptionTable {
+    private static final InetSocketAddress[] NONE = new InetSocketAddress[0];
+
+    private final int port;
+    private final AtomicReferenceArray<InetSocketAddress[]> subscribers = new AtomicReferenceArray<>(DmxRouter.PORT_ADDRESSES);
+    private final Map<Integer, Map<InetAddress, Integer>> references = new HashMap<>();
+    private volatile long updates;
+
+    /**
+     * @param port UDP port the subscribers receive on
+     */
+    public SubscriptionTable(int port) {
+        this.port = port;
+    }
+
+    /** The nodes that output a universe
+     *
+     * @param portAddress 15 bit Port-Address
+     * @return addresses to send frames of the universe to, empty when nobody reported the universe
+     */
+    public InetSocketAddress[] subscribers(int portAddress) {
+        InetSocketAddress[] nodes = subscribers.get(portAddress);
+        return nodes == null ? NONE : nodes;
+    }
+
+    /** Apply a change of the output ports of a node
+     *
+     * @param address IP address of the node
+     * @param oldPortAddresses Port-Addresses the node output until now
+     * @param newPortAddresses Port-Addresses the node outputs from now on
+     */
+    synchronized void update(InetAddress address, int[] oldPortAddresses, int[] newPortAddresses) {
+        for (int portAddress : oldPortAddresses) {
+            Map<InetAddress, Integer> nodes = references.get(portAddress);
+            if (nodes == null || nodes.computeIfPresent(address, (a, count) -> count == 1 ? null : count - 1) != null) {
+                continue;
+            }
+            if (nodes.isEmpty()) {
+                references.remove(portAddress);
+            }
+            publish(portAddress, nodes);
+        }
+
+        for (int portAddress : newPortAddresses) {
+            Map<InetAddress, Integer> nodes = references.computeIfAbsent(portAddress, p -> new HashMap<>());
+            if (nodes.merge(address, 1, Integer::sum) == 1) {
+                publish(portAddress, nodes);
+            }
+        }
+        updates++;
+    }
+
+    private void publish(int portAddress, Map<InetAddress, Integer> nodes) {
+        if (nodes.isEmpty()) {
+            subscribers.set(portAddress, null);
+            return;
+        }
+
+        InetSocketAddress[] addresses = new InetSocketAddress[nodes.size()];
+        int i = 0;
+        for (InetAddress node : nodes.keySet()) {
+            addresses[i++] = new InetSocketAddress(node, port);
+        }
+        subscribers.set(portAddress, addresses);
+    }
+
+    /** Number of universes with at least one subscriber
+     *
+     * @return subscribed universes
+     */
+    public synchronized int getSubscribedUniverses() {
+        return references.size();
+    }
+
+    /** Number of node changes applied to the table
+     *
+     * @return updates
+     */
+    public long getUpdates() {
+        return updates;
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the latest frame per universe while the node is in synchronous mode.
+ *
+ * Frames are copied into an array that is allocated once per universe. When an ArtSync arrives
+ * the receive thread moves all pending frames into a commit, the dispatch thread takes the commit
+ * as a whole and routes all its universes in one pass, so the universes of one ArtSync are never
+ * split over two dispatch passes. Commits are handed over through three preallocated batches like
+ * the slots of {@link FrameRing}; when the dispatch thread did not take a commit before the next
+ * ArtSync, the receive thread takes it back and adds the newer frames to it.
+ *
+ * {@link #store(int, byte[])}, {@link #commit(long)} and {@link #flush(FrameSink)} are called from
+ * the receive thread, {@link #apply(FrameSink)} from the dispatch thread. The latency statistics
+ * can be read from any thread, the latency runs until the last handler call of a commit returned,
+ * see {@link CommitLatch}.
+ */
+class SyncBuffer {
+    private static final int FRESH = 0x4;
+    private static final int INDEX = 0x3;
+
+    private final byte[][] frames = new byte[DmxRouter.PORT_ADDRESSES][];
+    private final boolean[] isPending = new boolean[DmxRouter.PORT_ADDRESSES];
+    private final int[] pending = new int[DmxRouter.PORT_ADDRESSES];
+    private int pendingCount = 0;
+
+    private final Batch[] batches = { new Batch(), new Batch(), new Batch() };
+    private final AtomicInteger ready = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+
+    private final CommitLatch latch = new CommitLatch();
+    private volatile long commits;
+    private volatile long coalescedCommits;
+
+    /** Keep a copy of a frame until the next commit
+     *
+     * @param portAddress Port-Address of the frame
+     * @param frame the 512 slots of the universe
+     */
+    void store(int portAddress, byte[] frame) {
+        byte[] stored = frames[portAddress];
+        if (stored == null) {
+            stored = new byte[DmxMerger.SLOTS];
+            frames[portAddress] = stored;
+        }
+        System.arraycopy(frame, 0, stored, 0, DmxMerger.SLOTS);
+
+        if (!isPending[portAddress]) {
+            isPending[portAddress] = true;
+            pending[pendingCount++] = portAddress;
+        }
+    }
+
+    /** Hand all pending frames to the dispatch thread as a single commit
+     *
+     * @param arrival {@link System#nanoTime()} at which the ArtSync arrived
+     * @return number of universes in the commit
+     */
+    int commit(long arrival) {
+        Batch batch = batches[back];
+        int current = ready.get();
+        if ((current & FRESH) != 0 && ready.compareAndSet(current, back)) {
+            // The previous commit was not taken yet, take it back and add the newer frames to it
+            back = current & INDEX;
+            batch = batches[back];
+            coalescedCommits++;
+        } else {
+            batch.clear();
+            batch.arrival = arrival;
+        }
+
+        for (int i = 0; i < pendingCount; i++) {
+            int portAddress = pending[i];
+            isPending[portAddress] = false;
+            batch.put(portAddress, frames[portAddress]);
+        }
+        pendingCount = 0;
+
+        int previous = ready.getAndSet(back | FRESH);
+        back = previous & INDEX;
+        return batch.count;
+    }
+
+    /** Deliver the latest commit, called from the dispatch thread only
+     *
+     * The latency is recorded once the last handler call of the commit returned, which may be
+     * after this method returned when the handlers run on the handler pool.
+     *
+     * @param sink destination of the frames
+     * @return number of universes delivered, 0 if there was no new commit
+     */
+    int apply(FrameSink sink) {
+        int previous = ready.getAndSet(front);
+        front = previous & INDEX;
+        if ((previous & FRESH) == 0) {
+            return 0;
+        }
+
+        Batch batch = batches[front];
+        latch.open(batch.arrival);
+        for (int i = 0; i < batch.count; i++) {
+            int portAddress = batch.universes[i];
+            sink.publish(portAddress, batch.frames[portAddress], latch);
+        }
+        latch.close();
+        commits++;
+        return batch.count;
+    }
+
+    /** Deliver all pending frames without a commit, used when leaving synchronous mode
+     *
+     * @param sink destination of the frames
+     * @return number of universes delivered
+     */
+    int flush(FrameSink sink) {
+        int delivered = pendingCount;
+        for (int i = 0; i < pendingCount; i++) {
+            int portAddress = pending[i];
+            isPending[portAddress] = false;
+            sink.publish(portAddress, frames[portAddress]);
+        }
+        pendingCount = 0;
+        return delivered;
+    }
+
+    int getPendingCount() {
+        return pendingCount;
+    }
+
+    /** Time between the arrival of the last completed ArtSync and the return of the last handler
+     * call of its commit
+     *
+     * For commits that were combined because the dispatch thread was busy, the latency is measured
+     * from the first ArtSync.
+     *
+     * @return latency in nanoseconds
+     */
+    long getLastCommitLatency() {
+        return latch.getLastLatency();
+    }
+
+    long getMaxCommitLatency() {
+        return latch.getMaxLatency();
+    }
+
+    /** Number of commits of which all handler calls returned, a commit still running when the
+     * next one is applied is not counted
+     *
+     * @return completed commits
+     */
+    long getCompletedCommits() {
+        return latch.getCompletedCommits();
+    }
+
+    /** Number of commits delivered by the dispatch thread
+     *
+     * @return commits
+     */
+    long getCommits() {
+        return commits;
+    }
+
+    /** Number of commits combined with a newer one because the dispatch thread had not taken them yet
+     *
+     * @return coalesced commits
+     */
+    long getCoalescedCommits() {
+        return coalescedCommits;
+    }
+
+    private static class Batch {
+        private final byte[][] frames = new byte[DmxRouter.PORT_ADDRESSES][];
+        private final boolean[] present = new boolean[DmxRouter.PORT_ADDRESSES];
+        private final int[] universes = new int[DmxRouter.PORT_ADDRESSES];
+        private int count;
+        private long arrival;
+
+        void put(int portAddress, byte[] frame) {
+            byte[] stored = frames[portAddress];
+            if (stored == null) {
+                stored = new byte[DmxMerger.SLOTS];
+                frames[portAddress] = stored;
+            }
+            System.arraycopy(frame, 0, stored, 0, DmxMerger.SLOTS);
+
+            if (!present[portAddress]) {
+                present[portAddress] = true;
+                universes[count++] = portAddress;
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < count; i++) {
+                present[universes[i]] = false;
+            }
+            count = 0;
+        }
+    }
+}
@@ -22,11 +22,14 @@ import java.util.Arrays;
 
 public class ArtDmx extends ArtNetPacket {
 
-    private static final int OFFSET_SEQUENCE = 12;
-    private static final int OFFSET_PHYSICAL_PORT = 13;
-    private static final int OFFSET_ADDRESS = 14;
-    private static final int OFFSET_LENGTH = 16;
-    private static final int OFFSET_DMX = 18;
+    static final int OFFSET_SEQUENCE = 12;
+    static final int OFFSET_PHYSICAL_PORT = 13;
+    static final int OFFSET_ADDRESS = 14;
+    static final int OFFSET_LENGTH = 16;
+    static final int OFFSET_DMX = 18;
+
+    static final int MAX_DMX_LENGTH = 512;
+    static final int MIN_PACKET_LENGTH = 20;
 
     private ArtDmx(byte[] packet) {
         this.packet = Arrays.copyOf(packet, packet.length);
@@ -54,7 +57,7 @@ public class ArtDmx extends ArtNetPacket {
     }
 
     public static ArtDmx fromBytes(byte[] data) {
-        if (data.length < 20) {
+        if (data.length < MIN_PACKET_LENGTH) {
             throw new ArtNetException("Packet too short");
         }
 
@@ -75,7 +78,7 @@ public class ArtDmx extends ArtNetPacket {
             super(ArtNetOpCode.ARTNET_OP_DMX.getOpCode(), 530);
         }
 
-        Builder sequence(int sequence) {
+        public Builder sequence(int sequence) {
             if (sequence < 0 || sequence > 255) {
                 throw new IllegalArgumentException("Parameter out of bounds");
             }
@@ -85,7 +88,7 @@ public class ArtDmx extends ArtNetPacket {
             return this;
         }
 
-        Builder physicalPort(int physicalPort) {
+        public Builder physicalPort(int physicalPort) {
             if (physicalPort < 0 || physicalPort > 255) {
                 throw new IllegalArgumentException("Parameter out of bounds");
             }
@@ -95,7 +98,7 @@ public class ArtDmx extends ArtNetPacket {
             return this;
         }
 
-        Builder universe(int universe) {
+        public Builder universe(int universe) {
             if (universe < 0 || universe > 15) {
                 throw new IllegalArgumentException("Parameter out of bounds");
             }
@@ -105,7 +108,7 @@ public class ArtDmx extends ArtNetPacket {
             return this;
         }
 
-        Builder subnet(int subnet) {
+        public Builder subnet(int subnet) {
             if (subnet < 0 || subnet > 15) {
                 throw new IllegalArgumentException("Parameter out of bounds");
             }
@@ -115,7 +118,7 @@ public class ArtDmx extends ArtNetPacket {
             return this;
         }
 
-        Builder network(int network) {
+        public Builder network(int network) {
             if (network < 0 || network > 127) {
                 throw new IllegalArgumentException("Parameter out of bounds");
             }
@@ -125,7 +128,17 @@ public class ArtDmx extends ArtNetPacket {
             return this;
         }
 
-        Builder dmx(byte[] dmx) {
+        public Builder portAddress(int portAddress) {
+            if (portAddress < 0 || portAddress > 0x7FFF) {
+                throw new IllegalArgumentException("Parameter out of bounds");
+            }
+
+            writeUint16Msb(data, OFFSET_ADDRESS, portAddress);
+
+            return this;
+        }
+
+        public Builder dmx(byte[] dmx) {
             if (dmx.length != 512) {
                 throw new IllegalArgumentException("Array length must be 512");
             }
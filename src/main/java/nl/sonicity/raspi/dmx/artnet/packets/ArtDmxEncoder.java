@@ -0,0 +1,76 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet.packets;
+
+import java.nio.ByteBuffer;
+
+import static nl.sonicity.raspi.dmx.artnet.packets.ArtDmx.*;
+
+/**
+ * Reusable, pre-encoded ArtDmx packet for a single universe, the sending counterpart of {@link ArtDmxView}.
+ *
+ * The header is encoded once into a direct buffer. Sending a frame only copies the slots into
+ * the buffer and bumps the sequence number, so a transmitter that refreshes many universes does
+ * not allocate.
+ */
+public class ArtDmxEncoder {
+    private final int portAddress;
+    private final ByteBuffer packet;
+    private int sequence = 0;
+
+    public ArtDmxEncoder(int portAddress) {
+        this.portAddress = portAddress;
+        byte[] encoded = new ArtDmx.Builder()
+                .portAddress(portAddress)
+                .dmx(new byte[MAX_DMX_LENGTH])
+                .build()
+                .toBytes();
+        this.packet = ByteBuffer.allocateDirect(encoded.length);
+        this.packet.put(encoded);
+    }
+
+    public int getPortAddress() {
+        return portAddress;
+    }
+
+    /** Copy the slots of a frame into the packet
+     *
+     * @param dmx 512 slots
+     */
+    public void setDmx(byte[] dmx) {
+        if (dmx.length != MAX_DMX_LENGTH) {
+            throw new IllegalArgumentException("Array length must be 512");
+        }
+        packet.clear().position(OFFSET_DMX);
+        packet.put(dmx);
+    }
+
+    /** Advance the sequence number and return the packet, ready to be sent
+     *
+     * Sequence numbers run from 1 to 255, 0 would tell the receiver to disable reordering.
+     *
+     * @return buffer holding the complete packet between position and limit
+     */
+    public ByteBuffer next() {
+        sequence = sequence % 255 + 1;
+        packet.put(OFFSET_SEQUENCE, (byte) sequence);
+        return packet.clear();
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet.packets;
+
+import nl.sonicity.raspi.dmx.artnet.ArtNetException;
+
+import java.nio.ByteBuffer;
+
+import static nl.sonicity.raspi.dmx.artnet.packets.ArtDmx.*;
+
+/**
+ * Reusable, read-only view of an ArtDmx packet that sits directly on a receive buffer.
+ *
+ * Unlike {@link ArtDmx} nothing is copied when a packet is parsed, the view reads the
+ * fields straight from the backing array of the buffer. A single instance is bound to
+ * a single buffer and is re-initialised with {@link #wrap()} after every receive, so a
+ * steady stream of frames does not allocate.
+ *
+ * The contents of the view are only valid until the next datagram is received into the buffer.
+ */
+public class ArtDmxView {
+    private final ByteBuffer buffer;
+    private final byte[] data;
+    private final int base;
+    private final ByteBuffer slots;
+
+    private int dmxLength;
+
+    public ArtDmxView(ByteBuffer buffer) {
+        if (!buffer.hasArray()) {
+            throw new IllegalArgumentException("Buffer should be backed by an accessible array");
+        }
+
+        if (buffer.capacity() < OFFSET_DMX + MAX_DMX_LENGTH) {
+            throw new IllegalArgumentException("Buffer too small to hold an ArtDmx packet");
+        }
+
+        this.buffer = buffer;
+        this.data = buffer.array();
+        this.base = buffer.arrayOffset();
+
+        ByteBuffer dmx = buffer.duplicate();
+        dmx.clear().position(OFFSET_DMX).limit(OFFSET_DMX + MAX_DMX_LENGTH);
+        this.slots = dmx.slice().asReadOnlyBuffer();
+    }
+
+    /** Quick check on the header of the packet between position and limit of the buffer
+     *
+     * @param buffer buffer holding a received datagram
+     * @return true if the packet identifies itself as an ArtDmx packet
+     */
+    public static boolean isArtDmx(ByteBuffer buffer) {
+        if (buffer.remaining() < 10) {
+            return false;
+        }
+
+        int start = buffer.position();
+        for (int i = 0; i < ArtNetPacket.ARTNET_ID.length; i++) {
+            if (buffer.get(start + i) != ArtNetPacket.ARTNET_ID[i]) {
+                return false;
+            }
+        }
+
+        return buffer.get(start + 8) == 0x00 && buffer.get(start + 9) == 0x50;
+    }
+
+    /** Validate the packet currently in the buffer and point the view at it
+     *
+     * The packet is expected to start at offset 0 and end at the limit of the buffer,
+     * which is the state of the buffer after a receive followed by a flip. Slots beyond
+     * the length of the packet are cleared, so they read as zero just like the copy
+     * returned by {@link ArtDmx#getDmxData()}.
+     *
+     * @return this view
+     */
+    public ArtDmxView wrap() {
+        int length = buffer.limit();
+        if (length < MIN_PACKET_LENGTH) {
+            throw new ArtNetException("Packet too short");
+        }
+
+        if (data[base + 8] != 0x00 || data[base + 9] != 0x50) {
+            throw new ArtNetException("Wrong opcode");
+        }
+
+        int protocolVersion = (data[base + 10] << 8) + (data[base + 11] & 0xff);
+        if (protocolVersion < 14) {
+            throw new ArtNetException("ArtNet protocol version not compatible");
+        }
+
+        int declaredLength = ArtNetPacket.readUint16Lsb(data, base + OFFSET_LENGTH);
+        dmxLength = Math.max(0, Math.min(Math.min(declaredLength, MAX_DMX_LENGTH), length - OFFSET_DMX));
+
+        for (int i = base + OFFSET_DMX + dmxLength; i < base + OFFSET_DMX + MAX_DMX_LENGTH; i++) {
+            data[i] = 0;
+        }
+
+        return this;
+    }
+
+    public int getSequence() {
+        return ArtNetPacket.readUint8(data, base + OFFSET_SEQUENCE);
+    }
+
+    public int getPhysicalPort() {
+        return ArtNetPacket.readUint8(data, base + OFFSET_PHYSICAL_PORT);
+    }
+
+    public int getUniverse() {
+        return data[base + OFFSET_ADDRESS] & 0x0F;
+    }
+
+    public int getSubnet() {
+        return (data[base + OFFSET_ADDRESS] & 0xF0) >> 4;
+    }
+
+    public int getNetwork() {
+        return data[base + OFFSET_ADDRESS + 1] & 0x7F;
+    }
+
+    /** The full 15 bit Port-Address, network, subnet and universe combined
+     *
+     * @return Port-Address of this packet
+     */
+    public int getPortAddress() {
+        return ArtNetPacket.readUint16Msb(data, base + OFFSET_ADDRESS) & 0x7FFF;
+    }
+
+    public int getDmxLength() {
+        return dmxLength;
+    }
+
+    /** Read a single slot
+     *
+     * @param index zero based slot index, DMX address minus one
+     * @return slot value between 0 and 255
+     */
+    public int getSlot(int index) {
+        if (index < 0 || index >= MAX_DMX_LENGTH) {
+            throw new IndexOutOfBoundsException("Slot index out of bounds");
+        }
+        return data[base + OFFSET_DMX + index] & 0xFF;
+    }
+
+    /** Copy a range of slots into an existing array
+     *
+     * @param from zero based index of the first slot
+     * @param destination array to copy into
+     * @param offset offset in the destination array
+     * @param length number of slots to copy
+     */
+    public void copySlots(int from, byte[] destination, int offset, int length) {
+        if (from < 0 || length < 0 || from + length > MAX_DMX_LENGTH) {
+            throw new IndexOutOfBoundsException("Slot range out of bounds");
+        }
+        System.arraycopy(data, base + OFFSET_DMX + from, destination, offset, length);
+    }
+
+    /** Read-only buffer over the slots of the current packet
+     *
+     * The same instance is returned for every packet, the position is reset to 0 and
+     * the limit is set to the DMX length of the current packet.
+     *
+     * @return read-only view on the DMX slots
+     */
+    public ByteBuffer getSlots() {
+        slots.clear().limit(dmxLength);
+        return slots;
+    }
+}
@@ -19,7 +19,6 @@ import lombok.extern.slf4j.Slf4j;
 import nl.sonicity.raspi.dmx.artnet.ArtNetException;
 import nl.sonicity.raspi.dmx.artnet.ArtNetOpCode;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 
 @Slf4j
@@ -51,24 +50,27 @@ public abstract class ArtNetPacket {
         return Arrays.copyOf(packet, packet.length);
     }
 
+    /** Parse a raw packet into the matching packet class
+     *
+     * @param data complete packet, including the Art-Net header
+     * @return the parsed packet or null if the opcode is not supported by this node
+     */
     public static ArtNetPacket parseBytes(byte[] data) {
         if (data.length < 12) {
             throw new ArtNetException("Malformed packet");
         }
 
-        byte[] id = Arrays.copyOfRange(data, 0, 8);
-        if (!Arrays.equals(ArtNetPacket.ARTNET_ID, id)) {
+        if (!Arrays.equals(ARTNET_ID, 0, ARTNET_ID.length, data, 0, ARTNET_ID.length)) {
             throw new ArtNetException("Malformed packet");
         }
 
         ArtNetOpCode opCode = extractOpCode(data);
-        Class clazz = opCode.getPacketClass();
-
-        try {
-            return (ArtNetPacket) clazz.getMethod("fromBytes", byte[].class).invoke(clazz, data);
-        } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
-            throw new ArtNetException(String.format("Failed to construct class for packet type %s", opCode.toString()), e);
+        if (opCode == null) {
+            // Unsupported opcode, ignore the packet
+            return null;
         }
+
+        return opCode.decode(data);
     }
 
     public static ArtNetOpCode extractOpCode(byte[] data) {
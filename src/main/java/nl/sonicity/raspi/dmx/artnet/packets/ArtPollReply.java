@@ -20,7 +20,8 @@ import nl.sonicity.raspi.dmx.artnet.ArtNetException;
 import nl.sonicity.raspi.dmx.artnet.ArtNetOpCode;
 
 import java.net.Inet4Address;
-import java.nio.charset.Charset;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
@@ -49,6 +50,8 @@ public class ArtPollReply extends ArtNetPacket {
     private static final int OFFSET_SWREMOTE = 196;
     private static final int OFFSET_STYLE = 200;
     private static final int OFFSET_MACADDR = 201;
+    private static final int OFFSET_BINDIP = 207;
+    private static final int OFFSET_BINDINDEX = 211;
     private static final int OFFSET_STATUS2 = 212;
 
     private ArtPollReply(byte[] packet) {
@@ -68,13 +71,77 @@ public class ArtPollReply extends ArtNetPacket {
     }
 
     public String getShortName() {
-        byte[] shortName = new byte[18];
-        System.arraycopy(packet, OFFSET_SHORTNAME, shortName, 0, 18);
-        int i;
+        return readString(OFFSET_SHORTNAME, 18);
+    }
+
+    public String getLongName() {
+        return readString(OFFSET_LONGNAME, 64);
+    }
+
+    public String getNodeReport() {
+        return readString(OFFSET_NODEREPORT, 64);
+    }
+
+    public Inet4Address getIpAddress() {
+        try {
+            return (Inet4Address) InetAddress.getByAddress(Arrays.copyOfRange(packet, OFFSET_IPADDRESS, OFFSET_IPADDRESS + 4));
+        } catch (UnknownHostException e) {
+            // Only thrown for addresses of the wrong length
+            throw new ArtNetException("Invalid IP address");
+        }
+    }
+
+    public int getStatus1() {
+        return readUint8(packet, OFFSET_STATUS1);
+    }
+
+    public int getStatus2() {
+        return readUint8(packet, OFFSET_STATUS2);
+    }
+
+    public int getNetSwitch() {
+        return readUint8(packet, OFFSET_NETSWITCH);
+    }
+
+    public int getSubSwitch() {
+        return readUint8(packet, OFFSET_SUBNETSWITCH);
+    }
+
+    public int getNumPorts() {
+        return readUint16Lsb(packet, OFFSET_PORTS);
+    }
+
+    public int getSwOut(int port) {
+        return readUint8(packet, OFFSET_SWOUT + port);
+    }
+
+    public int getBindIndex() {
+        return readUint8(packet, OFFSET_BINDINDEX);
+    }
+
+    public boolean isOutput(int port) {
+        return (readUint8(packet, OFFSET_PORTTYPE + port) & 0x80) != 0;
+    }
+
+    public int getGoodOutput(int port) {
+        return readUint8(packet, OFFSET_GOODOUTPUT + port);
+    }
+
+    /** The full 15 bit Port-Address of an output port, combined from NetSwitch, SubSwitch and SwOut
+     *
+     * @param port port index between 0 and 3
+     * @return Port-Address of the port
+     */
+    public int getPortAddress(int port) {
+        return (getNetSwitch() & 0x7F) << 8 | (getSubSwitch() & 0x0F) << 4 | getSwOut(port) & 0x0F;
+    }
+
+    private String readString(int offset, int length) {
+        int end;
         //noinspection StatementWithEmptyBody
-        for (i = 0; i < 18 && shortName[i] != 0x0; i++) {
+        for (end = 0; end < length && packet[offset + end] != 0x0; end++) {
         }
-        return new String(shortName, 0, i, Charset.forName("ASCII"));
+        return new String(packet, offset, end, StandardCharsets.US_ASCII);
     }
 
     public static class Builder extends ArtNetPacket.Builder<ArtPollReply, ArtPollReply.Builder> {
@@ -194,6 +261,21 @@ public class ArtPollReply extends ArtNetPacket {
             return this;
         }
 
+        public Builder bindIp(Inet4Address inet4Address) {
+            System.arraycopy(inet4Address.getAddress(), 0, data, OFFSET_BINDIP, 4);
+
+            return this;
+        }
+
+        public Builder bindIndex(int bindIndex) {
+            if (bindIndex < 0 || bindIndex > 255) {
+                throw new IllegalArgumentException("Parameter out of bounds");
+            }
+            writeUint8(data, OFFSET_BINDINDEX, bindIndex);
+
+            return this;
+        }
+
         // TODO Split in settings
         public Builder status1(int status1) {
             if (status1 < 0 || status1 > 255) {
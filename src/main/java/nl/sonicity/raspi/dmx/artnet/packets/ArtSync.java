@@ -0,0 +1,63 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet.packets;
+
+import nl.sonicity.raspi.dmx.artnet.ArtNetException;
+import nl.sonicity.raspi.dmx.artnet.ArtNetOpCode;
+
+import java.util.Arrays;
+
+public class ArtSync extends ArtNetPacket {
+
+    private static final int OFFSET_AUX1 = 12;
+    private static final int OFFSET_AUX2 = 13;
+
+    private ArtSync(byte[] packet) {
+        this.packet = Arrays.copyOf(packet, packet.length);
+    }
+
+    public static ArtSync fromBytes(byte[] data) {
+        if (data.length < 14) {
+            throw new ArtNetException("Packet length invalid");
+        }
+
+        if (data[8] != 0x00 || data[9] != 0x52) {
+            throw new ArtNetException("Wrong opcode");
+        }
+
+        int protocolVersion = (data[10] << 8) + (data[11] & 0xff);
+        if (protocolVersion < 14) {
+            throw new ArtNetException("ArtNet protocol version not compatible");
+        }
+
+        return new ArtSync(data);
+    }
+
+    public static class Builder extends ArtNetPacket.Builder<ArtSync, Builder> {
+        public Builder() {
+            super(ArtNetOpCode.ARTNET_OP_SYNC.getOpCode(), 14);
+
+            // Aux fields are transmitted as zero
+            data[OFFSET_AUX1] = 0x00;
+            data[OFFSET_AUX2] = 0x00;
+        }
+
+        @Override
+        public ArtSync build() {
+            return new ArtSync(data);
+        }
+    }
+}
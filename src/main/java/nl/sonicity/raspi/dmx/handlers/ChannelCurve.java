@@ -0,0 +1,47 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.handlers;
+
+/**
+ * Response curve applied to a DMX value before it is compared with the thresholds of a channel.
+ */
+public enum ChannelCurve {
+    LINEAR {
+        @Override
+        public int apply(int value) {
+            return value;
+        }
+    },
+    INVERTED {
+        @Override
+        public int apply(int value) {
+            return 255 - value;
+        }
+    },
+    SQUARE {
+        @Override
+        public int apply(int value) {
+            return (value * value + 127) / 255;
+        }
+    };
+
+    /** Map a DMX value onto the curve
+     *
+     * @param value DMX value between 0 and 255
+     * @return value between 0 and 255
+     */
+    public abstract int apply(int value);
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.handlers;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Compiled channel mappings for up to 64 consecutive channels.
+ *
+ * All mappings are compiled into lookup tables when the mapper is created. Evaluating a frame
+ * is a table lookup and a few bit operations per channel, without branches on the configuration
+ * and without allocation.
+ */
+public class ChannelMapper {
+    private final int channels;
+    // Table of channel i starts at i << 8
+    private final byte[] tables;
+
+    /**
+     * @param mappings mapping for each channel, at most {@link GpioOutputStage#MAX_OUTPUTS}
+     */
+    public ChannelMapper(List<ChannelMapping> mappings) {
+        if (mappings.isEmpty() || mappings.size() > GpioOutputStage.MAX_OUTPUTS) {
+            throw new IllegalArgumentException("Number of channels should be between 1 and " + GpioOutputStage.MAX_OUTPUTS);
+        }
+
+        this.channels = mappings.size();
+        this.tables = new byte[channels << 8];
+        for (int i = 0; i < channels; i++) {
+            System.arraycopy(mappings.get(i).compile(), 0, tables, i << 8, 256);
+        }
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /** Compute the new state of all outputs
+     *
+     * @param state current state, bit i set when output i is on
+     * @param slots DMX values of the channels
+     * @return new state
+     */
+    public long evaluate(long state, byte[] slots) {
+        long next = 0;
+        for (int i = 0; i < channels; i++) {
+            next |= evaluate(state, i, slots[i]) << i;
+        }
+        return next;
+    }
+
+    /** Compute the new state, only looking at the channels that changed
+     *
+     * @param state current state, bit i set when output i is on
+     * @param slots DMX values of the channels
+     * @param changed bit i set when channel i changed
+     * @return new state
+     */
+    public long evaluate(long state, ByteBuffer slots, BitSet changed) {
+        long next = state;
+        for (int i = changed.nextSetBit(0); i >= 0 && i < channels; i = changed.nextSetBit(i + 1)) {
+            next = (next & ~(1L << i)) | evaluate(state, i, slots.get(i)) << i;
+        }
+        return next;
+    }
+
+    private long evaluate(long state, int channel, byte value) {
+        int entry = tables[channel << 8 | value & 0xFF];
+        long current = state >>> channel & 1L;
+        return current & (entry >> 1) | entry & ChannelMapping.SET;
+    }
+}
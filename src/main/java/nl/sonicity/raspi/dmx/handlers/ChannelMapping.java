@@ -0,0 +1,69 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.handlers;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Mapping of a single DMX channel onto an on/off output.
+ *
+ * The value of the channel is passed through the curve, at or above the enable threshold the
+ * output is switched on, at or below the disable threshold it is switched off. In between the
+ * output keeps its state, the gap between the thresholds is the hysteresis.
+ */
+@Value
+@Builder
+public class ChannelMapping {
+    public static final ChannelMapping DEFAULT = ChannelMapping.builder().build();
+
+    static final byte SET = 0x01;
+    static final byte KEEP = 0x02;
+
+    @Builder.Default
+    private ChannelCurve curve = ChannelCurve.LINEAR;
+
+    @Builder.Default
+    private int enableThreshold = 153;
+
+    @Builder.Default
+    private int disableThreshold = 102;
+
+    /** Compile the mapping into a table with an entry for every DMX value
+     *
+     * Every entry holds the {@link #SET} bit when the output should be on and the
+     * {@link #KEEP} bit when the output keeps its current state, so the new state of
+     * an output is {@code (state & keep) | set}.
+     *
+     * @return table of 256 entries
+     */
+    byte[] compile() {
+        if (disableThreshold < 0 || enableThreshold > 255 || disableThreshold >= enableThreshold) {
+            throw new IllegalArgumentException("Thresholds should be between 0 and 255, with the disable threshold below the enable threshold");
+        }
+
+        byte[] table = new byte[256];
+        for (int value = 0; value < table.length; value++) {
+            int level = curve.apply(value);
+            if (level >= enableThreshold) {
+                table[value] = SET;
+            } else if (level > disableThreshold) {
+                table[value] = KEEP;
+            }
+        }
+        return table;
+    }
+}
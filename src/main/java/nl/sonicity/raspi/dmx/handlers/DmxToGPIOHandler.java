@@ -19,40 +19,73 @@ import com.pi4j.io.gpio.*;
 import lombok.extern.slf4j.Slf4j;
 import nl.sonicity.raspi.dmx.artnet.DmxHandler;
 
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.IntStream;
 
 @Slf4j
 public class DmxToGPIOHandler extends DmxHandler {
-    private static final PinState STARTUP_STATE = PinState.HIGH;
     private static final PinState ENABLED_STATE = PinState.LOW;
-    private static final PinState DISABLED_STATE = PinState.HIGH;
 
     private static final Pin[] RELAY_PINS = new Pin[]{
             RaspiPin.GPIO_07, RaspiPin.GPIO_11, RaspiPin.GPIO_13, RaspiPin.GPIO_15 };
-    private final List<GpioPinDigitalOutput> relays = new ArrayList<>(RELAY_PINS.length);
 
     private final GpioController gpio;
+    private final GpioOutputStage outputStage;
+    private final ChannelMapper mapper;
 
     public DmxToGPIOHandler(GpioController gpioController, int universe, int address) {
-        super("Dmx2GPIO", universe, address, 8);
+        this(gpioController, universe, address, 8, RELAY_PINS, defaultMappings(RELAY_PINS.length));
+    }
+
+    /** Handler with one DMX channel per pin
+     *
+     * @param gpioController controller to provision the pins with
+     * @param universe Port-Address to listen to
+     * @param address DMX address of the first pin
+     * @param pins pins to drive, at most {@link GpioOutputStage#MAX_OUTPUTS}
+     */
+    public DmxToGPIOHandler(GpioController gpioController, int universe, int address, Pin[] pins) {
+        this(gpioController, universe, address, pins, defaultMappings(pins.length));
+    }
+
+    /** Handler with one DMX channel per pin and a mapping for every channel
+     *
+     * @param gpioController controller to provision the pins with
+     * @param universe Port-Address to listen to
+     * @param address DMX address of the first pin
+     * @param pins pins to drive, at most {@link GpioOutputStage#MAX_OUTPUTS}
+     * @param mappings how the channel of each pin switches the pin
+     */
+    public DmxToGPIOHandler(GpioController gpioController, int universe, int address, Pin[] pins, List<ChannelMapping> mappings) {
+        this(gpioController, universe, address, pins.length, pins, mappings);
+    }
+
+    private DmxToGPIOHandler(GpioController gpioController, int universe, int address, int width, Pin[] pins, List<ChannelMapping> mappings) {
+        super("Dmx2GPIO", universe, address, width);
+        if (mappings.size() != pins.length) {
+            throw new IllegalArgumentException("Every pin should have a channel mapping");
+        }
+        this.mapper = new ChannelMapper(mappings);
         this.gpio = gpioController;
+        this.outputStage = new GpioOutputStage(gpioController, pins, ENABLED_STATE);
 
-        Arrays.stream(RELAY_PINS).forEach(pin -> {
-            GpioPinDigitalOutput relay = gpio.provisionDigitalOutputPin(pin, STARTUP_STATE);
-            relay.setShutdownOptions(true, STARTUP_STATE);
-            log.debug("DMX address {} controls {}, current state {}", address, relay.getName(), relay.getState().getName());
-            relays.add(relay);
-        });
+        for (int i = 0; i < outputStage.getOutputCount(); i++) {
+            GpioPinDigitalOutput relay = outputStage.getOutput(i);
+            log.debug("DMX address {} controls {}, current state {}", address + i, relay.getName(), relay.getState().getName());
+        }
     }
 
     @Override
     public void onDmx(byte[] data) {
-        IntStream.range(0, relays.size()).forEach(i ->
-            toggleOnDmx(relays.get(i), data[i] & 0xFF)
-        );
+        outputStage.apply(mapper.evaluate(outputStage.getState(), data));
+    }
+
+    @Override
+    public void onDmx(ByteBuffer slots, BitSet changed) {
+        // Only channels that changed can toggle an output
+        outputStage.apply(mapper.evaluate(outputStage.getState(), slots, changed));
     }
 
     @Override
@@ -62,19 +95,14 @@ public class DmxToGPIOHandler extends DmxHandler {
 
     @Override
     public void timeout() {
-        IntStream.range(0, relays.size()).forEach(i ->
-            relays.get(i).setState(STARTUP_STATE)
-        );
+        outputStage.reset();
     }
 
-    private void toggleOnDmx(GpioPinDigitalOutput output, int dmxVal) {
-        if (dmxVal <= 102 && output.isState(ENABLED_STATE)) {
-            log.debug("{} set to {}", output.getName(), DISABLED_STATE.getName());
-            output.setState(DISABLED_STATE);
-        } else if (dmxVal >= 153 && output.isState(DISABLED_STATE)) {
-            log.debug("{} set to {}", output.getName(), ENABLED_STATE.getName());
-            output.setState(ENABLED_STATE);
-        }
+    GpioOutputStage getOutputStage() {
+        return outputStage;
+    }
 
+    private static List<ChannelMapping> defaultMappings(int channels) {
+        return Collections.nCopies(channels, ChannelMapping.DEFAULT);
     }
 }
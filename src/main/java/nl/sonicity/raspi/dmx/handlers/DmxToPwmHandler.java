@@ -0,0 +1,90 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.handlers;
+
+import com.pi4j.io.gpio.GpioController;
+import com.pi4j.io.gpio.Pin;
+import com.pi4j.io.gpio.PinState;
+import lombok.extern.slf4j.Slf4j;
+import nl.sonicity.raspi.dmx.artnet.DmxHandler;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * Dimmer that turns DMX levels into software PWM on GPIO pins, one channel per pin.
+ */
+@Slf4j
+public class DmxToPwmHandler extends DmxHandler {
+    public static final int DEFAULT_FREQUENCY = 100;
+    public static final int DEFAULT_STEPS = 100;
+
+    private final PwmScheduler scheduler;
+
+    public DmxToPwmHandler(GpioController gpioController, int universe, int address, Pin[] pins) {
+        this(gpioController, universe, address, pins, DEFAULT_FREQUENCY, DEFAULT_STEPS);
+    }
+
+    /**
+     * @param gpioController controller to provision the pins with
+     * @param universe Port-Address to listen to
+     * @param address DMX address of the first pin
+     * @param pins pins to dim, at most {@link GpioOutputStage#MAX_OUTPUTS}
+     * @param frequency PWM frequency in Hz
+     * @param steps number of duty cycle steps per period
+     */
+    public DmxToPwmHandler(GpioController gpioController, int universe, int address, Pin[] pins, int frequency, int steps) {
+        super("Dmx2PWM", universe, address, pins.length);
+        GpioOutputStage outputStage = new GpioOutputStage(gpioController, pins, PinState.HIGH);
+        this.scheduler = new PwmScheduler(outputStage, frequency, steps);
+        log.debug("DMX address {} dims {} pins at {}Hz", address, pins.length, frequency);
+    }
+
+    @Override
+    public void onDmx(byte[] data) {
+        for (int i = 0; i < getWidth(); i++) {
+            scheduler.setLevel(i, data[i] & 0xFF);
+        }
+    }
+
+    @Override
+    public void onDmx(ByteBuffer slots, BitSet changed) {
+        for (int i = changed.nextSetBit(0); i >= 0 && i < getWidth(); i = changed.nextSetBit(i + 1)) {
+            scheduler.setLevel(i, slots.get(i) & 0xFF);
+        }
+    }
+
+    @Override
+    public void start() {
+        scheduler.start(getUniverse() + "-" + getAddress());
+    }
+
+    @Override
+    public void shutdown() {
+        scheduler.stop();
+    }
+
+    @Override
+    public void timeout() {
+        for (int i = 0; i < getWidth(); i++) {
+            scheduler.setLevel(i, 0);
+        }
+    }
+
+    PwmScheduler getScheduler() {
+        return scheduler;
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.handlers;
+
+import com.pi4j.io.gpio.GpioController;
+import com.pi4j.io.gpio.GpioPinDigitalOutput;
+import com.pi4j.io.gpio.Pin;
+import com.pi4j.io.gpio.PinState;
+
+/**
+ * Batched output stage for up to 64 digital outputs.
+ *
+ * The state of all outputs is kept in a single word, bit i is set when output i is enabled.
+ * A frame computes the complete desired word, {@link #apply(long)} compares it with the cached
+ * word and writes only the outputs that changed, all outputs switching on in one call to the
+ * controller and all outputs switching off in another. The batch arrays are reused, applying
+ * a frame does not allocate.
+ */
+public class GpioOutputStage {
+    public static final int MAX_OUTPUTS = Long.SIZE;
+
+    private final GpioController gpio;
+    private final GpioPinDigitalOutput[] outputs;
+    private final PinState enabledState;
+    private final PinState disabledState;
+
+    // Batch arrays by size, the controller takes exactly sized arrays
+    private final GpioPinDigitalOutput[][] enableBatches;
+    private final GpioPinDigitalOutput[][] disableBatches;
+
+    private long state = 0;
+    private long frames;
+    private long writes;
+
+    /** Provision the outputs, all outputs start disabled
+     *
+     * @param gpioController controller to provision the pins with
+     * @param pins pins to use as outputs, at most {@link #MAX_OUTPUTS}
+     * @param enabledState pin state of an enabled output, the opposite state is used when disabled
+     */
+    public GpioOutputStage(GpioController gpioController, Pin[] pins, PinState enabledState) {
+        if (pins.length < 1 || pins.length > MAX_OUTPUTS) {
+            throw new IllegalArgumentException("Number of outputs should be between 1 and " + MAX_OUTPUTS);
+        }
+
+        this.gpio = gpioController;
+        this.enabledState = enabledState;
+        this.disabledState = PinState.getInverseState(enabledState);
+        this.outputs = new GpioPinDigitalOutput[pins.length];
+        for (int i = 0; i < pins.length; i++) {
+            GpioPinDigitalOutput output = gpio.provisionDigitalOutputPin(pins[i], disabledState);
+            output.setShutdownOptions(true, disabledState);
+            outputs[i] = output;
+        }
+
+        this.enableBatches = new GpioPinDigitalOutput[pins.length + 1][];
+        this.disableBatches = new GpioPinDigitalOutput[pins.length + 1][];
+        for (int size = 0; size <= pins.length; size++) {
+            enableBatches[size] = new GpioPinDigitalOutput[size];
+            disableBatches[size] = new GpioPinDigitalOutput[size];
+        }
+    }
+
+    /** Bring the outputs to the desired state
+     *
+     * @param desired bit i set when output i should be enabled, bits beyond the number of outputs are ignored
+     * @return the number of outputs written
+     */
+    public int apply(long desired) {
+        frames++;
+        long changed = (desired ^ state) & mask();
+        if (changed == 0) {
+            return 0;
+        }
+
+        int enable = Long.bitCount(changed & desired);
+        int disable = Long.bitCount(changed) - enable;
+        GpioPinDigitalOutput[] enableBatch = enableBatches[enable];
+        GpioPinDigitalOutput[] disableBatch = disableBatches[disable];
+
+        int enabled = 0;
+        int disabled = 0;
+        for (long remaining = changed; remaining != 0; remaining &= remaining - 1) {
+            int index = Long.numberOfTrailingZeros(remaining);
+            if ((desired & (1L << index)) != 0) {
+                enableBatch[enabled++] = outputs[index];
+            } else {
+                disableBatch[disabled++] = outputs[index];
+            }
+        }
+
+        if (enable > 0) {
+            gpio.setState(enabledState, enableBatch);
+        }
+        if (disable > 0) {
+            gpio.setState(disabledState, disableBatch);
+        }
+
+        state = (state & ~changed) | (desired & changed);
+        writes += enable + disable;
+        return enable + disable;
+    }
+
+    /** Disable all outputs
+     *
+     * @return the number of outputs written
+     */
+    public int reset() {
+        return apply(0);
+    }
+
+    /** Cached state of the outputs
+     *
+     * @return bit i set when output i is enabled
+     */
+    public long getState() {
+        return state;
+    }
+
+    public int getOutputCount() {
+        return outputs.length;
+    }
+
+    public GpioPinDigitalOutput getOutput(int index) {
+        return outputs[index];
+    }
+
+    /** Number of frames applied to this stage
+     *
+     * @return frames
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /** Number of individual pin writes issued to the controller
+     *
+     * @return writes
+     */
+    public long getWrites() {
+        return writes;
+    }
+
+    private long mask() {
+        return outputs.length == MAX_OUTPUTS ? -1L : (1L << outputs.length) - 1;
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.handlers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Software PWM for the outputs of a {@link GpioOutputStage}.
+ *
+ * A dedicated thread runs the PWM periods. Every period starts with all outputs that have a
+ * duty above zero switched on, after that the thread only wakes up at the steps where at least
+ * one output switches off. Each wakeup is a tick that computes the state of all outputs and
+ * applies it in one pass. When no output is dimmed, all outputs are either off or fully on, the
+ * thread sleeps until a level changes. New levels take effect at the start of the next period.
+ */
+public class PwmScheduler {
+    private final GpioOutputStage outputStage;
+    private final int steps;
+    private final long periodNanos;
+    private final long stepNanos;
+
+    private final AtomicIntegerArray levels;
+    private final int[] duty;
+
+    private volatile boolean terminate = false;
+    private volatile long lateTicks;
+    private Thread thread;
+
+    /**
+     * @param outputStage outputs to drive
+     * @param frequency PWM frequency in Hz
+     * @param steps number of duty cycle steps per period
+     */
+    public PwmScheduler(GpioOutputStage outputStage, int frequency, int steps) {
+        if (frequency < 1 || steps < 2) {
+            throw new IllegalArgumentException("Frequency should be at least 1Hz with at least 2 steps");
+        }
+
+        this.outputStage = outputStage;
+        this.steps = steps;
+        this.periodNanos = TimeUnit.SECONDS.toNanos(1) / frequency;
+        this.stepNanos = periodNanos / steps;
+        this.levels = new AtomicIntegerArray(outputStage.getOutputCount());
+        this.duty = new int[outputStage.getOutputCount()];
+    }
+
+    /** Start the PWM thread, does nothing when it is already running
+     *
+     * @param name name of the thread, e.g. the universe and address of the handler
+     */
+    public synchronized void start(String name) {
+        if (thread != null) {
+            return;
+        }
+        terminate = false;
+        thread = new Thread(this::run);
+        thread.setName("PwmScheduler-" + name);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        terminate = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(1000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /** Set the level of an output
+     *
+     * @param output index of the output
+     * @param level between 0 (off) and 255 (fully on)
+     */
+    public void setLevel(int output, int level) {
+        int steps = (level * this.steps + 127) / 255;
+        if (levels.getAndSet(output, steps) != steps) {
+            Thread scheduler = thread;
+            if (scheduler != null) {
+                LockSupport.unpark(scheduler);
+            }
+        }
+    }
+
+    /** Duty cycle of an output as set by the last call to {@link #setLevel(int, int)}
+     *
+     * @param output index of the output
+     * @return number of steps per period the output is on
+     */
+    public int getDuty(int output) {
+        return levels.get(output);
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    /** Number of ticks that started a full step or more after their deadline
+     *
+     * @return late ticks
+     */
+    public long getLateTicks() {
+        return lateTicks;
+    }
+
+    private void run() {
+        long periodStart = System.nanoTime();
+        while (!terminate) {
+            // Levels are latched at the start of a period, so a period is never cut short
+            boolean dimming = false;
+            for (int i = 0; i < duty.length; i++) {
+                duty[i] = levels.get(i);
+                dimming |= duty[i] > 0 && duty[i] < steps;
+            }
+
+            if (!dimming) {
+                outputStage.apply(desired(0));
+                LockSupport.park(this);
+                periodStart = System.nanoTime();
+                continue;
+            }
+
+            int step = 0;
+            while (step < steps && !terminate) {
+                outputStage.apply(desired(step));
+                step = nextEdge(step);
+                sleepUntil(periodStart + step * stepNanos);
+            }
+
+            periodStart += periodNanos;
+            long now = System.nanoTime();
+            if (now - periodStart > periodNanos) {
+                // Too far behind, start over instead of catching up
+                periodStart = now;
+            }
+        }
+        outputStage.reset();
+    }
+
+    private long desired(int step) {
+        long desired = 0;
+        for (int i = 0; i < duty.length; i++) {
+            if (duty[i] > step) {
+                desired |= 1L << i;
+            }
+        }
+        return desired;
+    }
+
+    private int nextEdge(int step) {
+        int next = steps;
+        for (int i = 0; i < duty.length; i++) {
+            if (duty[i] > step && duty[i] < next) {
+                next = duty[i];
+            }
+        }
+        return next;
+    }
+
+    private void sleepUntil(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining < -stepNanos) {
+            lateTicks++;
+        }
+        while (remaining > 0 && !terminate) {
+            LockSupport.parkNanos(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+}
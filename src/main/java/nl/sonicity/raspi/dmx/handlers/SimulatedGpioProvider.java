@@ -21,9 +21,24 @@ import com.pi4j.io.gpio.Pin;
 import com.pi4j.io.gpio.PinState;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public class SimulatedGpioProvider extends GpioProviderBase implements GpioProvider {
+    private static final int EDGE_SAMPLES = 4096;
+
+    /**
+     * Called on the thread that changes a pin, with the time of the change. Changes of the same
+     * pin are reported one at a time and in order.
+     */
+    public interface EdgeListener {
+        void edge(Pin pin, PinState state, long nanoTime);
+    }
+
     private String configName;
+    private final LongAdder stateWrites = new LongAdder();
+    private final Map<Pin, PinTiming> timings = new ConcurrentHashMap<>();
+    private volatile EdgeListener edgeListener;
 
     public SimulatedGpioProvider() {
         Map<String, String> env = System.getenv();
@@ -40,12 +55,87 @@ public class SimulatedGpioProvider extends GpioProviderBase implements GpioProvi
     }
 
     public void setState(Pin pin, PinState state) {
-        this.getPinCache(pin).setState(state);
+        stateWrites.increment();
+        PinTiming timing = timings.computeIfAbsent(pin, p -> new PinTiming());
+        // Compare, record and update as one step, so concurrent writers of a pin agree on its edges
+        synchronized (timing) {
+            long now = System.nanoTime();
+            if (this.getPinCache(pin).getState() != state) {
+                timing.edge(state, now);
+                EdgeListener listener = edgeListener;
+                if (listener != null) {
+                    listener.edge(pin, state, now);
+                }
+            }
+            this.getPinCache(pin).setState(state);
+        }
         this.dispatchPinDigitalStateChangeEvent(pin, state);
     }
 
+    /** Listen to every change of a pin, e.g. to measure the latency from a packet to the pin
+     *
+     * @param edgeListener listener, or null to remove it
+     */
+    public void setEdgeListener(EdgeListener edgeListener) {
+        this.edgeListener = edgeListener;
+    }
+
+    /** Number of digital pin writes since this provider was created
+     *
+     * @return writes
+     */
+    public long getStateWrites() {
+        return stateWrites.sum();
+    }
+
+    /** Time between successive changes of a pin into the same state
+     *
+     * @param pin simulated pin
+     * @param state state the pin changed into, HIGH for the periods between rising edges
+     * @return recorded periods in nanoseconds, null if the pin was never written
+     */
+    public TimingRecorder getEdgePeriods(Pin pin, PinState state) {
+        PinTiming timing = timings.get(pin);
+        return timing == null ? null : timing.periods[state.ordinal()];
+    }
+
+    /** Period jitter of a pin, the deviation of the measured periods from the nominal period
+     *
+     * @param pin simulated pin
+     * @param state state the pin changed into, HIGH for the periods between rising edges
+     * @param nominalPeriodNanos expected period
+     * @param percentile between 0 and 100, e.g. 50 or 99
+     * @return jitter in nanoseconds, or -1 if no periods were measured
+     */
+    public long getPeriodJitter(Pin pin, PinState state, long nominalPeriodNanos, double percentile) {
+        TimingRecorder periods = getEdgePeriods(pin, state);
+        return periods == null ? -1 : periods.deviationPercentile(nominalPeriodNanos, percentile);
+    }
+
     public void setAnalogValue(Pin pin, double value) {
         this.getPinCache(pin).setAnalogValue(value);
         this.dispatchPinAnalogValueChangeEvent(pin, value);
     }
+
+    /**
+     * Edge times of a pin, guarded by the instance itself.
+     */
+    private static class PinTiming {
+        private final long[] lastEdge = new long[PinState.values().length];
+        private final TimingRecorder[] periods = new TimingRecorder[PinState.values().length];
+
+        PinTiming() {
+            for (int i = 0; i < periods.length; i++) {
+                periods[i] = new TimingRecorder(EDGE_SAMPLES);
+            }
+        }
+
+        synchronized void edge(PinState state, long nanoTime) {
+            int index = state.ordinal();
+            if (lastEdge[index] != 0) {
+                periods[index].record(nanoTime - lastEdge[index]);
+            }
+            lastEdge[index] = nanoTime;
+        }
+    }
 }
@@ -0,0 +1,92 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.handlers;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent timing samples and reports percentiles over them.
+ *
+ * Samples are stored in a preallocated ring, recording does not allocate. Percentiles
+ * are computed on request over a sorted copy of the samples.
+ */
+public class TimingRecorder {
+    private final long[] samples;
+    private int next = 0;
+    private int count = 0;
+
+    public TimingRecorder(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity should be at least 1");
+        }
+        this.samples = new long[capacity];
+    }
+
+    public synchronized void record(long sample) {
+        samples[next] = sample;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    /** Number of samples available, at most the capacity
+     *
+     * @return number of samples
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /** Percentile of the recorded samples
+     *
+     * @param percentile between 0 and 100
+     * @return the sample at the percentile, or -1 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        return percentile(percentile, 0L, false);
+    }
+
+    /** Percentile of the distance of the recorded samples to a nominal value
+     *
+     * @param nominal the expected value of every sample
+     * @param percentile between 0 and 100
+     * @return the absolute deviation at the percentile, or -1 if nothing was recorded
+     */
+    public long deviationPercentile(long nominal, double percentile) {
+        return percentile(percentile, nominal, true);
+    }
+
+    private synchronized long percentile(double percentile, long nominal, boolean deviation) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile should be between 0 and 100");
+        }
+        if (count == 0) {
+            return -1;
+        }
+
+        long[] sorted = Arrays.copyOf(samples, count);
+        if (deviation) {
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = Math.abs(sorted[i] - nominal);
+            }
+        }
+        Arrays.sort(sorted);
+
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.journal;
+
+import java.nio.file.Path;
+
+/**
+ * On-disk layout of a capture journal.
+ *
+ * A journal is a directory of segments, journal-NNNNNN.dat, each with an index file
+ * journal-NNNNNN.idx next to it. A segment starts with a header:
+ *
+ * <pre>
+ * int  magic "DMXJ"
+ * int  version
+ * long wall clock time of the start of the journal, milliseconds since the epoch
+ * long reserved
+ * </pre>
+ *
+ * followed by records, a record length of 0 marks the end of the segment:
+ *
+ * <pre>
+ * int  length of the rest of the record
+ * byte type, RAW, KEY, DELTA or SACN
+ * long nanoseconds since the start of the journal
+ * int  IPv4 address of the sender, 0 for other address families
+ * u16  UDP port of the sender
+ * ...  payload
+ * </pre>
+ *
+ * RAW and KEY records hold a complete Art-Net datagram, KEY is an ArtDmx datagram that later DELTA
+ * records of the same Port-Address and sender refer to. SACN records hold a complete E1.31 data
+ * packet received on the sACN port. A DELTA record holds the 18 byte ArtDmx header, the
+ * length of the datagram and the runs of slots that changed, each as a 16 bit offset, a 16 bit
+ * length and the slots. The delta state is reset at the start of a segment and at every index
+ * entry, so reading can start at any index entry.
+ *
+ * The index file is a sequence of entries of a long timestamp and an int position in the segment.
+ * All numbers are big-endian.
+ */
+final class JournalFormat {
+    static final int MAGIC = 0x444D584A;
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = 24;
+
+    static final byte RAW = 1;
+    static final byte KEY = 2;
+    static final byte DELTA = 3;
+    static final byte SACN = 4;
+
+    /** Record length, type, timestamp and sender */
+    static final int RECORD_HEADER_LENGTH = 4 + 1 + 8 + 4 + 2;
+    static final int INDEX_ENTRY_LENGTH = 8 + 4;
+
+    static final int ARTDMX_HEADER_LENGTH = 18;
+    static final int MAX_DATAGRAM_LENGTH = ARTDMX_HEADER_LENGTH + 512;
+
+    private JournalFormat() {
+    }
+
+    static Path segment(Path directory, int number) {
+        return directory.resolve(String.format("journal-%06d.dat", number));
+    }
+
+    static Path index(Path directory, int number) {
+        return directory.resolve(String.format("journal-%06d.idx", number));
+    }
+
+    /** Port-Address of an ArtDmx datagram
+     *
+     * @param datagram datagram bytes, starting with the Art-Net header
+     * @param offset offset of the datagram in the array
+     * @return 15 bit Port-Address
+     */
+    static int portAddress(byte[] datagram, int offset) {
+        return (datagram[offset + 15] & 0x7F) << 8 | datagram[offset + 14] & 0xFF;
+    }
+}
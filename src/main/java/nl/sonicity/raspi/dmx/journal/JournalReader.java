@@ -0,0 +1,264 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static nl.sonicity.raspi.dmx.journal.JournalFormat.*;
+
+/**
+ * Reads the datagrams back from a journal written by {@link JournalWriter}.
+ *
+ * Records are read in order with {@link #next()}, DELTA records are applied to the last KEY of
+ * their Port-Address so every record comes out as the complete datagram that was received.
+ * {@link #seek(long)} uses the index to start reading at any point in time.
+ *
+ * The datagram buffer is reused, its contents are only valid until the next call to {@link #next()}.
+ */
+public class JournalReader implements Closeable {
+    private final Path directory;
+    private final int segments;
+    private final long startMillis;
+
+    private final byte[] datagram = new byte[MAX_DATAGRAM_LENGTH * 2];
+    private final ByteBuffer datagramBuffer = ByteBuffer.wrap(datagram);
+    private final byte[][] previous = new byte[0x8000][];
+
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private int segmentNumber = -1;
+    private long timestamp;
+    private byte type;
+    private int sourceAddress;
+    private int sourcePort;
+    private boolean pending;
+
+    public JournalReader(Path directory) throws IOException {
+        int count = 0;
+        while (Files.exists(segment(directory, count))) {
+            count++;
+        }
+        if (count == 0) {
+            throw new IOException("No journal found in " + directory);
+        }
+
+        this.directory = directory;
+        this.segments = count;
+        openSegment(0);
+        this.startMillis = segment.getLong(8);
+    }
+
+    /** Wall clock time the journal was started, in milliseconds since the epoch */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    /** Advance to the next datagram
+     *
+     * @return false when the end of the journal is reached
+     */
+    public boolean next() throws IOException {
+        if (pending) {
+            pending = false;
+            return true;
+        }
+        while (segment != null) {
+            int length = segment.remaining() >= 4 ? segment.getInt() : 0;
+            if (length > 0) {
+                readRecord(length);
+                return true;
+            }
+
+            if (segmentNumber + 1 >= segments) {
+                closeSegment();
+                return false;
+            }
+            openSegment(segmentNumber + 1);
+        }
+        return false;
+    }
+
+    /** Time of the current datagram
+     *
+     * @return nanoseconds since the start of the journal
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /** IPv4 address of the sender of the current datagram, 0 when it was not sent over IPv4 */
+    public int getSourceAddress() {
+        return sourceAddress;
+    }
+
+    /** UDP port of the sender of the current datagram */
+    public int getSourcePort() {
+        return sourcePort;
+    }
+
+    /** Sender of the current datagram */
+    public InetSocketAddress getSource() {
+        byte[] address = { (byte)(sourceAddress >>> 24), (byte)(sourceAddress >>> 16),
+                (byte)(sourceAddress >>> 8), (byte)sourceAddress };
+        try {
+            return new InetSocketAddress(InetAddress.getByAddress(address), sourcePort);
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** True when the current datagram is an E1.31 data packet, otherwise it is Art-Net */
+    public boolean isSacn() {
+        return type == SACN;
+    }
+
+    /** The current datagram, between position and limit
+     *
+     * @return reused buffer, valid until the next call to {@link #next()}
+     */
+    public ByteBuffer getDatagram() {
+        return datagramBuffer;
+    }
+
+    /** Position the reader so that the next datagram is the first one at or after a time
+     *
+     * @param nanos nanoseconds since the start of the journal
+     */
+    public void seek(long nanos) throws IOException {
+        // Find the last index entry at or before the requested time
+        int entrySegment = 0;
+        int entryPosition = HEADER_LENGTH;
+        for (int n = 0; n < segments; n++) {
+            ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(index(directory, n)));
+            if (index.remaining() < INDEX_ENTRY_LENGTH || index.getLong(0) > nanos) {
+                break;
+            }
+            while (index.remaining() >= INDEX_ENTRY_LENGTH && index.getLong(index.position()) <= nanos) {
+                index.getLong();
+                entrySegment = n;
+                entryPosition = index.getInt();
+            }
+        }
+
+        // The writer resets its delta state at every index entry
+        Arrays.fill(previous, null);
+        openSegment(entrySegment);
+        segment.position(entryPosition);
+
+        while (next()) {
+            if (timestamp >= nanos) {
+                // Hand out this datagram on the next call
+                pending = true;
+                return;
+            }
+        }
+    }
+
+    private void readRecord(int length) throws IOException {
+        type = segment.get();
+        timestamp = segment.getLong();
+        sourceAddress = segment.getInt();
+        sourcePort = segment.getShort() & 0xFFFF;
+        int payloadLength = length - (RECORD_HEADER_LENGTH - 4);
+        if (payloadLength < 0 || payloadLength > datagram.length) {
+            throw new IOException("Corrupt record in segment " + segmentNumber + " at " + segment.position());
+        }
+
+        if (type == DELTA) {
+            readDelta(payloadLength);
+            return;
+        }
+
+        segment.get(datagram, 0, payloadLength);
+        datagramBuffer.clear().limit(payloadLength);
+        if (type == KEY) {
+            byte[] last = previous[portAddress(datagram, 0)];
+            if (last == null) {
+                last = new byte[MAX_DATAGRAM_LENGTH];
+                previous[portAddress(datagram, 0)] = last;
+            }
+            System.arraycopy(datagram, 0, last, 0, payloadLength);
+        }
+    }
+
+    private void readDelta(int payloadLength) throws IOException {
+        int end = segment.position() + payloadLength;
+        segment.get(datagram, 0, ARTDMX_HEADER_LENGTH);
+        int length = segment.getShort() & 0xFFFF;
+
+        byte[] last = previous[portAddress(datagram, 0)];
+        if (last == null || length > MAX_DATAGRAM_LENGTH) {
+            throw new IOException("Delta without key frame in segment " + segmentNumber);
+        }
+        System.arraycopy(last, ARTDMX_HEADER_LENGTH, datagram, ARTDMX_HEADER_LENGTH, length - ARTDMX_HEADER_LENGTH);
+
+        while (segment.position() < end) {
+            int offset = ARTDMX_HEADER_LENGTH + (segment.getShort() & 0xFFFF);
+            int runLength = segment.getShort() & 0xFFFF;
+            if (offset + runLength > length) {
+                throw new IOException("Corrupt delta in segment " + segmentNumber);
+            }
+            segment.get(datagram, offset, runLength);
+        }
+
+        System.arraycopy(datagram, 0, last, 0, length);
+        datagramBuffer.clear().limit(length);
+    }
+
+    private void openSegment(int number) throws IOException {
+        closeSegment();
+        pending = false;
+        segmentChannel = FileChannel.open(segment(directory, number), StandardOpenOption.READ);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_ONLY, 0, segmentChannel.size());
+        segmentNumber = number;
+
+        if (segment.remaining() < HEADER_LENGTH || segment.getInt() != MAGIC) {
+            throw new IOException("Not a journal segment: " + segment(directory, number));
+        }
+        if (segment.getInt() != VERSION) {
+            throw new IOException("Unsupported journal version in " + segment(directory, number));
+        }
+        segment.position(HEADER_LENGTH);
+    }
+
+    private void closeSegment() throws IOException {
+        segment = null;
+        if (segmentChannel != null) {
+            segmentChannel.close();
+            segmentChannel = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+    }
+}
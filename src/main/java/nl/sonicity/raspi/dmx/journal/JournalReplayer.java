@@ -0,0 +1,202 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.sonicity.raspi.dmx.artnet.ArtNetNodeConfig;
+import nl.sonicity.raspi.dmx.sacn.E131Data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays the datagrams of a journal back with their original timing, or a multiple of it.
+ *
+ * From the command line the datagrams are sent to a host, which can be a node on the bench or
+ * a node started on the loopback interface:
+ *
+ * <pre>
+ * JournalReplayer directory host[:port] [speed] [start seconds]
+ * </pre>
+ *
+ * A speed of 2 plays twice as fast as recorded, a speed of 0 sends everything as fast as possible.
+ * Every recorded sender gets a socket of its own, see {@link UdpSink}.
+ */
+@Slf4j
+public class JournalReplayer {
+    /**
+     * Destination of replayed datagrams.
+     */
+    public interface DatagramSink {
+        /** Called for every datagram at its replay time
+         *
+         * @param timestamp nanoseconds since the start of the journal
+         * @param source the recorded sender
+         * @param sacn true for an E1.31 data packet, false for Art-Net
+         * @param datagram the datagram between position and limit, valid during the call only
+         */
+        void datagram(long timestamp, InetSocketAddress source, boolean sacn, ByteBuffer datagram) throws IOException;
+    }
+
+    /**
+     * Sends the datagrams to a node, from one socket per recorded sender so the node sees as many
+     * sources as were recorded and merges, sequence checks and sACN priorities behave the same.
+     *
+     * On the loopback interface sender N sends from 127.1.x.y, so a node that tells sources apart
+     * by address sees distinct senders. To a remote node all senders come from the address of
+     * this host, on different ports.
+     */
+    public static class UdpSink implements DatagramSink, Closeable {
+        private final InetSocketAddress artNetDestination;
+        private final InetSocketAddress sacnDestination;
+        private final Map<InetSocketAddress, DatagramChannel> channels = new HashMap<>();
+
+        public UdpSink(InetAddress host, int artNetPort, int sacnPort) {
+            this.artNetDestination = new InetSocketAddress(host, artNetPort);
+            this.sacnDestination = new InetSocketAddress(host, sacnPort);
+        }
+
+        @Override
+        public void datagram(long timestamp, InetSocketAddress source, boolean sacn, ByteBuffer datagram) throws IOException {
+            DatagramChannel channel = channels.get(source);
+            if (channel == null) {
+                channel = open(channels.size());
+                channels.put(source, channel);
+            }
+            channel.send(datagram, sacn ? sacnDestination : artNetDestination);
+        }
+
+        private DatagramChannel open(int number) throws IOException {
+            if (number >= 0x10000) {
+                throw new IOException("Too many senders in the journal");
+            }
+            DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+            try {
+                channel.socket().setBroadcast(true);
+                if (artNetDestination.getAddress().isLoopbackAddress()) {
+                    byte[] address = { 127, 1, (byte)(number >> 8), (byte)number };
+                    channel.bind(new InetSocketAddress(InetAddress.getByAddress(address), 0));
+                } else {
+                    channel.bind(null);
+                }
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            return channel;
+        }
+
+        /** Number of senders seen so far */
+        public int getSenders() {
+            return channels.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (DatagramChannel channel : channels.values()) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            channels.clear();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private final JournalReader reader;
+    private final double speed;
+
+    public JournalReplayer(JournalReader reader, double speed) {
+        if (speed < 0 || Double.isNaN(speed)) {
+            throw new IllegalArgumentException("Speed should be 0 or positive");
+        }
+        this.reader = reader;
+        this.speed = speed;
+    }
+
+    /** Replay the remaining datagrams of the reader, blocks until the journal is done
+     *
+     * @param sink receives the datagrams
+     * @return number of datagrams replayed
+     */
+    public long replay(DatagramSink sink) throws IOException {
+        long count = 0;
+        long firstTimestamp = 0;
+        long start = 0;
+
+        while (reader.next()) {
+            long timestamp = reader.getTimestamp();
+            if (count == 0) {
+                firstTimestamp = timestamp;
+                start = System.nanoTime();
+            } else if (speed > 0) {
+                // Deadlines are absolute, a late datagram does not delay the ones after it
+                long due = start + (long)((timestamp - firstTimestamp) / speed);
+                long remaining;
+                // Compare the difference, nanoTime values themselves may wrap
+                while ((remaining = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(remaining);
+                    if (Thread.currentThread().isInterrupted()) {
+                        return count;
+                    }
+                }
+            }
+
+            sink.datagram(timestamp, reader.getSource(), reader.isSacn(), reader.getDatagram());
+            count++;
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: JournalReplayer directory host[:port] [speed] [start seconds]");
+            System.exit(1);
+        }
+
+        String[] target = args[1].split(":");
+        int port = target.length > 1 ? Integer.parseInt(target[1]) : ArtNetNodeConfig.DEFAULT_PORT;
+        InetAddress host = InetAddress.getByName(target[0]);
+        double speed = args.length > 2 ? Double.parseDouble(args[2]) : 1.0;
+        long startNanos = args.length > 3 ? (long)(Double.parseDouble(args[3]) * TimeUnit.SECONDS.toNanos(1)) : 0L;
+
+        try (JournalReader reader = new JournalReader(Paths.get(args[0]));
+             UdpSink sink = new UdpSink(host, port, E131Data.DEFAULT_PORT)) {
+            if (startNanos > 0) {
+                reader.seek(startNanos);
+            }
+
+            log.info("Replaying journal of {} segments to {}:{} at speed {}", reader.getSegments(), host, port, speed);
+            long count = new JournalReplayer(reader, speed).replay(sink);
+            log.info("Replayed {} datagrams from {} senders", count, sink.getSenders());
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.sonicity.raspi.dmx.artnet.ArtNetOpCode;
+import nl.sonicity.raspi.dmx.artnet.DatagramTap;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtNetPacket;
+import nl.sonicity.raspi.dmx.sacn.E131DataView;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static nl.sonicity.raspi.dmx.journal.JournalFormat.*;
+
+/**
+ * Records received Art-Net datagrams into a journal on disk, see {@link JournalFormat}.
+ *
+ * The writer runs on the receive thread of the node and does no allocation or system call per
+ * datagram: records are copied into a memory-mapped segment of a fixed size, the kernel writes the
+ * pages back in the background. ArtDmx, ArtSync, ArtPoll and E1.31 data packets are recorded
+ * together with their sender, so merges, sequence checks and sACN priorities can be reproduced.
+ *
+ * An ArtDmx frame usually differs in a few slots from the previous frame of the same universe, so
+ * after a KEY record only the changed runs of slots are written. When a run set is not smaller than
+ * the datagram a KEY record is written instead.
+ *
+ * Not thread safe, all calls should come from the same thread.
+ */
+@Slf4j
+public class JournalWriter implements DatagramTap, Closeable {
+    public static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+    public static final long DEFAULT_INDEX_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    // Two runs closer than this are merged, a run header costs 4 bytes
+    private static final int RUN_MERGE_GAP = 4;
+    private static final int MAX_CAPTURED_LENGTH = 1024;
+    private static final int PORT_ADDRESSES = 0x8000;
+
+    private static final byte[] ARTNET_ID = "Art-Net\0".getBytes(StandardCharsets.US_ASCII);
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long indexIntervalNanos;
+    private final long startNanos;
+    private final long startMillis;
+
+    private final byte[] record = new byte[MAX_CAPTURED_LENGTH];
+    private final byte[] delta = new byte[MAX_DATAGRAM_LENGTH + 2];
+    private final byte[][] previous = new byte[PORT_ADDRESSES][];
+    private final int[] previousLength = new int[PORT_ADDRESSES];
+    private final int[] previousAddress = new int[PORT_ADDRESSES];
+    private final int[] previousPort = new int[PORT_ADDRESSES];
+    // A Port-Address has delta state when its generation is the current one
+    private final int[] previousGeneration = new int[PORT_ADDRESSES];
+    private int generation = 1;
+
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_LENGTH);
+    private FileChannel segmentChannel;
+    private FileChannel indexChannel;
+    private MappedByteBuffer segment;
+    private int segmentNumber = -1;
+    private long nextIndexNanos;
+
+    private long records;
+    private long keyRecords;
+    private long deltaRecords;
+    private long datagramBytes;
+    private long journalBytes;
+    private long failures;
+
+    /** Create a journal in an empty directory, the directory is created when it does not exist
+     *
+     * @param directory directory to write the segments in
+     * @param segmentBytes size of a segment file
+     * @param indexIntervalNanos time between two index entries
+     */
+    public JournalWriter(Path directory, int segmentBytes, long indexIntervalNanos) throws IOException {
+        if (segmentBytes < HEADER_LENGTH + RECORD_HEADER_LENGTH + MAX_CAPTURED_LENGTH + 4) {
+            throw new IllegalArgumentException("Segment size too small to hold a datagram");
+        }
+        if (indexIntervalNanos <= 0) {
+            throw new IllegalArgumentException("Index interval should be positive");
+        }
+
+        Files.createDirectories(directory);
+        if (Files.exists(segment(directory, 0))) {
+            throw new IOException("Directory " + directory + " already holds a journal");
+        }
+
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.indexIntervalNanos = indexIntervalNanos;
+        this.startNanos = System.nanoTime();
+        this.startMillis = System.currentTimeMillis();
+        rotate(0);
+    }
+
+    public JournalWriter(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_INDEX_INTERVAL);
+    }
+
+    @Override
+    public void datagram(long nanoTime, InetSocketAddress source, ByteBuffer datagram) {
+        if (segment == null) {
+            return;
+        }
+        try {
+            append(nanoTime, source, datagram);
+        } catch (IOException e) {
+            if (failures++ == 0) {
+                log.warn("Failed to write to journal {}, capture stopped", directory, e);
+            }
+            closeSegment();
+        }
+    }
+
+    /** Append a datagram to the journal
+     *
+     * @param nanoTime {@link System#nanoTime()} at arrival
+     * @param source sender of the datagram
+     * @param datagram datagram between position and limit, the buffer is not modified
+     */
+    public void append(long nanoTime, InetSocketAddress source, ByteBuffer datagram) throws IOException {
+        int length = datagram.remaining();
+        if (length < 10 || length > MAX_CAPTURED_LENGTH) {
+            return;
+        }
+        if (datagram.hasArray()) {
+            System.arraycopy(datagram.array(), datagram.arrayOffset() + datagram.position(), record, 0, length);
+        } else {
+            datagram.duplicate().get(record, 0, length);
+        }
+
+        ArtNetOpCode opCode = null;
+        if (Arrays.equals(record, 0, ARTNET_ID.length, ARTNET_ID, 0, ARTNET_ID.length)) {
+            opCode = ArtNetPacket.extractOpCode(record);
+            if (opCode != ArtNetOpCode.ARTNET_OP_DMX && opCode != ArtNetOpCode.ARTNET_OP_SYNC
+                    && opCode != ArtNetOpCode.ARTNET_OP_POLL) {
+                return;
+            }
+        } else if (!E131DataView.isE131Data(datagram)) {
+            return;
+        }
+
+        // Inet4Address hashes to its 32 bit address, so this does not allocate
+        int sourceAddress = source.getAddress() instanceof Inet4Address ? source.getAddress().hashCode() : 0;
+        int sourcePort = source.getPort();
+        long time = nanoTime - startNanos;
+        if (segment.remaining() < RECORD_HEADER_LENGTH + length + 4) {
+            rotate(time);
+        }
+        if (time >= nextIndexNanos) {
+            writeIndexEntry(time);
+        }
+
+        datagramBytes += length;
+        if (opCode == null) {
+            writeRecord(SACN, time, sourceAddress, sourcePort, record, length);
+            return;
+        }
+        if (opCode != ArtNetOpCode.ARTNET_OP_DMX || length < ARTDMX_HEADER_LENGTH || length > MAX_DATAGRAM_LENGTH) {
+            writeRecord(RAW, time, sourceAddress, sourcePort, record, length);
+            return;
+        }
+
+        // A delta only refers to the previous frame of the same sender, merged universes get key frames
+        int portAddress = portAddress(record, 0);
+        int deltaLength = previousGeneration[portAddress] == generation && previousLength[portAddress] == length
+                && previousAddress[portAddress] == sourceAddress && previousPort[portAddress] == sourcePort
+                ? encodeDelta(previous[portAddress], length) : -1;
+        if (deltaLength > 0) {
+            writeRecord(DELTA, time, sourceAddress, sourcePort, delta, deltaLength);
+            deltaRecords++;
+        } else {
+            writeRecord(KEY, time, sourceAddress, sourcePort, record, length);
+            keyRecords++;
+        }
+
+        byte[] last = previous[portAddress];
+        if (last == null) {
+            last = new byte[MAX_DATAGRAM_LENGTH];
+            previous[portAddress] = last;
+        }
+        System.arraycopy(record, 0, last, 0, length);
+        previousLength[portAddress] = length;
+        previousAddress[portAddress] = sourceAddress;
+        previousPort[portAddress] = sourcePort;
+        previousGeneration[portAddress] = generation;
+    }
+
+    /** Encode the slots that differ from the previous frame into the delta buffer
+     *
+     * @return length of the delta, or -1 when it is not smaller than the datagram
+     */
+    private int encodeDelta(byte[] last, int length) {
+        System.arraycopy(record, 0, delta, 0, ARTDMX_HEADER_LENGTH);
+        int position = ARTDMX_HEADER_LENGTH;
+        delta[position++] = (byte)(length >> 8);
+        delta[position++] = (byte)length;
+
+        int i = ARTDMX_HEADER_LENGTH;
+        while (i < length) {
+            if (record[i] == last[i]) {
+                i++;
+                continue;
+            }
+
+            int start = i;
+            int end = i + 1;
+            // Extend the run until RUN_MERGE_GAP equal slots in a row are found
+            for (int j = end; j < length && j < end + RUN_MERGE_GAP; j++) {
+                if (record[j] != last[j]) {
+                    end = j + 1;
+                }
+            }
+
+            int runLength = end - start;
+            if (position + 4 + runLength >= length) {
+                return -1;
+            }
+            int offset = start - ARTDMX_HEADER_LENGTH;
+            delta[position++] = (byte)(offset >> 8);
+            delta[position++] = (byte)offset;
+            delta[position++] = (byte)(runLength >> 8);
+            delta[position++] = (byte)runLength;
+            System.arraycopy(record, start, delta, position, runLength);
+            position += runLength;
+            i = end;
+        }
+        return position;
+    }
+
+    private void writeRecord(byte type, long time, int sourceAddress, int sourcePort, byte[] payload, int length) {
+        segment.putInt(RECORD_HEADER_LENGTH - 4 + length);
+        segment.put(type);
+        segment.putLong(time);
+        segment.putInt(sourceAddress);
+        segment.putShort((short)sourcePort);
+        segment.put(payload, 0, length);
+        records++;
+        journalBytes += RECORD_HEADER_LENGTH + length;
+    }
+
+    /** Add an index entry at the current position and reset the delta state, a reader can start here */
+    private void writeIndexEntry(long time) throws IOException {
+        indexEntry.clear();
+        indexEntry.putLong(time).putInt(segment.position()).flip();
+        while (indexEntry.hasRemaining()) {
+            indexChannel.write(indexEntry);
+        }
+        generation++;
+        nextIndexNanos = time + indexIntervalNanos;
+    }
+
+    private void rotate(long time) throws IOException {
+        closeSegment();
+
+        segmentNumber++;
+        segmentChannel = FileChannel.open(segment(directory, segmentNumber),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        indexChannel = FileChannel.open(index(directory, segmentNumber),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.putInt(MAGIC).putInt(VERSION).putLong(startMillis).putLong(0L);
+        journalBytes += HEADER_LENGTH;
+
+        writeIndexEntry(time);
+        log.debug("Journal segment {} started", segmentNumber);
+    }
+
+    /** Terminate the current segment and truncate the file to the part that is in use */
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        int used = segment.position();
+        if (segment.remaining() >= 4) {
+            segment.putInt(0);
+        }
+        segment.force();
+        segment = null;
+
+        try {
+            indexChannel.close();
+            segmentChannel.truncate(used);
+        } catch (IOException e) {
+            // Some platforms cannot truncate a mapped file, the end marker still ends the segment
+            log.debug("Failed to truncate journal segment {}", segmentNumber, e);
+        }
+        try {
+            segmentChannel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close journal segment {}", segmentNumber, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closeSegment();
+        log.info("Journal {} closed, {} records in {} segments, {} bytes of datagrams in {} bytes",
+                directory, records, segmentNumber + 1, datagramBytes, journalBytes);
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getKeyRecords() {
+        return keyRecords;
+    }
+
+    public long getDeltaRecords() {
+        return deltaRecords;
+    }
+
+    /** Total size of the recorded datagrams as they were received */
+    public long getDatagramBytes() {
+        return datagramBytes;
+    }
+
+    /** Total size of the journal, segment headers and record headers included */
+    public long getJournalBytes() {
+        return journalBytes;
+    }
+
+    public int getSegments() {
+        return segmentNumber + 1;
+    }
+}
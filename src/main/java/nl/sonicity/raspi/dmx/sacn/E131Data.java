@@ -0,0 +1,216 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.sacn;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Layout of an E1.31 (sACN) data packet, and a builder to encode one.
+ *
+ * The packet consists of the root layer, the framing layer and the DMP layer. All multi-byte
+ * fields are big-endian. Receivers read packets through {@link E131DataView}.
+ */
+public final class E131Data {
+    public static final int DEFAULT_PORT = 5568;
+
+    static final byte[] ACN_PACKET_IDENTIFIER = { 'A', 'S', 'C', '-', 'E', '1', '.', '1', '7', 0x00, 0x00, 0x00 };
+    static final int VECTOR_ROOT_E131_DATA = 0x00000004;
+    static final int VECTOR_E131_DATA_PACKET = 0x00000002;
+    static final int VECTOR_DMP_SET_PROPERTY = 0x02;
+
+    static final int OFFSET_PREAMBLE = 0;
+    static final int OFFSET_ACN_ID = 4;
+    static final int OFFSET_ROOT_FLAGS_LENGTH = 16;
+    static final int OFFSET_ROOT_VECTOR = 18;
+    static final int OFFSET_CID = 22;
+    static final int OFFSET_FRAMING_FLAGS_LENGTH = 38;
+    static final int OFFSET_FRAMING_VECTOR = 40;
+    static final int OFFSET_SOURCE_NAME = 44;
+    static final int OFFSET_PRIORITY = 108;
+    static final int OFFSET_SYNC_ADDRESS = 109;
+    static final int OFFSET_SEQUENCE = 111;
+    static final int OFFSET_OPTIONS = 112;
+    static final int OFFSET_UNIVERSE = 113;
+    static final int OFFSET_DMP_FLAGS_LENGTH = 115;
+    static final int OFFSET_DMP_VECTOR = 117;
+    static final int OFFSET_ADDRESS_TYPE = 118;
+    static final int OFFSET_FIRST_ADDRESS = 119;
+    static final int OFFSET_ADDRESS_INCREMENT = 121;
+    static final int OFFSET_VALUE_COUNT = 123;
+    static final int OFFSET_START_CODE = 125;
+    static final int OFFSET_DMX = 126;
+
+    static final int CID_LENGTH = 16;
+    static final int SOURCE_NAME_LENGTH = 64;
+    static final int MAX_DMX_LENGTH = 512;
+    static final int MIN_PACKET_LENGTH = OFFSET_DMX;
+    static final int MAX_PACKET_LENGTH = OFFSET_DMX + MAX_DMX_LENGTH;
+
+    public static final int OPTION_PREVIEW_DATA = 0x80;
+    public static final int OPTION_STREAM_TERMINATED = 0x40;
+    public static final int OPTION_FORCE_SYNCHRONIZATION = 0x20;
+
+    public static final int DEFAULT_PRIORITY = 100;
+    public static final int MAX_PRIORITY = 200;
+    public static final int MIN_UNIVERSE = 1;
+    public static final int MAX_UNIVERSE = 63999;
+
+    private E131Data() {
+    }
+
+    /** The multicast group a universe is sent to, 239.255.{universe high byte}.{universe low byte}
+     *
+     * @param universe sACN universe, 1 - 63999
+     * @return multicast address of the universe
+     */
+    public static InetAddress multicastGroup(int universe) {
+        if (universe < MIN_UNIVERSE || universe > MAX_UNIVERSE) {
+            throw new IllegalArgumentException("Universe should be between 1 and 63999");
+        }
+        try {
+            return InetAddress.getByAddress(new byte[] { (byte) 239, (byte) 255, (byte) (universe >> 8), (byte) universe });
+        } catch (UnknownHostException e) {
+            // Only thrown for addresses of the wrong length
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static int readUint16(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 8 | data[offset + 1] & 0xFF;
+    }
+
+    static int readUint32(byte[] data, int offset) {
+        return readUint16(data, offset) << 16 | readUint16(data, offset + 2);
+    }
+
+    static void writeUint16(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >> 8);
+        data[offset + 1] = (byte) value;
+    }
+
+    static void writeUint32(byte[] data, int offset, int value) {
+        writeUint16(data, offset, value >>> 16);
+        writeUint16(data, offset + 2, value);
+    }
+
+    public static class Builder {
+        private final byte[] data = new byte[MAX_PACKET_LENGTH];
+        private int dmxLength = MAX_DMX_LENGTH;
+
+        public Builder() {
+            writeUint16(data, OFFSET_PREAMBLE, 0x0010);
+            System.arraycopy(ACN_PACKET_IDENTIFIER, 0, data, OFFSET_ACN_ID, ACN_PACKET_IDENTIFIER.length);
+            writeUint32(data, OFFSET_ROOT_VECTOR, VECTOR_ROOT_E131_DATA);
+            writeUint32(data, OFFSET_FRAMING_VECTOR, VECTOR_E131_DATA_PACKET);
+            data[OFFSET_PRIORITY] = (byte) DEFAULT_PRIORITY;
+            data[OFFSET_DMP_VECTOR] = (byte) VECTOR_DMP_SET_PROPERTY;
+            data[OFFSET_ADDRESS_TYPE] = (byte) 0xA1;
+            writeUint16(data, OFFSET_FIRST_ADDRESS, 0x0000);
+            writeUint16(data, OFFSET_ADDRESS_INCREMENT, 0x0001);
+        }
+
+        public Builder cid(byte[] cid) {
+            if (cid.length != CID_LENGTH) {
+                throw new IllegalArgumentException("CID should be 16 bytes");
+            }
+            System.arraycopy(cid, 0, data, OFFSET_CID, CID_LENGTH);
+
+            return this;
+        }
+
+        public Builder sourceName(String sourceName) {
+            byte[] value = sourceName.getBytes(StandardCharsets.UTF_8);
+            if (value.length > SOURCE_NAME_LENGTH - 1) {
+                throw new IllegalArgumentException("Parameter out of bounds");
+            }
+            System.arraycopy(value, 0, data, OFFSET_SOURCE_NAME, value.length);
+
+            return this;
+        }
+
+        public Builder priority(int priority) {
+            if (priority < 0 || priority > MAX_PRIORITY) {
+                throw new IllegalArgumentException("Parameter out of bounds");
+            }
+            data[OFFSET_PRIORITY] = (byte) priority;
+
+            return this;
+        }
+
+        public Builder sequence(int sequence) {
+            if (sequence < 0 || sequence > 255) {
+                throw new IllegalArgumentException("Parameter out of bounds");
+            }
+            data[OFFSET_SEQUENCE] = (byte) sequence;
+
+            return this;
+        }
+
+        public Builder options(int options) {
+            if (options < 0 || options > 255) {
+                throw new IllegalArgumentException("Parameter out of bounds");
+            }
+            data[OFFSET_OPTIONS] = (byte) options;
+
+            return this;
+        }
+
+        public Builder universe(int universe) {
+            if (universe < MIN_UNIVERSE || universe > MAX_UNIVERSE) {
+                throw new IllegalArgumentException("Parameter out of bounds");
+            }
+            writeUint16(data, OFFSET_UNIVERSE, universe);
+
+            return this;
+        }
+
+        public Builder startCode(int startCode) {
+            if (startCode < 0 || startCode > 255) {
+                throw new IllegalArgumentException("Parameter out of bounds");
+            }
+            data[OFFSET_START_CODE] = (byte) startCode;
+
+            return this;
+        }
+
+        public Builder dmx(byte[] dmx) {
+            if (dmx.length > MAX_DMX_LENGTH) {
+                throw new IllegalArgumentException("Array length should be at most 512");
+            }
+            System.arraycopy(dmx, 0, data, OFFSET_DMX, dmx.length);
+            dmxLength = dmx.length;
+
+            return this;
+        }
+
+        /** Encode the packet, the lengths of the layers follow from the DMX length
+         *
+         * @return the complete packet
+         */
+        public byte[] toBytes() {
+            int length = OFFSET_DMX + dmxLength;
+            // Flags 0x7 in the high nibble, PDU length in the low 12 bits
+            writeUint16(data, OFFSET_ROOT_FLAGS_LENGTH, 0x7000 | length - OFFSET_ROOT_FLAGS_LENGTH);
+            writeUint16(data, OFFSET_FRAMING_FLAGS_LENGTH, 0x7000 | length - OFFSET_FRAMING_FLAGS_LENGTH);
+            writeUint16(data, OFFSET_DMP_FLAGS_LENGTH, 0x7000 | length - OFFSET_DMP_FLAGS_LENGTH);
+            writeUint16(data, OFFSET_VALUE_COUNT, dmxLength + 1);
+            return Arrays.copyOf(data, length);
+        }
+    }
+}
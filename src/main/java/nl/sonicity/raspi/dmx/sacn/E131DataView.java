@@ -0,0 +1,182 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.sacn;
+
+import nl.sonicity.raspi.dmx.artnet.ArtNetException;
+
+import java.nio.ByteBuffer;
+
+import static nl.sonicity.raspi.dmx.sacn.E131Data.*;
+
+/**
+ * Reusable, read-only view of an E1.31 data packet that sits directly on a receive buffer.
+ *
+ * The sACN counterpart of {@link nl.sonicity.raspi.dmx.artnet.packets.ArtDmxView}: nothing is
+ * copied when a packet is parsed, a single instance is bound to a single buffer and is
+ * re-initialised with {@link #wrap()} after every receive.
+ *
+ * The contents of the view are only valid until the next datagram is received into the buffer.
+ */
+public class E131DataView {
+    private final ByteBuffer buffer;
+    private final byte[] data;
+    private final int base;
+
+    private int dmxLength;
+
+    public E131DataView(ByteBuffer buffer) {
+        if (!buffer.hasArray()) {
+            throw new IllegalArgumentException("Buffer should be backed by an accessible array");
+        }
+
+        if (buffer.capacity() < MAX_PACKET_LENGTH) {
+            throw new IllegalArgumentException("Buffer too small to hold an E1.31 data packet");
+        }
+
+        this.buffer = buffer;
+        this.data = buffer.array();
+        this.base = buffer.arrayOffset();
+    }
+
+    /** Quick check on the root layer of the packet between position and limit of the buffer
+     *
+     * @param buffer buffer holding a received datagram
+     * @return true if the packet identifies itself as an E1.31 data packet
+     */
+    public static boolean isE131Data(ByteBuffer buffer) {
+        if (buffer.remaining() < OFFSET_CID) {
+            return false;
+        }
+
+        int start = buffer.position();
+        for (int i = 0; i < ACN_PACKET_IDENTIFIER.length; i++) {
+            if (buffer.get(start + OFFSET_ACN_ID + i) != ACN_PACKET_IDENTIFIER[i]) {
+                return false;
+            }
+        }
+
+        return buffer.getInt(start + OFFSET_ROOT_VECTOR) == VECTOR_ROOT_E131_DATA;
+    }
+
+    /** Validate the packet currently in the buffer and point the view at it
+     *
+     * The packet is expected to start at offset 0 and end at the limit of the buffer. Slots
+     * beyond the length of the packet are cleared, so they read as zero.
+     *
+     * @return this view
+     */
+    public E131DataView wrap() {
+        int length = buffer.limit();
+        if (length < MIN_PACKET_LENGTH) {
+            throw new ArtNetException("Packet too short");
+        }
+
+        if (readUint32(data, base + OFFSET_ROOT_VECTOR) != VECTOR_ROOT_E131_DATA
+                || readUint32(data, base + OFFSET_FRAMING_VECTOR) != VECTOR_E131_DATA_PACKET
+                || data[base + OFFSET_DMP_VECTOR] != VECTOR_DMP_SET_PROPERTY) {
+            throw new ArtNetException("Wrong vector");
+        }
+
+        int universe = getUniverse();
+        if (universe < MIN_UNIVERSE || universe > MAX_UNIVERSE) {
+            throw new ArtNetException("Universe out of range");
+        }
+
+        // The property value count includes the START code
+        int declaredLength = readUint16(data, base + OFFSET_VALUE_COUNT) - 1;
+        dmxLength = Math.max(0, Math.min(Math.min(declaredLength, MAX_DMX_LENGTH), length - OFFSET_DMX));
+
+        for (int i = base + OFFSET_DMX + dmxLength; i < base + OFFSET_DMX + MAX_DMX_LENGTH; i++) {
+            data[i] = 0;
+        }
+
+        return this;
+    }
+
+    /** Hash of the 16 byte CID, identifies the source across universes
+     *
+     * @return source id
+     */
+    public int getSourceId() {
+        int hash = 1;
+        for (int i = base + OFFSET_CID; i < base + OFFSET_CID + CID_LENGTH; i++) {
+            hash = 31 * hash + data[i];
+        }
+        return hash;
+    }
+
+    public int getPriority() {
+        return data[base + OFFSET_PRIORITY] & 0xFF;
+    }
+
+    public int getSyncAddress() {
+        return readUint16(data, base + OFFSET_SYNC_ADDRESS);
+    }
+
+    public int getSequence() {
+        return data[base + OFFSET_SEQUENCE] & 0xFF;
+    }
+
+    public int getOptions() {
+        return data[base + OFFSET_OPTIONS] & 0xFF;
+    }
+
+    public boolean isPreview() {
+        return (getOptions() & OPTION_PREVIEW_DATA) != 0;
+    }
+
+    public boolean isStreamTerminated() {
+        return (getOptions() & OPTION_STREAM_TERMINATED) != 0;
+    }
+
+    public int getUniverse() {
+        return readUint16(data, base + OFFSET_UNIVERSE);
+    }
+
+    public int getStartCode() {
+        return data[base + OFFSET_START_CODE] & 0xFF;
+    }
+
+    public int getDmxLength() {
+        return dmxLength;
+    }
+
+    /** Read a single slot
+     *
+     * @param index zero based slot index, DMX address minus one
+     * @return slot value between 0 and 255
+     */
+    public int getSlot(int index) {
+        if (index < 0 || index >= MAX_DMX_LENGTH) {
+            throw new IndexOutOfBoundsException("Slot index out of bounds");
+        }
+        return data[base + OFFSET_DMX + index] & 0xFF;
+    }
+
+    /** Copy a range of slots into an existing array
+     *
+     * @param from zero based index of the first slot
+     * @param destination array to copy into
+     * @param offset offset in the destination array
+     * @param length number of slots to copy
+     */
+    public void copySlots(int from, byte[] destination, int offset, int length) {
+        if (from < 0 || length < 0 || from + length > MAX_DMX_LENGTH) {
+            throw new IndexOutOfBoundsException("Slot range out of bounds");
+        }
+        System.arraycopy(data, base + OFFSET_DMX + from, destination, offset, length);
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtDmxView;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtPollReply;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+@Slf4j
+public class ArtDmxTransmitterTest {
+    private static final int UNIVERSES = 64;
+    private static final int FRAME_RATE = 44;
+
+    private DatagramChannel receiver;
+    private Thread receiveThread;
+    private ArtDmxTransmitter transmitter;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicIntegerArray lastSlot = new AtomicIntegerArray(DmxRouter.PORT_ADDRESSES);
+
+    @Before
+    public void setUp() throws IOException {
+        receiver = DatagramChannel.open();
+        receiver.setOption(StandardSocketOptions.SO_RCVBUF, 1 << 20);
+        receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        receiveThread = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocate(8196);
+            ArtDmxView view = new ArtDmxView(buffer);
+            try {
+                while (true) {
+                    buffer.clear();
+                    receiver.receive(buffer);
+                    buffer.flip();
+                    view.wrap();
+                    lastSlot.set(view.getPortAddress(), view.getSlot(0));
+                    received.incrementAndGet();
+                }
+            } catch (IOException e) {
+                // Channel closed
+            }
+        });
+        receiveThread.setDaemon(true);
+        receiveThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (transmitter != null) {
+            transmitter.stop();
+        }
+        receiver.close();
+        receiveThread.join(1000);
+    }
+
+    @Test
+    public void testSustains64UniversesAt44Hz() throws Exception {
+        ArtDmxTransmitterConfig.ArtDmxTransmitterConfigBuilder config = config();
+        for (int portAddress = 0; portAddress < UNIVERSES; portAddress++) {
+            config.universe(portAddress);
+        }
+        transmitter = new ArtDmxTransmitter(config.build());
+        transmitter.start();
+
+        // Every universe changes faster than the refresh rate for two seconds, so every tick sends all of them
+        byte[] frame = new byte[512];
+        long period = TimeUnit.SECONDS.toNanos(1) / FRAME_RATE;
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        int value = 0;
+        while (System.nanoTime() < end) {
+            frame[0] = (byte) ++value;
+            for (int portAddress = 0; portAddress < UNIVERSES; portAddress++) {
+                transmitter.update(portAddress, frame);
+            }
+            Thread.sleep(2);
+        }
+        // The last frame goes out on the next tick
+        Thread.sleep(100);
+        transmitter.stop();
+
+        // Jitter depends on the machine, it is reported but not gated
+        log.info("Tick lateness p50 {}us, p99 {}us, period {}us", transmitter.getTickJitterNanos(50) / 1000,
+                transmitter.getTickJitterNanos(99) / 1000, period / 1000);
+        long expected = 2L * FRAME_RATE * UNIVERSES;
+        assertThat(received.get(), both(greaterThanOrEqualTo(expected * 9 / 10)).and(lessThanOrEqualTo(transmitter.getSentFrames())));
+        assertThat(transmitter.getFramesPerSecond(), both(greaterThan(FRAME_RATE * UNIVERSES * 0.9)).and(lessThan(FRAME_RATE * UNIVERSES * 1.1)));
+        assertThat(lastSlot.get(UNIVERSES - 1), equalTo(value & 0xFF));
+    }
+
+    @Test
+    public void testUnchangedFramesOnlyAtKeepAlive() throws Exception {
+        transmitter = new ArtDmxTransmitter(config()
+                .universe(0x123)
+                .keepAliveMillis(200)
+                .build());
+        byte[] frame = new byte[512];
+        frame[0] = 1;
+        transmitter.update(0x123, frame);
+        transmitter.start();
+        Thread.sleep(1000);
+        transmitter.stop();
+
+        // The first frame and a keep-alive every 200ms, instead of 44 frames
+        assertThat(transmitter.getSentFrames(), both(greaterThanOrEqualTo(4L)).and(lessThanOrEqualTo(6L)));
+        assertThat(transmitter.getKeepAliveFrames(), equalTo(transmitter.getSentFrames() - 1));
+        Thread.sleep(50);
+        assertThat(received.get(), equalTo(transmitter.getSentFrames()));
+    }
+
+    @Test
+    public void testRepeatedFrameOnlyAtKeepAlive() throws Exception {
+        transmitter = new ArtDmxTransmitter(config()
+                .universe(0x123)
+                .keepAliveMillis(200)
+                .build());
+        byte[] frame = new byte[512];
+        frame[0] = 1;
+        transmitter.update(0x123, frame);
+        transmitter.start();
+
+        // The controller keeps feeding the same frame faster than the refresh rate
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (System.nanoTime() < end) {
+            transmitter.update(0x123, frame.clone());
+            Thread.sleep(5);
+        }
+        transmitter.stop();
+
+        assertThat(transmitter.getSentFrames(), both(greaterThanOrEqualTo(4L)).and(lessThanOrEqualTo(6L)));
+        assertThat(transmitter.getKeepAliveFrames(), equalTo(transmitter.getSentFrames() - 1));
+    }
+
+    @Test
+    public void testUnicastToSubscribedNodes() throws Exception {
+        int port = ((InetSocketAddress) receiver.getLocalAddress()).getPort();
+        SubscriptionTable subscriptions = new SubscriptionTable(port);
+        NodeRegistry registry = new NodeRegistry(TimeUnit.SECONDS.toNanos(10), subscriptions);
+        registry.update(new ArtPollReply.Builder()
+                .ipAddress((Inet4Address) InetAddress.getLoopbackAddress())
+                .numPorts(1)
+                .port(0, false, true, 0)
+                .swOut(0, 1)
+                .build(), System.nanoTime());
+
+        // Universe 2 has no subscribers and falls back to the broadcast destination
+        transmitter = new ArtDmxTransmitter(config()
+                .destination("127.0.0.2")
+                .universe(1)
+                .universe(2)
+                .build(), subscriptions);
+        transmitter.update(1, new byte[512]);
+        transmitter.update(2, new byte[512]);
+        transmitter.start();
+        Thread.sleep(100);
+        transmitter.stop();
+
+        assertThat(transmitter.getUnicastPackets(), equalTo(1L));
+        assertThat(transmitter.getBroadcastPackets(), equalTo(1L));
+        Thread.sleep(50);
+        assertThat(received.get(), equalTo(1L));
+        assertThat(lastSlot.get(1), equalTo(0));
+    }
+
+    @Test
+    public void testReceivesPollRepliesItself() throws Exception {
+        int replyPort;
+        try (DatagramChannel free = DatagramChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            replyPort = ((InetSocketAddress) free.getLocalAddress()).getPort();
+        }
+        transmitter = new ArtDmxTransmitter(config()
+                .destination("127.0.0.2")
+                .universe(1)
+                .receivePollReplies(true)
+                .replyPort(replyPort)
+                .build());
+        transmitter.start();
+
+        // The node answers the poll on the reply port, after which its universe is unicast
+        byte[] reply = new ArtPollReply.Builder()
+                .ipAddress((Inet4Address) InetAddress.getLoopbackAddress())
+                .numPorts(1)
+                .port(0, false, true, 0)
+                .swOut(0, 1)
+                .build()
+                .toBytes();
+        try (DatagramChannel node = DatagramChannel.open()) {
+            node.send(ByteBuffer.wrap(reply), new InetSocketAddress(InetAddress.getLoopbackAddress(), replyPort));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (transmitter.getPollReplies() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        byte[] frame = new byte[512];
+        frame[0] = 1;
+        transmitter.update(1, frame);
+        Thread.sleep(100);
+        transmitter.stop();
+
+        assertThat(transmitter.getPollReplies(), equalTo(1L));
+        assertThat(transmitter.getSubscriptions().subscribers(1).length, equalTo(1));
+        // The first keep-alive may go out before the reply arrived, the broadcast is not received
+        assertThat(transmitter.getUnicastPackets(), greaterThanOrEqualTo(1L));
+        Thread.sleep(50);
+        assertThat(received.get(), equalTo(transmitter.getUnicastPackets()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownUniverse() throws Exception {
+        transmitter = new ArtDmxTransmitter(config().universe(1).build());
+        transmitter.update(2, new byte[512]);
+    }
+
+    private ArtDmxTransmitterConfig.ArtDmxTransmitterConfigBuilder config() throws IOException {
+        return ArtDmxTransmitterConfig.builder()
+                .destination(InetAddress.getLoopbackAddress().getHostAddress())
+                .port(((InetSocketAddress) receiver.getLocalAddress()).getPort())
+                .refreshRate(FRAME_RATE);
+    }
+}
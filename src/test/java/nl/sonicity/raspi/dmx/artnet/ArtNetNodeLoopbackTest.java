@@ -0,0 +1,404 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import nl.sonicity.raspi.dmx.artnet.packets.ArtDmx;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtPollReply;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtSync;
+import nl.sonicity.raspi.dmx.sacn.E131Data;
+import nl.sonicity.raspi.dmx.journal.JournalReader;
+import nl.sonicity.raspi.dmx.journal.JournalReplayer;
+import nl.sonicity.raspi.dmx.journal.JournalWriter;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+public class ArtNetNodeLoopbackTest {
+    private static final int UNIVERSES = 64;
+    private static final int FRAME_RATE = 44;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ArtNetNode node;
+
+    @After
+    public void tearDown() {
+        if (node != null) {
+            node.stop();
+        }
+    }
+
+    @Test
+    public void testArtPollReplyPerBindIndex() throws Exception {
+        ArtNetNodeConfig.ArtNetNodeConfigBuilder config = ArtNetNodeConfig.builder()
+                .networkInterface("lo")
+                .port(freePort());
+        for (int portAddress = 0x000; portAddress < 0x008; portAddress++) {
+            config.outputPort(portAddress);
+        }
+        config.outputPort(0x210).outputPort(0x211);
+        node = new ArtNetNode(config.build());
+
+        List<ArtPollReply> replies = node.generateArtPollReplies();
+
+        assertThat(replies.size(), equalTo(3));
+        for (int i = 0; i < replies.size(); i++) {
+            assertThat(replies.get(i).getBindIndex(), equalTo(i + 1));
+        }
+        assertThat(replies.get(0).getNumPorts(), equalTo(4));
+        assertThat(replies.get(1).getNumPorts(), equalTo(4));
+        assertThat(replies.get(1).getSwOut(3), equalTo(7));
+        assertThat(replies.get(2).getNumPorts(), equalTo(2));
+        assertThat(replies.get(2).getNetSwitch(), equalTo(2));
+        assertThat(replies.get(2).getSubSwitch(), equalTo(1));
+        assertThat(replies.get(2).getSwOut(1), equalTo(1));
+    }
+
+    @Test
+    public void testUniversesAtFullFrameRate() throws Exception {
+        int port = freePort();
+        ArtNetNodeConfig.ArtNetNodeConfigBuilder config = ArtNetNodeConfig.builder()
+                .networkInterface("lo")
+                .port(port);
+        List<CountingHandler> handlers = new ArrayList<>();
+        for (int portAddress = 0; portAddress < UNIVERSES; portAddress++) {
+            config.outputPort(portAddress);
+            handlers.add(new CountingHandler(portAddress));
+        }
+        node = new ArtNetNode(config.build());
+        handlers.forEach(node::addHandler);
+        node.start();
+
+        // Give the receive thread time to bind
+        Thread.sleep(250);
+
+        byte[][] frames = new byte[UNIVERSES][];
+        for (int portAddress = 0; portAddress < UNIVERSES; portAddress++) {
+            frames[portAddress] = new ArtDmx.Builder().portAddress(portAddress).dmx(new byte[512]).build().toBytes();
+        }
+
+        InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        long interval = TimeUnit.SECONDS.toNanos(1) / FRAME_RATE;
+        try (DatagramChannel sender = DatagramChannel.open()) {
+            long next = System.nanoTime();
+            for (int frame = 0; frame < FRAME_RATE; frame++) {
+                for (byte[] packet : frames) {
+                    packet[18] = (byte) frame;
+                    sender.send(ByteBuffer.wrap(packet), target);
+                }
+                next += interval;
+                long sleep = next - System.nanoTime();
+                if (sleep > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                }
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (System.currentTimeMillis() < deadline && !allReceived(handlers, FRAME_RATE)) {
+            Thread.sleep(10);
+        }
+
+        for (CountingHandler handler : handlers) {
+            assertThat("Frames for universe " + handler.getUniverse(), handler.frames.get(), equalTo(FRAME_RATE));
+        }
+    }
+
+    @Test
+    public void testSacnUniversesOverLoopbackMulticast() throws Exception {
+        int sacnPort = freePort();
+        ArtNetNodeConfig.ArtNetNodeConfigBuilder config = ArtNetNodeConfig.builder()
+                .networkInterface("lo")
+                .port(freePort())
+                .sacn(true)
+                .sacnPort(sacnPort);
+        List<CountingHandler> handlers = new ArrayList<>();
+        for (int portAddress = 0; portAddress < UNIVERSES; portAddress++) {
+            config.outputPort(portAddress);
+            handlers.add(new CountingHandler(portAddress));
+        }
+        node = new ArtNetNode(config.build());
+        handlers.forEach(node::addHandler);
+        node.start();
+        Thread.sleep(250);
+
+        // sACN universe N is Port-Address N - 1
+        byte[][] frames = new byte[UNIVERSES][];
+        for (int portAddress = 0; portAddress < UNIVERSES; portAddress++) {
+            frames[portAddress] = new E131Data.Builder().universe(portAddress + 1).dmx(new byte[512]).toBytes();
+        }
+
+        NetworkInterface loopback = NetworkInterface.getByName("lo");
+        long interval = TimeUnit.SECONDS.toNanos(1) / FRAME_RATE;
+        try (DatagramChannel sender = DatagramChannel.open(StandardProtocolFamily.INET)) {
+            sender.setOption(StandardSocketOptions.IP_MULTICAST_IF, loopback);
+            sender.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            long next = System.nanoTime();
+            for (int frame = 0; frame < FRAME_RATE; frame++) {
+                for (int portAddress = 0; portAddress < UNIVERSES; portAddress++) {
+                    byte[] packet = frames[portAddress];
+                    packet[111] = (byte) frame;
+                    packet[126] = (byte) frame;
+                    sender.send(ByteBuffer.wrap(packet), new InetSocketAddress(E131Data.multicastGroup(portAddress + 1), sacnPort));
+                }
+                next += interval;
+                long sleep = next - System.nanoTime();
+                if (sleep > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                }
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (System.currentTimeMillis() < deadline && !allReceived(handlers, FRAME_RATE)) {
+            Thread.sleep(10);
+        }
+
+        for (CountingHandler handler : handlers) {
+            assertThat("Frames for universe " + handler.getUniverse(), handler.frames.get(), equalTo(FRAME_RATE));
+        }
+        assertThat(node.getPacketCounts().get("E131Data"), equalTo((long) FRAME_RATE * UNIVERSES));
+    }
+
+    @Test
+    public void testArtSyncLatchesUniverses() throws Exception {
+        int port = freePort();
+        CountingHandler first = new CountingHandler(0x0001);
+        CountingHandler second = new CountingHandler(0x0012);
+        node = new ArtNetNode(ArtNetNodeConfig.builder()
+                .networkInterface("lo")
+                .port(port)
+                .outputPort(0x0001)
+                .outputPort(0x0012)
+                .build());
+        node.addHandler(first);
+        node.addHandler(second);
+        node.start();
+        Thread.sleep(250);
+
+        InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        byte[] sync = new ArtSync.Builder().build().toBytes();
+        try (DatagramChannel sender = DatagramChannel.open()) {
+            sender.send(ByteBuffer.wrap(sync), target);
+            sender.send(ByteBuffer.wrap(new ArtDmx.Builder().portAddress(0x0001).dmx(new byte[512]).build().toBytes()), target);
+            sender.send(ByteBuffer.wrap(new ArtDmx.Builder().portAddress(0x0012).dmx(new byte[512]).build().toBytes()), target);
+
+            Thread.sleep(250);
+            assertThat(node.isSyncMode(), equalTo(true));
+            assertThat(first.frames.get(), equalTo(0));
+            assertThat(second.frames.get(), equalTo(0));
+
+            sender.send(ByteBuffer.wrap(sync), target);
+        }
+
+        List<CountingHandler> handlers = List.of(first, second);
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (System.currentTimeMillis() < deadline && !allReceived(handlers, 1)) {
+            Thread.sleep(10);
+        }
+
+        assertThat(first.frames.get(), equalTo(1));
+        assertThat(second.frames.get(), equalTo(1));
+        assertThat(node.getSyncLatencyNanos(), greaterThan(0L));
+    }
+
+    @Test
+    public void testMetricsAreRegistered() throws Exception {
+        int port = freePort();
+        CountingHandler handler = new CountingHandler(0x0003);
+        node = new ArtNetNode(ArtNetNodeConfig.builder()
+                .networkInterface("lo")
+                .port(port)
+                .outputPort(0x0003)
+                .build());
+        node.addHandler(handler);
+        node.start();
+        Thread.sleep(250);
+
+        InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        try (DatagramChannel sender = DatagramChannel.open()) {
+            sender.send(ByteBuffer.wrap(new ArtDmx.Builder().portAddress(0x0003).dmx(new byte[512]).build().toBytes()), target);
+            sender.send(ByteBuffer.wrap(new byte[] { 'A', 'r', 't', '-', 'N', 'e', 't', 0x00, 0x00, 0x50, 0x00, 0x0d }), target);
+        }
+
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (System.currentTimeMillis() < deadline && (handler.frames.get() < 1 || node.getParseFailures() < 1)) {
+            Thread.sleep(10);
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("nl.sonicity.raspi.dmx:type=ArtNetNode,name=\"lo\",port=" + port);
+        assertThat(server.isRegistered(name), equalTo(true));
+        assertThat(server.getAttribute(name, "ParseFailures"), equalTo(1L));
+        assertThat(server.getAttribute(name, "DispatchedFrames"), equalTo(1L));
+        assertThat(server.getAttribute(name, "FramesPerUniverse"), instanceOf(TabularData.class));
+        assertThat(server.getAttribute(name, "DiscoveredNodes"), notNullValue());
+        assertThat(node.getFramesPerUniverse(), equalTo(Map.of(0x0003, 1L)));
+        assertThat(node.getPacketCounts().get("ARTNET_OP_DMX"), equalTo(2L));
+        assertThat((Long) server.getAttribute(name, "LastDmxAgeMillis"), greaterThanOrEqualTo(0L));
+    }
+
+    @Test
+    public void testNodesOnOneInterfaceAreRegisteredSeparately() throws Exception {
+        int firstPort = freePort();
+        int secondPort = freePort();
+        node = new ArtNetNode(ArtNetNodeConfig.builder()
+                .networkInterface("lo")
+                .port(firstPort)
+                .build());
+        ArtNetNode second = new ArtNetNode(ArtNetNodeConfig.builder()
+                .networkInterface("lo")
+                .port(secondPort)
+                .build());
+        node.start();
+        second.start();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertThat(server.isRegistered(ArtNetNode.objectName("lo", firstPort)), equalTo(true));
+            assertThat(server.isRegistered(ArtNetNode.objectName("lo", secondPort)), equalTo(true));
+        } finally {
+            second.stop();
+        }
+
+        // A stopped node is no longer reachable through JMX, the other one stays registered
+        assertThat(server.isRegistered(ArtNetNode.objectName("lo", secondPort)), equalTo(false));
+        assertThat(server.isRegistered(ArtNetNode.objectName("lo", firstPort)), equalTo(true));
+        node.stop();
+        assertThat(server.isRegistered(ArtNetNode.objectName("lo", firstPort)), equalTo(false));
+    }
+
+    @Test
+    public void testCaptureAndReplay() throws Exception {
+        int port = freePort();
+        Path capture = folder.getRoot().toPath().resolve("capture");
+        JournalWriter writer = new JournalWriter(capture);
+        node = new ArtNetNode(ArtNetNodeConfig.builder()
+                .networkInterface("lo")
+                .port(port)
+                .outputPort(0x0004)
+                .capture(writer)
+                .build());
+        node.start();
+        Thread.sleep(250);
+
+        // Two consoles on the same universe, each driving a slot of its own
+        InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        try (DatagramChannel first = DatagramChannel.open(StandardProtocolFamily.INET);
+             DatagramChannel second = DatagramChannel.open(StandardProtocolFamily.INET)) {
+            first.bind(new InetSocketAddress("127.0.0.1", 0));
+            second.bind(new InetSocketAddress("127.0.0.2", 0));
+            byte[] firstDmx = new byte[512];
+            firstDmx[0] = (byte)0xFF;
+            byte[] secondDmx = new byte[512];
+            secondDmx[1] = (byte)0xFF;
+            for (int frame = 0; frame < 10; frame++) {
+                first.send(ByteBuffer.wrap(new ArtDmx.Builder().portAddress(0x0004).dmx(firstDmx).build().toBytes()), target);
+                second.send(ByteBuffer.wrap(new ArtDmx.Builder().portAddress(0x0004).dmx(secondDmx).build().toBytes()), target);
+            }
+        }
+        Thread.sleep(250);
+        node.stop();
+        node = null;
+        writer.close();
+
+        // Replay the capture into a fresh node, which should merge the two senders again
+        port = freePort();
+        AtomicReference<byte[]> output = new AtomicReference<>();
+        node = new ArtNetNode(ArtNetNodeConfig.builder()
+                .networkInterface("lo")
+                .port(port)
+                .outputPort(0x0004)
+                .build());
+        node.addHandler(new DmxHandler("Recording", 0x0004, 1, 2) {
+            @Override
+            public void onDmx(byte[] data) {
+                output.set(data.clone());
+            }
+        });
+        node.start();
+        Thread.sleep(250);
+
+        try (JournalReader reader = new JournalReader(capture);
+             JournalReplayer.UdpSink sink = new JournalReplayer.UdpSink(InetAddress.getLoopbackAddress(), port, port)) {
+            long replayed = new JournalReplayer(reader, 0).replay(sink);
+            assertThat(replayed, equalTo(20L));
+            assertThat(sink.getSenders(), equalTo(2));
+        }
+
+        byte[] merged = { (byte)0xFF, (byte)0xFF };
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (System.currentTimeMillis() < deadline && (!Map.of(0x0004, 20L).equals(node.getFramesPerUniverse())
+                || !Arrays.equals(output.get(), merged))) {
+            Thread.sleep(10);
+        }
+        assertThat(node.getFramesPerUniverse(), equalTo(Map.of(0x0004, 20L)));
+        assertThat(output.get(), equalTo(merged));
+    }
+
+    private static boolean allReceived(List<CountingHandler> handlers, int frames) {
+        return handlers.stream().allMatch(handler -> handler.frames.get() >= frames);
+    }
+
+    static int freePort() throws Exception {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static class CountingHandler extends DmxHandler {
+        private final AtomicInteger frames = new AtomicInteger();
+
+        CountingHandler(int universe) {
+            super("Counting", universe, 1, 1);
+        }
+
+        @Override
+        public void onDmx(byte[] data) {
+            frames.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class DmxMergerTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void testSingleSource() {
+        DmxMerger merger = new DmxMerger(MergeMode.HTP);
+        byte[] output = merger.merge(1, 100, frame(10, 20), 0);
+        assertThat(value(output, 0), equalTo(10));
+        assertThat(value(output, 1), equalTo(20));
+
+        // Single source, values are allowed to go down
+        assertThat(merger.merge(1, 100, frame(5, 0), 1), sameInstance(output));
+        assertThat(value(output, 0), equalTo(5));
+        assertThat(value(output, 1), equalTo(0));
+    }
+
+    @Test
+    public void testHighestTakesPrecedence() {
+        DmxMerger merger = new DmxMerger(MergeMode.HTP);
+        merger.merge(1, 100, frame(10, 200), 0);
+        byte[] output = merger.merge(1, 200, frame(50, 20), 1);
+
+        assertThat(merger.getActiveSources(1), equalTo(2));
+        assertThat(value(output, 0), equalTo(50));
+        assertThat(value(output, 1), equalTo(200));
+
+        merger.merge(1, 200, frame(0, 0), 2);
+        assertThat(value(output, 0), equalTo(10));
+        assertThat(value(output, 1), equalTo(200));
+    }
+
+    @Test
+    public void testLatestTakesPrecedence() {
+        DmxMerger merger = new DmxMerger(MergeMode.LTP);
+        merger.merge(1, 100, frame(10, 200), 0);
+        byte[] output = merger.merge(1, 200, frame(50, 20), 1);
+
+        // A new source takes over all channels
+        assertThat(value(output, 0), equalTo(50));
+        assertThat(value(output, 1), equalTo(20));
+
+        // Source one only changes its second channel
+        merger.merge(1, 100, frame(10, 150), 2);
+        assertThat(value(output, 0), equalTo(50));
+        assertThat(value(output, 1), equalTo(150));
+
+        // Unchanged frames from source two do not take channels back
+        merger.merge(1, 200, frame(50, 20), 3);
+        assertThat(value(output, 1), equalTo(150));
+    }
+
+    @Test
+    public void testThirdSourceIsRejected() {
+        DmxMerger merger = new DmxMerger(MergeMode.HTP);
+        merger.merge(1, 100, frame(1, 1), 0);
+        merger.merge(1, 200, frame(2, 2), 0);
+
+        assertThat(merger.merge(1, 300, frame(3, 3), 0), nullValue());
+        assertThat(merger.getRejectedFrames(), equalTo(1L));
+
+        // Other universes are independent
+        assertThat(value(merger.merge(2, 300, frame(3, 3), 0), 0), equalTo(3));
+    }
+
+    @Test
+    public void testSilentSourceExpires() {
+        DmxMerger merger = new DmxMerger(MergeMode.HTP);
+        merger.merge(1, 100, frame(200, 200), 0);
+        merger.merge(1, 200, frame(10, 10), SECOND);
+
+        // Source one is silent for longer than the timeout
+        byte[] output = merger.merge(1, 200, frame(10, 10), DmxMerger.SOURCE_TIMEOUT + SECOND);
+        assertThat(merger.getActiveSources(1), equalTo(1));
+        assertThat(value(output, 0), equalTo(10));
+
+        // And a third source can now join
+        assertThat(merger.merge(1, 300, frame(20, 20), DmxMerger.SOURCE_TIMEOUT + 2 * SECOND), sameInstance(output));
+        assertThat(value(output, 0), equalTo(20));
+    }
+
+    private static byte[] frame(int first, int second) {
+        byte[] data = new byte[512];
+        data[0] = (byte) first;
+        data[1] = (byte) second;
+        return data;
+    }
+
+    private static int value(byte[] output, int index) {
+        return output[index] & 0xFF;
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class DmxRouterTest {
+    @Test
+    public void testDispatchToAllHandlersOfUniverse() {
+        DmxRouter router = new DmxRouter();
+        RecordingHandler other = new RecordingHandler(0x0000, 1, 4);
+        RecordingHandler first = new RecordingHandler(0x0123, 1, 2);
+        RecordingHandler second = new RecordingHandler(0x0123, 511, 2);
+        router.add(other);
+        router.add(first);
+        router.add(second);
+
+        byte[] dmx = new byte[512];
+        dmx[0] = 0x01;
+        dmx[1] = 0x02;
+        dmx[510] = 0x03;
+        dmx[511] = 0x04;
+
+        int delivered = router.dispatch(0x0123, dmx, 0);
+
+        assertThat(delivered, equalTo(2));
+        assertThat(other.received.size(), equalTo(0));
+        assertThat(first.received.get(0), equalTo(new byte[] { 0x01, 0x02 }));
+        assertThat(second.received.get(0), equalTo(new byte[] { 0x03, 0x04 }));
+    }
+
+    @Test
+    public void testUnroutedUniverse() {
+        DmxRouter router = new DmxRouter();
+        router.add(new RecordingHandler(0x0001, 1, 2));
+
+        assertThat(router.dispatch(0x0002, new byte[512], 0), equalTo(0));
+    }
+
+    @Test
+    public void testRemove() {
+        DmxRouter router = new DmxRouter();
+        RecordingHandler first = new RecordingHandler(0x0005, 1, 2);
+        RecordingHandler second = new RecordingHandler(0x0005, 3, 2);
+        router.add(first);
+        router.add(second);
+
+        assertThat(router.remove(first), equalTo(true));
+        assertThat(router.remove(first), equalTo(false));
+        assertThat(router.dispatch(0x0005, new byte[512], 0), equalTo(1));
+        assertThat(first.received.size(), equalTo(0));
+
+        assertThat(router.remove(second), equalTo(true));
+        assertThat(router.routesFor(0x0005).length, equalTo(0));
+    }
+
+    @Test
+    public void testUnchangedFramesAreSkipped() {
+        DmxRouter router = new DmxRouter();
+        RecordingHandler handler = new RecordingHandler(0x0001, 10, 4);
+        router.add(handler);
+
+        byte[] dmx = new byte[512];
+        router.dispatch(0x0001, dmx, 0);
+        assertThat(handler.received.size(), equalTo(1));
+        assertThat(handler.changed.get(0).cardinality(), equalTo(4));
+
+        // Same frame and a change outside the window of the handler
+        router.dispatch(0x0001, dmx, 0);
+        dmx[0] = 0x7F;
+        router.dispatch(0x0001, dmx, 0);
+        assertThat(handler.received.size(), equalTo(1));
+
+        // Change slot 12, the third channel of the handler
+        dmx[11] = 0x10;
+        router.dispatch(0x0001, dmx, 0);
+        assertThat(handler.received.size(), equalTo(2));
+        assertThat(handler.received.get(1)[2], equalTo((byte)0x10));
+        assertThat(handler.changed.get(1).cardinality(), equalTo(1));
+        assertThat(handler.changed.get(1).get(2), equalTo(true));
+
+        // After a timeout the next frame is delivered in full
+        router.invalidate();
+        router.dispatch(0x0001, dmx, 0);
+        assertThat(handler.received.size(), equalTo(3));
+        assertThat(handler.changed.get(2).cardinality(), equalTo(4));
+    }
+
+    @Test
+    public void testHandlerRegistry() {
+        DmxRouter router = new DmxRouter();
+        RecordingHandler first = new RecordingHandler(0x7FFF, 1, 2);
+        RecordingHandler second = new RecordingHandler(0x0010, 1, 2);
+        RecordingHandler third = new RecordingHandler(0x7FFF, 3, 2);
+        router.add(first);
+        router.add(second);
+        router.add(third);
+        assertThat(router.getHandlers(), equalTo(List.of(first, third, second)));
+
+        router.remove(first);
+        router.remove(third);
+        assertThat(router.getHandlers(), equalTo(List.of(second)));
+
+        // Universes that became empty can be used again
+        router.add(first);
+        assertThat(router.getHandlers(), equalTo(List.of(second, first)));
+        router.invalidate();
+        assertThat(router.dispatch(0x7FFF, new byte[512], 0), equalTo(1));
+    }
+
+    @Test
+    public void testHandlersAreStarted() {
+        DmxRouter router = new DmxRouter();
+        RecordingHandler early = new RecordingHandler(0x0001, 1, 2);
+        router.add(early);
+        assertThat(early.started, equalTo(0));
+
+        router.start("test");
+        RecordingHandler late = new RecordingHandler(0x0002, 1, 2);
+        router.add(late);
+        assertThat(early.started, equalTo(1));
+        assertThat(late.started, equalTo(1));
+        router.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPortAddress() {
+        new RecordingHandler(0x8000, 1, 1);
+    }
+
+    private static class RecordingHandler extends DmxHandler {
+        private final List<byte[]> received = new ArrayList<>();
+        private final List<BitSet> changed = new ArrayList<>();
+        private int started = 0;
+
+        RecordingHandler(int universe, int address, int width) {
+            super("Recording", universe, address, width);
+        }
+
+        @Override
+        public void onDmx(ByteBuffer slots, BitSet changed) {
+            this.changed.add((BitSet) changed.clone());
+            super.onDmx(slots, changed);
+        }
+
+        @Override
+        public void onDmx(byte[] data) {
+            received.add(data.clone());
+        }
+
+        @Override
+        public void start() {
+            started++;
+        }
+    }
+}
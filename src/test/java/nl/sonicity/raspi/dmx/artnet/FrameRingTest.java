@@ -0,0 +1,124 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class FrameRingTest {
+    @Test
+    public void testLatestFrameWins() {
+        FrameRing ring = new FrameRing();
+        RecordingSink sink = new RecordingSink();
+
+        ring.publish(0x0001, frame(1));
+        ring.publish(0x0002, frame(2));
+        ring.publish(0x0001, frame(3));
+        ring.publish(0x0001, frame(4));
+
+        assertThat(ring.drain(sink), equalTo(2));
+        assertThat(sink.portAddresses, equalTo(List.of(0x0001, 0x0002)));
+        assertThat(sink.values, equalTo(List.of(4, 2)));
+        assertThat(ring.getPublishedFrames(), equalTo(4L));
+        assertThat(ring.getOverwrittenFrames(), equalTo(2L));
+
+        // Nothing new, nothing delivered
+        assertThat(ring.drain(sink), equalTo(0));
+
+        ring.publish(0x0001, frame(5));
+        assertThat(ring.drain(sink), equalTo(1));
+        assertThat(sink.values, equalTo(List.of(4, 2, 5)));
+        assertThat(ring.getOverwrittenFrames(), equalTo(2L));
+    }
+
+    @Test
+    public void testFrameIsCopied() {
+        FrameRing ring = new FrameRing();
+        RecordingSink sink = new RecordingSink();
+
+        byte[] frame = frame(1);
+        ring.publish(0x0001, frame);
+        frame[0] = 9;
+
+        ring.drain(sink);
+        assertThat(sink.values, equalTo(List.of(1)));
+    }
+
+    @Test
+    public void testEveryUniverseFitsInTheRing() {
+        FrameRing ring = new FrameRing();
+        RecordingSink sink = new RecordingSink();
+
+        for (int round = 0; round < 2; round++) {
+            for (int portAddress = 0; portAddress < DmxRouter.PORT_ADDRESSES; portAddress++) {
+                ring.publish(portAddress, frame(round));
+            }
+        }
+
+        assertThat(ring.drain(sink), equalTo(DmxRouter.PORT_ADDRESSES));
+        assertThat(ring.getOverwrittenFrames(), equalTo((long) DmxRouter.PORT_ADDRESSES));
+    }
+
+    @Test
+    public void testAwaitIsWokenByPublish() throws Exception {
+        FrameRing ring = new FrameRing();
+        RecordingSink sink = new RecordingSink();
+
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ring.publish(0x0001, frame(1));
+        });
+        producer.start();
+
+        long start = System.nanoTime();
+        while (!ring.await(TimeUnit.SECONDS.toNanos(10))) {
+            // Spurious wakeup
+        }
+        long waited = System.nanoTime() - start;
+        producer.join();
+
+        assertThat(waited, lessThan(TimeUnit.SECONDS.toNanos(5)));
+        assertThat(ring.drain(sink), equalTo(1));
+    }
+
+    private static byte[] frame(int value) {
+        byte[] dmx = new byte[512];
+        dmx[0] = (byte) value;
+        return dmx;
+    }
+
+    private static class RecordingSink implements FrameSink {
+        private final List<Integer> portAddresses = new ArrayList<>();
+        private final List<Integer> values = new ArrayList<>();
+
+        @Override
+        public void publish(int portAddress, byte[] frame) {
+            portAddresses.add(portAddress);
+            values.add(frame[0] & 0xFF);
+        }
+    }
+}
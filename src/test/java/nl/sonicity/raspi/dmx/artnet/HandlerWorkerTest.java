@@ -0,0 +1,237 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class HandlerWorkerTest {
+    private static final long BUDGET = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final DmxRouter router = new DmxRouter(BUDGET);
+
+    @After
+    public void tearDown() {
+        router.shutdown();
+    }
+
+    @Test
+    public void testSlowHandlerIsQuarantined() throws Exception {
+        SleepingHandler slow = new SleepingHandler("Slow", 20);
+        SleepingHandler fast = new SleepingHandler("Fast", 0);
+        router.add(slow);
+        router.add(fast);
+        router.start("test");
+
+        byte[] frame = new byte[512];
+        for (int i = 0; i < 4 * HandlerWorker.QUARANTINE_AFTER; i++) {
+            frame[0] = (byte) i;
+            router.dispatch(0x0001, frame, 0);
+            // Dispatching never waits for the slow handler
+            fast.awaitCalls(i + 1);
+            // Let the slow call end, so it is quarantined for its overruns and not as stuck
+            slow.awaitFinished(Math.min(i + 1, HandlerWorker.QUARANTINE_AFTER));
+        }
+
+        assertThat(router.getQuarantinedHandlers(), equalTo(List.of("Slow")));
+        assertThat(router.getHandlerOverruns(), greaterThanOrEqualTo((long) HandlerWorker.QUARANTINE_AFTER));
+        assertThat(slow.calls.get(), equalTo(HandlerWorker.QUARANTINE_AFTER));
+        assertThat(fast.calls.get(), equalTo(4 * HandlerWorker.QUARANTINE_AFTER));
+    }
+
+    @Test
+    public void testBusyHandlerGetsLatestWindow() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger last = new AtomicInteger(-1);
+        AtomicInteger calls = new AtomicInteger();
+        DmxHandler blocking = new DmxHandler("Blocking", 0x0001, 1, 2) {
+            @Override
+            public void onDmx(byte[] data) {
+                calls.incrementAndGet();
+                last.set(data[1]);
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        router.add(blocking, TimeUnit.SECONDS.toNanos(10));
+        router.start("test");
+
+        byte[] frame = new byte[512];
+        router.dispatch(0x0001, frame, 0);
+        while (calls.get() == 0) {
+            Thread.sleep(1);
+        }
+
+        for (int i = 1; i <= 10; i++) {
+            frame[1] = (byte) i;
+            router.dispatch(0x0001, frame, 0);
+        }
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (System.currentTimeMillis() < deadline && last.get() != 10) {
+            Thread.sleep(1);
+        }
+
+        assertThat(last.get(), equalTo(10));
+        assertThat(calls.get(), equalTo(2));
+        assertThat(router.getQuarantinedHandlers().size(), equalTo(0));
+    }
+
+    @Test
+    public void testHandlersShareThePool() throws Exception {
+        DmxRouter pooled = new DmxRouter(TimeUnit.SECONDS.toNanos(1), 2);
+        List<SleepingHandler> handlers = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            SleepingHandler handler = new SleepingHandler("Pooled" + i, 1);
+            handlers.add(handler);
+            pooled.add(handler);
+        }
+        pooled.start("pooled");
+        try {
+            byte[] frame = new byte[512];
+            for (int i = 1; i <= 3; i++) {
+                frame[0] = (byte) i;
+                pooled.dispatch(0x0001, frame, 0);
+            }
+            for (SleepingHandler handler : handlers) {
+                handler.awaitCalls(1);
+                assertThat(handler.calls.get(), greaterThanOrEqualTo(1));
+            }
+            assertThat(handlerThreads("pooled"), equalTo(2L));
+        } finally {
+            pooled.shutdown();
+        }
+    }
+
+    @Test
+    public void testStuckHandlerGetsSpareThread() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        DmxHandler stuck = new DmxHandler("Stuck", 0x0001, 1, 1) {
+            @Override
+            public void onDmx(byte[] data) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        SleepingHandler fast = new SleepingHandler("Fast", 0);
+        DmxRouter single = new DmxRouter(BUDGET, 1);
+        single.add(stuck);
+        single.add(fast);
+        single.start("single");
+        try {
+            byte[] frame = new byte[512];
+            single.dispatch(0x0001, frame, 0);
+            Thread.sleep(TimeUnit.NANOSECONDS.toMillis(BUDGET * HandlerWorker.QUARANTINE_AFTER) + 10);
+
+            // The only thread is held by the stuck handler, the next frame starts a spare
+            frame[0] = 1;
+            single.dispatch(0x0001, frame, 0);
+            fast.awaitCalls(1);
+            assertThat(fast.calls.get(), greaterThanOrEqualTo(1));
+            assertThat(single.getQuarantinedHandlers(), equalTo(List.of("Stuck")));
+            assertThat(handlerThreads("single"), equalTo(2L));
+
+            // When the stuck call returns its thread ends
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (System.currentTimeMillis() < deadline && handlerThreads("single") > 1) {
+                Thread.sleep(1);
+            }
+            assertThat(handlerThreads("single"), equalTo(1L));
+        } finally {
+            release.countDown();
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdownIsCalledOnce() {
+        AtomicInteger shutdowns = new AtomicInteger();
+        router.add(new DmxHandler("Shutdown", 0x0001, 1, 1) {
+            @Override
+            public void onDmx(byte[] data) {
+            }
+
+            @Override
+            public void shutdown() {
+                shutdowns.incrementAndGet();
+            }
+        });
+        router.start("test");
+        router.shutdown();
+
+        assertThat(shutdowns.get(), equalTo(1));
+    }
+
+    private static long handlerThreads(String name) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("DmxHandler-" + name + "-") && thread.isAlive())
+                .count();
+    }
+
+    private static class SleepingHandler extends DmxHandler {
+        private final long sleepMillis;
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger finished = new AtomicInteger();
+
+        SleepingHandler(String name, long sleepMillis) {
+            super(name, 0x0001, 1, 1);
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public void onDmx(byte[] data) {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished.incrementAndGet();
+        }
+
+        void awaitCalls(int expected) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (System.currentTimeMillis() < deadline && calls.get() < expected) {
+                Thread.sleep(1);
+            }
+        }
+
+        void awaitFinished(int expected) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (System.currentTimeMillis() < deadline && finished.get() < expected) {
+                Thread.sleep(1);
+            }
+        }
+    }
+}
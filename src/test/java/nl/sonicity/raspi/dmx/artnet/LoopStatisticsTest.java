@@ -0,0 +1,55 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.Assert.assertThat;
+
+public class LoopStatisticsTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void testRates() {
+        LoopStatistics statistics = new LoopStatistics();
+        statistics.start(0, 0);
+
+        for (int i = 0; i < 50; i++) {
+            statistics.wakeup();
+        }
+        statistics.sample(10 * SECOND, SECOND / 10);
+
+        assertThat(statistics.getWakeupsPerSecond(), closeTo(5.0, 0.001));
+        assertThat(statistics.getCpuLoad(), closeTo(0.01, 0.0001));
+
+        // Idle interval
+        statistics.sample(20 * SECOND, SECOND / 10);
+        assertThat(statistics.getWakeupsPerSecond(), closeTo(0.0, 0.001));
+        assertThat(statistics.getCpuLoad(), closeTo(0.0, 0.0001));
+    }
+
+    @Test
+    public void testCpuTimeNotSupported() {
+        LoopStatistics statistics = new LoopStatistics();
+        statistics.start(0, -1);
+        statistics.wakeup();
+        statistics.sample(SECOND, -1);
+
+        assertThat(statistics.getWakeupsPerSecond(), closeTo(1.0, 0.001));
+        assertThat(statistics.getCpuLoad(), closeTo(-1.0, 0.001));
+    }
+}
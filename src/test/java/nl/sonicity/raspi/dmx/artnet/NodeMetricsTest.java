@@ -0,0 +1,75 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class NodeMetricsTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void testPacketCountsAndRates() {
+        NodeMetrics metrics = new NodeMetrics();
+        metrics.sample(SECOND);
+
+        for (int i = 0; i < 440; i++) {
+            metrics.packet(ArtNetOpCode.ARTNET_OP_DMX);
+        }
+        metrics.packet(ArtNetOpCode.ARTNET_OP_POLL);
+        metrics.packet(null);
+        metrics.parseFailure();
+        metrics.sample(11 * SECOND);
+
+        Map<String, Long> counts = metrics.getPacketCounts();
+        assertThat(counts.get("ARTNET_OP_DMX"), equalTo(440L));
+        assertThat(counts.get("ARTNET_OP_POLL"), equalTo(1L));
+        assertThat(counts.get("Unknown"), equalTo(1L));
+        assertThat(metrics.getParseFailures(), equalTo(1L));
+
+        Map<String, Double> rates = metrics.getPacketsPerSecond();
+        assertThat(rates.get("ARTNET_OP_DMX"), closeTo(44.0, 0.001));
+        assertThat(rates.get("ARTNET_OP_SYNC"), closeTo(0.0, 0.001));
+
+        // Next interval only counts new packets
+        metrics.packet(ArtNetOpCode.ARTNET_OP_DMX);
+        metrics.sample(12 * SECOND);
+        assertThat(metrics.getPacketsPerSecond().get("ARTNET_OP_DMX"), closeTo(1.0, 0.001));
+    }
+
+    @Test
+    public void testFramesAndDispatch() {
+        NodeMetrics metrics = new NodeMetrics();
+        assertThat(metrics.getLastFrameAge(1000L), equalTo(-1L));
+        assertThat(metrics.getAverageDispatchNanos(), closeTo(0.0, 0.001));
+
+        metrics.frame(0x0001, 1000L);
+        metrics.frame(0x0001, 1000L);
+        metrics.frame(0x7FFF, 1500L);
+        metrics.dispatched(2, 3000L);
+        metrics.dispatched(1, 0L);
+
+        assertThat(metrics.getFramesPerUniverse(), equalTo(Map.of(0x0001, 2L, 0x7FFF, 1L)));
+        assertThat(metrics.getLastFrameAge(1600L), equalTo(100L));
+        assertThat(metrics.getDispatchedFrames(), equalTo(3L));
+        assertThat(metrics.getAverageDispatchNanos(), closeTo(1000.0, 0.001));
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import nl.sonicity.raspi.dmx.artnet.packets.ArtPollReply;
+import org.junit.Test;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class NodeRegistryTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final NodeRegistry registry = new NodeRegistry(10 * SECOND);
+
+    @Test
+    public void testNodesWithSameNameAreSeparate() throws Exception {
+        assertThat(registry.update(reply("10.0.0.1", 1, 0x000), SECOND), equalTo(true));
+        assertThat(registry.update(reply("10.0.0.2", 1, 0x000), SECOND), equalTo(true));
+        assertThat(registry.update(reply("10.0.0.2", 2, 0x004), SECOND), equalTo(true));
+        assertThat(registry.update(reply("10.0.0.1", 1, 0x000), 2 * SECOND), equalTo(false));
+
+        List<ArtNetNodeInfo> nodes = registry.getNodes(3 * SECOND);
+        assertThat(nodes.size(), equalTo(3));
+        assertThat(nodes.get(0).getIpAddress(), equalTo("10.0.0.1"));
+        assertThat(nodes.get(0).getShortName(), equalTo("Default"));
+        assertThat(nodes.get(0).getLastSeenMillis(), equalTo(1000L));
+        assertThat(nodes.get(2).getBindIndex(), equalTo(2));
+        assertThat(nodes.get(2).getOutputPortAddresses(), equalTo(List.of(0x004, 0x005)));
+        assertThat(nodes.get(2).getGoodOutput(), equalTo(List.of(0x80, 0x80)));
+    }
+
+    @Test
+    public void testLookupByPortAddress() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            registry.update(reply("10.0.1." + i, 1, i * 2), SECOND);
+        }
+
+        assertThat(addresses(registry.getNodesForPortAddress(0x001, SECOND)), equalTo(List.of("10.0.1.0")));
+        assertThat(addresses(registry.getNodesForPortAddress(0x002, SECOND)), equalTo(List.of("10.0.1.1")));
+        assertThat(registry.getNodesForPortAddress(0x7FFF, SECOND), empty());
+
+        // A node that is patched to other universes moves in the index
+        registry.update(reply("10.0.1.0", 1, 0x400), 2 * SECOND);
+        assertThat(registry.getNodesForPortAddress(0x000, SECOND), empty());
+        assertThat(addresses(registry.getNodesForPortAddress(0x401, SECOND)), equalTo(List.of("10.0.1.0")));
+    }
+
+    @Test
+    public void testSweepExpiresStaleNodes() throws Exception {
+        registry.update(reply("10.0.0.1", 1, 0x000), 0);
+        registry.update(reply("10.0.0.2", 1, 0x000), 5 * SECOND);
+
+        assertThat(registry.sweep(9 * SECOND), equalTo(0));
+        assertThat(registry.sweep(10 * SECOND), equalTo(1));
+
+        assertThat(registry.size(), equalTo(1));
+        assertThat(registry.getExpiredNodes(), equalTo(1L));
+        assertThat(addresses(registry.getNodesForPortAddress(0x000, 10 * SECOND)), equalTo(List.of("10.0.0.2")));
+    }
+
+    @Test
+    public void testConcurrentRepliesAndSweepsStayConsistent() throws Exception {
+        ArtPollReply[][] replies = new ArtPollReply[20][2];
+        for (int i = 0; i < replies.length; i++) {
+            replies[i][0] = reply("10.0.2." + i, 1, 0x010);
+            replies[i][1] = reply("10.0.2." + i, 1, 0x020);
+        }
+
+        // Every sweep expires all nodes, so replies and removals of the same node race all the time
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread sweeper = new Thread(() -> {
+            while (running.get()) {
+                registry.sweep(Long.MAX_VALUE / 2);
+            }
+        });
+        sweeper.start();
+        for (int round = 0; round < 2000; round++) {
+            for (ArtPollReply[] node : replies) {
+                registry.update(node[round % 2], round);
+            }
+        }
+        running.set(false);
+        sweeper.join();
+
+        registry.sweep(Long.MAX_VALUE / 2);
+        assertThat(registry.size(), equalTo(0));
+        assertThat(registry.getSubscriptions().getSubscribedUniverses(), equalTo(0));
+        for (int portAddress : new int[] { 0x010, 0x011, 0x020, 0x021 }) {
+            assertThat(registry.getNodesForPortAddress(portAddress, 0), empty());
+        }
+
+        registry.update(replies[0][0], 0);
+        assertThat(registry.getSubscriptions().subscribers(0x010).length, equalTo(1));
+        assertThat(registry.getSubscriptions().getSubscribedUniverses(), equalTo(2));
+    }
+
+    private static List<String> addresses(List<ArtNetNodeInfo> nodes) {
+        return nodes.stream().map(ArtNetNodeInfo::getIpAddress).collect(Collectors.toList());
+    }
+
+    private static ArtPollReply reply(String ipAddress, int bindIndex, int firstPortAddress) throws Exception {
+        ArtPollReply.Builder builder = new ArtPollReply.Builder()
+                .ipAddress((Inet4Address) InetAddress.getByName(ipAddress))
+                .shortName("Default")
+                .netswitch(firstPortAddress >> 8)
+                .subswitch(firstPortAddress >> 4 & 0x0F)
+                .bindIndex(bindIndex)
+                .numPorts(2);
+        for (int port = 0; port < 2; port++) {
+            builder.port(port, false, true, 0)
+                    .swOut(port, (firstPortAddress + port) & 0x0F)
+                    .goodOutput(port, 0x80);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import com.pi4j.io.gpio.GpioController;
+import com.pi4j.io.gpio.GpioPin;
+import com.pi4j.io.gpio.Pin;
+import com.pi4j.io.gpio.RaspiPin;
+import com.pi4j.io.gpio.impl.GpioControllerImpl;
+import lombok.extern.slf4j.Slf4j;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtDmx;
+import nl.sonicity.raspi.dmx.handlers.DmxToGPIOHandler;
+import nl.sonicity.raspi.dmx.handlers.SimulatedGpioProvider;
+import nl.sonicity.raspi.dmx.handlers.TimingRecorder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Latency from an ArtDmx datagram leaving the sender to the GPIO pin changing, through the
+ * receive thread, the dispatch thread and the worker of a {@link DmxToGPIOHandler}.
+ *
+ * Every probe frame toggles a pin, the simulated provider reports the time of the edge. Probes
+ * are sent one at a time with a random gap, so they do not line up with the load. Under load a
+ * background sender keeps a number of other universes with their own handlers busy at 44 Hz.
+ *
+ * The gates are loose enough for a loaded build machine, a regression that adds a timer tick or
+ * a missed wakeup to the path still fails them. Run more probes with -Dlatency.probes=100000.
+ */
+@Slf4j
+public class PacketToPinLatencyTest {
+    private static final int PROBES = Integer.getInteger("latency.probes", 500);
+    private static final int PROBE_UNIVERSE = 0x0100;
+    private static final int LOAD_UNIVERSES = 64;
+    private static final int LOAD_RATE = 44;
+    private static final Pin PIN = RaspiPin.GPIO_07;
+
+    private static final long P50_GATE = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long P99_IDLE_GATE = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long P99_LOAD_GATE = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private SimulatedGpioProvider provider;
+    private GpioController gpio;
+    private ArtNetNode node;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        provider = new SimulatedGpioProvider();
+        gpio = new GpioControllerImpl(provider);
+        port = ArtNetNodeLoopbackTest.freePort();
+
+        ArtNetNodeConfig.ArtNetNodeConfigBuilder config = ArtNetNodeConfig.builder()
+                .networkInterface("lo")
+                .port(port)
+                .outputPort(PROBE_UNIVERSE);
+        for (int portAddress = 0; portAddress < LOAD_UNIVERSES; portAddress++) {
+            config.outputPort(portAddress);
+        }
+        node = new ArtNetNode(config.build());
+        node.addHandler(new DmxToGPIOHandler(gpio, PROBE_UNIVERSE, 1, new Pin[] { PIN }));
+        for (int portAddress = 0; portAddress < LOAD_UNIVERSES; portAddress++) {
+            node.addHandler(new SinkHandler(portAddress));
+        }
+        node.start();
+        Thread.sleep(250);
+    }
+
+    @After
+    public void tearDown() {
+        node.stop();
+        GpioPin[] pins = gpio.getProvisionedPins().toArray(new GpioPin[0]);
+        if (pins.length > 0) {
+            gpio.unprovisionPin(pins);
+        }
+    }
+
+    @Test
+    public void testIdleLatency() throws Exception {
+        TimingRecorder latency = measure();
+        String report = report("idle", latency);
+
+        assertThat(report, latency.getCount(), equalTo(PROBES));
+        assertThat(report, latency.percentile(50), lessThan(P50_GATE));
+        assertThat(report, latency.percentile(99), lessThan(P99_IDLE_GATE));
+    }
+
+    @Test
+    public void testLatencyUnderLoad() throws Exception {
+        BackgroundLoad load = new BackgroundLoad();
+        load.start();
+        TimingRecorder latency;
+        try {
+            latency = measure();
+        } finally {
+            load.stop();
+        }
+        String report = report("load", latency);
+
+        assertThat(report, latency.getCount(), equalTo(PROBES));
+        assertThat(load.frames, greaterThan(0L));
+        assertThat(report, latency.percentile(50), lessThan(P50_GATE));
+        assertThat(report, latency.percentile(99), lessThan(P99_LOAD_GATE));
+    }
+
+    /** Send the probes and wait for the pin after each one
+     *
+     * @return packet to pin latency of every probe
+     */
+    private TimingRecorder measure() throws Exception {
+        TimingRecorder latency = new TimingRecorder(PROBES);
+        BlockingQueue<Long> edges = new ArrayBlockingQueue<>(16);
+        provider.setEdgeListener((pin, state, nanoTime) -> edges.offer(nanoTime));
+
+        InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        byte[] dmx = new byte[512];
+        try (DatagramChannel sender = DatagramChannel.open()) {
+            // The first frame provisions the state, it does not necessarily toggle the pin
+            dmx[0] = (byte) 255;
+            send(sender, target, dmx, 1);
+            edges.poll(1, TimeUnit.SECONDS);
+
+            for (int probe = 0; probe < PROBES; probe++) {
+                dmx[0] = (byte) (probe % 2 == 0 ? 0 : 255);
+                edges.clear();
+                long sent = send(sender, target, dmx, probe % 254 + 2);
+                Long edge = edges.poll(1, TimeUnit.SECONDS);
+                if (edge == null) {
+                    log.warn("Probe {} did not change the pin", probe);
+                    continue;
+                }
+                latency.record(edge - sent);
+
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(ThreadLocalRandom.current().nextInt(1000, 5000)));
+            }
+        } finally {
+            provider.setEdgeListener(null);
+        }
+        return latency;
+    }
+
+    private static long send(DatagramChannel sender, InetSocketAddress target, byte[] dmx, int sequence) throws Exception {
+        ByteBuffer frame = ByteBuffer.wrap(new ArtDmx.Builder()
+                .sequence(sequence)
+                .portAddress(PROBE_UNIVERSE)
+                .dmx(dmx)
+                .build()
+                .toBytes());
+        long sent = System.nanoTime();
+        sender.send(frame, target);
+        return sent;
+    }
+
+    private static String report(String name, TimingRecorder latency) {
+        String report = String.format("Packet to pin latency %s: p50 %dus, p99 %dus, p99.9 %dus, max %dus over %d probes", name,
+                TimeUnit.NANOSECONDS.toMicros(latency.percentile(50)),
+                TimeUnit.NANOSECONDS.toMicros(latency.percentile(99)),
+                TimeUnit.NANOSECONDS.toMicros(latency.percentile(99.9)),
+                TimeUnit.NANOSECONDS.toMicros(latency.percentile(100)),
+                latency.getCount());
+        log.info(report);
+        return report;
+    }
+
+    /** Sends changing frames to all load universes at 44 Hz */
+    private class BackgroundLoad implements Runnable {
+        private volatile boolean terminate;
+        private volatile long frames;
+        private Thread thread;
+
+        void start() {
+            thread = new Thread(this, "BackgroundLoad");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws InterruptedException {
+            terminate = true;
+            thread.join(5000L);
+        }
+
+        @Override
+        public void run() {
+            InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+            byte[][] packets = new byte[LOAD_UNIVERSES][];
+            for (int portAddress = 0; portAddress < LOAD_UNIVERSES; portAddress++) {
+                packets[portAddress] = new ArtDmx.Builder().portAddress(portAddress).dmx(new byte[512]).build().toBytes();
+            }
+
+            byte[] slots = new byte[512];
+            long interval = TimeUnit.SECONDS.toNanos(1) / LOAD_RATE;
+            long next = System.nanoTime();
+            try (DatagramChannel sender = DatagramChannel.open()) {
+                for (int frame = 0; !terminate; frame++) {
+                    for (byte[] packet : packets) {
+                        ThreadLocalRandom.current().nextBytes(slots);
+                        System.arraycopy(slots, 0, packet, 18, slots.length);
+                        packet[12] = (byte) (frame % 255 + 1);
+                        sender.send(ByteBuffer.wrap(packet), target);
+                        frames++;
+                    }
+                    next += interval;
+                    LockSupport.parkNanos(next - System.nanoTime());
+                }
+            } catch (Exception e) {
+                log.error("Background load failed", e);
+            }
+        }
+    }
+
+    private static class SinkHandler extends DmxHandler {
+        private long checksum;
+
+        SinkHandler(int universe) {
+            super("Sink", universe, 1, 512);
+        }
+
+        @Override
+        public void onDmx(byte[] data) {
+            for (byte value : data) {
+                checksum += value;
+            }
+        }
+    }
+}
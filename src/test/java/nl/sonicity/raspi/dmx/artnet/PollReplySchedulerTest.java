@@ -0,0 +1,94 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class PollReplySchedulerTest {
+    private static final long WINDOW = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long MAX_DELAY = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final List<Long> replies = new CopyOnWriteArrayList<>();
+    private final PollReplyScheduler scheduler = new PollReplyScheduler(() -> replies.add(System.nanoTime()), WINDOW, MAX_DELAY);
+
+    @After
+    public void tearDown() {
+        scheduler.stop(1000L);
+    }
+
+    @Test
+    public void testBurstIsCoalesced() throws Exception {
+        scheduler.start("test");
+
+        long start = System.nanoTime();
+        assertThat(scheduler.request(), equalTo(true));
+        for (int i = 0; i < 99; i++) {
+            scheduler.request();
+        }
+        awaitReplies(1);
+        Thread.sleep(50);
+
+        assertThat(replies.size(), equalTo(1));
+        assertThat(replies.get(0) - start, lessThanOrEqualTo(MAX_DELAY + TimeUnit.MILLISECONDS.toNanos(500)));
+        assertThat(scheduler.getRequests(), equalTo(100L));
+        assertThat(scheduler.getSentReplies(), equalTo(1L));
+        assertThat(scheduler.getSuppressedReplies(), equalTo(99L));
+    }
+
+    @Test
+    public void testWindowBetweenReplies() throws Exception {
+        scheduler.start("test");
+
+        scheduler.request();
+        awaitReplies(1);
+        // The next poll is answered, but not before the window has passed
+        assertThat(scheduler.request(), equalTo(true));
+        scheduler.request();
+        awaitReplies(2);
+
+        assertThat(replies.get(1) - replies.get(0), greaterThanOrEqualTo(WINDOW));
+        assertThat(scheduler.getSuppressedReplies(), equalTo(1L));
+    }
+
+    @Test
+    public void testStopDropsPendingReply() throws Exception {
+        PollReplyScheduler slow = new PollReplyScheduler(() -> replies.add(System.nanoTime()),
+                0, TimeUnit.SECONDS.toNanos(10));
+        slow.start("slow");
+        slow.request();
+        slow.stop(1000L);
+
+        assertThat(replies.size(), equalTo(0));
+    }
+
+    private void awaitReplies(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (replies.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(replies.size(), greaterThanOrEqualTo(count));
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import nl.sonicity.raspi.dmx.artnet.packets.ArtNetPacket;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtPollReply;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+
+public class PollReplySenderTest {
+    private DatagramChannel receiver;
+    private PollReplySender sender;
+    private final AtomicInteger generated = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        receiver = DatagramChannel.open();
+        receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                receiver.socket().getLocalPort());
+        sender = new PollReplySender(() -> List.of(reply(generated.incrementAndGet())), List.of(target));
+        sender.open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    public void testRepliesAreCached() throws IOException {
+        assertThat(sender.send(), equalTo(1));
+        assertThat(sender.send(), equalTo(1));
+
+        assertThat(sender.getRebuilds(), equalTo(1L));
+        assertThat(sender.getSentReplies(), equalTo(2L));
+        assertThat(receive().getBindIndex(), equalTo(1));
+        assertThat(receive().getBindIndex(), equalTo(1));
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        sender.send();
+        sender.invalidate();
+        sender.send();
+
+        assertThat(sender.getRebuilds(), equalTo(2L));
+        assertThat(receive().getBindIndex(), equalTo(1));
+        assertThat(receive().getBindIndex(), equalTo(2));
+    }
+
+    @Test(expected = IOException.class)
+    public void testSendWhenClosed() throws IOException {
+        sender.close();
+        sender.send();
+    }
+
+    private ArtPollReply receive() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        receiver.receive(buffer);
+        buffer.flip();
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+
+        ArtNetPacket packet = ArtNetPacket.parseBytes(data);
+        assertThat(packet, instanceOf(ArtPollReply.class));
+        return (ArtPollReply) packet;
+    }
+
+    private static ArtPollReply reply(int bindIndex) {
+        return new ArtPollReply.Builder()
+                .bindIndex(bindIndex)
+                .build();
+    }
+}
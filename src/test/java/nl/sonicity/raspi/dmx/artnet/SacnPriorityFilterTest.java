@@ -0,0 +1,76 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class SacnPriorityFilterTest {
+    private static final int UNIVERSE = 0x0001;
+    private static final int LOW = 1;
+    private static final int HIGH = 2;
+
+    private final DmxMerger merger = new DmxMerger(MergeMode.HTP);
+    private final SacnPriorityFilter filter = new SacnPriorityFilter(merger);
+
+    @Test
+    public void testHigherPriorityTakesOver() {
+        assertThat(accept(LOW, 100, 0), equalTo(true));
+        assertThat(merger.getActiveSources(UNIVERSE), equalTo(1));
+
+        // The low priority source leaves the merge as soon as a higher priority appears
+        assertThat(accept(HIGH, 150, 1), equalTo(true));
+        assertThat(merger.getActiveSources(UNIVERSE), equalTo(1));
+        assertThat(accept(LOW, 100, 2), equalTo(false));
+        assertThat(accept(HIGH, 150, 3), equalTo(true));
+        assertThat(filter.getOutrankedFrames(), equalTo(1L));
+    }
+
+    @Test
+    public void testEqualPrioritiesAreMerged() {
+        assertThat(accept(LOW, 100, 0), equalTo(true));
+        assertThat(accept(HIGH, 100, 1), equalTo(true));
+        assertThat(merger.getActiveSources(UNIVERSE), equalTo(2));
+    }
+
+    @Test
+    public void testLowerPriorityReturnsAfterTimeout() {
+        accept(HIGH, 150, 0);
+        assertThat(accept(LOW, 100, 1000), equalTo(false));
+
+        long afterTimeout = SacnPriorityFilter.SOURCE_TIMEOUT + 1;
+        assertThat(accept(LOW, 100, afterTimeout), equalTo(true));
+    }
+
+    @Test
+    public void testTerminatedSourceLeavesImmediately() {
+        accept(HIGH, 150, 0);
+        filter.terminate(UNIVERSE, HIGH);
+
+        assertThat(merger.getActiveSources(UNIVERSE), equalTo(0));
+        assertThat(accept(LOW, 100, 1), equalTo(true));
+    }
+
+    private boolean accept(int sourceId, int priority, long nanoTime) {
+        if (!filter.accept(UNIVERSE, sourceId, priority, nanoTime)) {
+            return false;
+        }
+        merger.merge(UNIVERSE, sourceId, new byte[DmxMerger.SLOTS], nanoTime);
+        return true;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class SequenceTrackerTest {
+    private static final long MILLISECOND = 1_000_000L;
+
+    @Test
+    public void testInOrder() {
+        SequenceTracker tracker = new SequenceTracker();
+        for (int sequence = 1; sequence < 256; sequence++) {
+            assertThat(tracker.accept(0, 1, sequence, sequence * MILLISECOND), equalTo(true));
+        }
+        assertThat(tracker.getDroppedFrames(), equalTo(0L));
+    }
+
+    @Test
+    public void testReordered() {
+        SequenceTracker tracker = new SequenceTracker();
+        assertThat(tracker.accept(0, 1, 10, 0), equalTo(true));
+        assertThat(tracker.accept(0, 1, 12, MILLISECOND), equalTo(true));
+        assertThat(tracker.accept(0, 1, 11, 2 * MILLISECOND), equalTo(false));
+        assertThat(tracker.accept(0, 1, 12, 3 * MILLISECOND), equalTo(false));
+        assertThat(tracker.accept(0, 1, 13, 4 * MILLISECOND), equalTo(true));
+
+        assertThat(tracker.getReorderedFrames(), equalTo(1L));
+        assertThat(tracker.getDroppedFrames(), equalTo(2L));
+    }
+
+    @Test
+    public void testWrapAround() {
+        SequenceTracker tracker = new SequenceTracker();
+        assertThat(tracker.accept(0, 1, 254, 0), equalTo(true));
+        assertThat(tracker.accept(0, 1, 255, MILLISECOND), equalTo(true));
+        // Sequence numbers wrap from 255 to 1
+        assertThat(tracker.accept(0, 1, 1, 2 * MILLISECOND), equalTo(true));
+        // Late frame from before the wrap
+        assertThat(tracker.accept(0, 1, 254, 3 * MILLISECOND), equalTo(false));
+        assertThat(tracker.accept(0, 1, 2, 4 * MILLISECOND), equalTo(true));
+
+        assertThat(tracker.getReorderedFrames(), equalTo(1L));
+    }
+
+    @Test
+    public void testSequenceDisabled() {
+        SequenceTracker tracker = new SequenceTracker();
+        assertThat(tracker.accept(0, 1, 0, 0), equalTo(true));
+        assertThat(tracker.accept(0, 1, 0, MILLISECOND), equalTo(true));
+        assertThat(tracker.accept(0, 1, 5, 2 * MILLISECOND), equalTo(true));
+        assertThat(tracker.accept(0, 1, 0, 3 * MILLISECOND), equalTo(true));
+        assertThat(tracker.accept(0, 1, 3, 4 * MILLISECOND), equalTo(true));
+        assertThat(tracker.getDroppedFrames(), equalTo(0L));
+    }
+
+    @Test
+    public void testSacnZeroIsSequenceNumber() {
+        SequenceTracker tracker = SequenceTracker.forSacn();
+        assertThat(tracker.accept(0, 1, 254, 0), equalTo(true));
+        assertThat(tracker.accept(0, 1, 255, MILLISECOND), equalTo(true));
+        // sACN wraps from 255 to 0, and the frame after a 0 is still checked
+        assertThat(tracker.accept(0, 1, 0, 2 * MILLISECOND), equalTo(true));
+        assertThat(tracker.accept(0, 1, 255, 3 * MILLISECOND), equalTo(false));
+        assertThat(tracker.accept(0, 1, 1, 4 * MILLISECOND), equalTo(true));
+        // A late 0 is out of order like any other number
+        assertThat(tracker.accept(0, 1, 0, 5 * MILLISECOND), equalTo(false));
+        assertThat(tracker.accept(0, 1, 2, 6 * MILLISECOND), equalTo(true));
+
+        assertThat(tracker.getReorderedFrames(), equalTo(2L));
+        assertThat(tracker.getDroppedFrames(), equalTo(2L));
+    }
+
+    @Test
+    public void testSourcesAndUniversesAreIndependent() {
+        SequenceTracker tracker = new SequenceTracker();
+        assertThat(tracker.accept(0, 1, 100, 0), equalTo(true));
+        assertThat(tracker.accept(0, 2, 90, 0), equalTo(true));
+        assertThat(tracker.accept(1, 1, 90, 0), equalTo(true));
+        assertThat(tracker.accept(0, 1, 99, MILLISECOND), equalTo(false));
+        assertThat(tracker.accept(0, 2, 91, MILLISECOND), equalTo(true));
+    }
+
+    @Test
+    public void testSilentSourcesAreReused() {
+        SequenceTracker tracker = new SequenceTracker();
+        long now = 0;
+        for (int sourceId = 1; sourceId <= 100; sourceId++) {
+            assertThat(tracker.accept(0, sourceId, 10, now), equalTo(true));
+            now += SequenceTracker.SOURCE_RESET_INTERVAL / 4;
+        }
+        // Only the sources of the last second are kept
+        assertThat(tracker.getSources(0), equalTo(5));
+
+        // A source that is still active keeps its sequence
+        assertThat(tracker.accept(0, 100, 9, now), equalTo(false));
+    }
+
+    @Test
+    public void testSourcesAreCapped() {
+        SequenceTracker tracker = new SequenceTracker();
+        for (int sourceId = 1; sourceId <= 100; sourceId++) {
+            assertThat(tracker.accept(0, sourceId, 10, sourceId * MILLISECOND), equalTo(true));
+        }
+        assertThat(tracker.getSources(0), equalTo(SequenceTracker.MAX_SOURCES));
+
+        // The most recent sources are still tracked
+        assertThat(tracker.accept(0, 100, 9, 101 * MILLISECOND), equalTo(false));
+    }
+
+    @Test
+    public void testRestartedSource() {
+        SequenceTracker tracker = new SequenceTracker();
+        assertThat(tracker.accept(0, 1, 100, 0), equalTo(true));
+        // Large backward jump
+        assertThat(tracker.accept(0, 1, 1, MILLISECOND), equalTo(true));
+        // Small backward jump after a period of silence
+        assertThat(tracker.accept(0, 1, 2, 2 * MILLISECOND), equalTo(true));
+        assertThat(tracker.accept(0, 1, 1, 2 * MILLISECOND + SequenceTracker.SOURCE_RESET_INTERVAL + 1), equalTo(true));
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import static org.hamcrest.Matchers.arrayContainingInAnyOrder;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class SubscriptionTableTest {
+    private final SubscriptionTable table = new SubscriptionTable(6454);
+
+    @Test
+    public void testIncrementalUpdates() throws Exception {
+        InetAddress first = InetAddress.getByName("10.0.0.1");
+        InetAddress second = InetAddress.getByName("10.0.0.2");
+
+        table.update(first, new int[0], new int[] { 1, 2 });
+        table.update(second, new int[0], new int[] { 2 });
+        InetSocketAddress[] universe1 = table.subscribers(1);
+
+        assertThat(universe1, equalTo(new InetSocketAddress[] { new InetSocketAddress(first, 6454) }));
+        assertThat(table.subscribers(2), arrayContainingInAnyOrder(
+                new InetSocketAddress(first, 6454), new InetSocketAddress(second, 6454)));
+        assertThat(table.subscribers(3), emptyArray());
+
+        // Only the universes that changed get a new array
+        table.update(second, new int[] { 2 }, new int[] { 3 });
+        assertThat(table.subscribers(1), sameInstance(universe1));
+        assertThat(table.subscribers(2), equalTo(new InetSocketAddress[] { new InetSocketAddress(first, 6454) }));
+        assertThat(table.subscribers(3), equalTo(new InetSocketAddress[] { new InetSocketAddress(second, 6454) }));
+        assertThat(table.getSubscribedUniverses(), equalTo(3));
+    }
+
+    @Test
+    public void testBindIndexesShareSubscription() throws Exception {
+        InetAddress node = InetAddress.getByName("10.0.0.1");
+
+        table.update(node, new int[0], new int[] { 5 });
+        table.update(node, new int[0], new int[] { 5 });
+        assertThat(table.subscribers(5).length, equalTo(1));
+
+        table.update(node, new int[] { 5 }, new int[0]);
+        assertThat(table.subscribers(5).length, equalTo(1));
+        table.update(node, new int[] { 5 }, new int[0]);
+        assertThat(table.subscribers(5), emptyArray());
+        assertThat(table.getSubscribedUniverses(), equalTo(0));
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class SyncBufferTest {
+    @Test
+    public void testCommitDeliversLatestFramePerUniverse() {
+        DmxRouter router = new DmxRouter();
+        RecordingHandler first = new RecordingHandler(0x0001);
+        RecordingHandler second = new RecordingHandler(0x0102);
+        router.add(first);
+        router.add(second);
+
+        SyncBuffer syncBuffer = new SyncBuffer();
+        syncBuffer.store(0x0001, frame(1));
+        syncBuffer.store(0x0102, frame(2));
+        syncBuffer.store(0x0001, frame(3));
+
+        assertThat(syncBuffer.getPendingCount(), equalTo(2));
+        assertThat(first.received.size(), equalTo(0));
+        assertThat(second.received.size(), equalTo(0));
+
+        long arrival = System.nanoTime();
+        assertThat(syncBuffer.commit(arrival), equalTo(2));
+        assertThat(syncBuffer.getPendingCount(), equalTo(0));
+
+        // Nothing reaches the handlers until the dispatch thread applies the commit as a whole
+        assertThat(first.received.size(), equalTo(0));
+        assertThat(syncBuffer.apply(router), equalTo(2));
+
+        assertThat(first.received, equalTo(List.of(3)));
+        assertThat(second.received, equalTo(List.of(2)));
+        assertThat(syncBuffer.getCommits(), equalTo(1L));
+        assertThat(syncBuffer.getLastCommitLatency(), greaterThan(0L));
+
+        // No new commit, nothing delivered
+        assertThat(syncBuffer.apply(router), equalTo(0));
+        assertThat(first.received.size(), equalTo(1));
+    }
+
+    @Test
+    public void testCommitsNotTakenAreCombined() {
+        DmxRouter router = new DmxRouter();
+        RecordingHandler first = new RecordingHandler(0x0001);
+        RecordingHandler second = new RecordingHandler(0x0002);
+        router.add(first);
+        router.add(second);
+
+        SyncBuffer syncBuffer = new SyncBuffer();
+        syncBuffer.store(0x0001, frame(1));
+        syncBuffer.store(0x0002, frame(2));
+        syncBuffer.commit(System.nanoTime());
+
+        // A second ArtSync before the dispatch thread took the first commit
+        syncBuffer.store(0x0001, frame(4));
+        assertThat(syncBuffer.commit(System.nanoTime()), equalTo(2));
+        assertThat(syncBuffer.getCoalescedCommits(), equalTo(1L));
+
+        assertThat(syncBuffer.apply(router), equalTo(2));
+        assertThat(first.received, equalTo(List.of(4)));
+        assertThat(second.received, equalTo(List.of(2)));
+        assertThat(syncBuffer.getCommits(), equalTo(1L));
+
+        // The next commit starts empty
+        syncBuffer.store(0x0002, frame(5));
+        assertThat(syncBuffer.commit(System.nanoTime()), equalTo(1));
+        assertThat(syncBuffer.apply(router), equalTo(1));
+        assertThat(first.received, equalTo(List.of(4)));
+        assertThat(second.received, equalTo(List.of(2, 5)));
+    }
+
+    @Test
+    public void testLatencyWaitsForHandlerCalls() throws Exception {
+        DmxRouter router = new DmxRouter(TimeUnit.SECONDS.toNanos(1), 2);
+        SlowHandler fast = new SlowHandler(0x0001, 0);
+        SlowHandler slow = new SlowHandler(0x0002, 50);
+        router.add(fast);
+        router.add(slow);
+        router.start("SyncBufferTest");
+        try {
+            SyncBuffer syncBuffer = new SyncBuffer();
+            syncBuffer.store(0x0001, frame(1));
+            syncBuffer.store(0x0002, frame(2));
+            long arrival = System.nanoTime();
+            syncBuffer.commit(arrival);
+
+            // The frames are only queued for the handler pool, the commit completes when the slow call returns
+            assertThat(syncBuffer.apply(router), equalTo(2));
+            assertThat(slow.returned.await(5, TimeUnit.SECONDS), equalTo(true));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (syncBuffer.getCompletedCommits() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+
+            assertThat(syncBuffer.getCompletedCommits(), equalTo(1L));
+            assertThat(syncBuffer.getLastCommitLatency(), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50)));
+        } finally {
+            router.shutdown();
+        }
+    }
+
+    @Test
+    public void testFlush() {
+        DmxRouter router = new DmxRouter();
+        RecordingHandler handler = new RecordingHandler(0x0001);
+        router.add(handler);
+
+        SyncBuffer syncBuffer = new SyncBuffer();
+        syncBuffer.store(0x0001, frame(7));
+        assertThat(syncBuffer.flush(router), equalTo(1));
+
+        assertThat(handler.received, equalTo(List.of(7)));
+        assertThat(syncBuffer.getCommits(), equalTo(0L));
+    }
+
+    private static byte[] frame(int value) {
+        byte[] dmx = new byte[512];
+        dmx[0] = (byte) value;
+        return dmx;
+    }
+
+    private static class SlowHandler extends DmxHandler {
+        private final long delayMillis;
+        private final CountDownLatch returned = new CountDownLatch(1);
+
+        SlowHandler(int universe, long delayMillis) {
+            super("Slow", universe, 1, 1);
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void onDmx(byte[] data) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            returned.countDown();
+        }
+    }
+
+    private static class RecordingHandler extends DmxHandler {
+        private final List<Integer> received = new ArrayList<>();
+
+        RecordingHandler(int universe) {
+            super("Recording", universe, 1, 1);
+        }
+
+        @Override
+        public void onDmx(byte[] data) {
+            received.add(data[0] & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet.packets;
+
+import nl.sonicity.raspi.dmx.artnet.ArtNetException;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ArtDmxViewTest {
+    @Test
+    public void testView() {
+        byte[] dmxdata = new byte[512];
+        dmxdata[0] = (byte)0xFE;
+        dmxdata[511] = (byte)0xFD;
+
+        ArtDmx dmx = new ArtDmx.Builder()
+                .sequence(5)
+                .physicalPort(1)
+                .network(15)
+                .subnet(9)
+                .universe(1)
+                .dmx(dmxdata)
+                .build();
+
+        ByteBuffer buffer = receive(ByteBuffer.allocate(8196), dmx.toBytes());
+        assertThat(ArtDmxView.isArtDmx(buffer), equalTo(true));
+
+        ArtDmxView view = new ArtDmxView(buffer).wrap();
+        assertThat(view.getSequence(), equalTo(5));
+        assertThat(view.getPhysicalPort(), equalTo(1));
+        assertThat(view.getNetwork(), equalTo(15));
+        assertThat(view.getSubnet(), equalTo(9));
+        assertThat(view.getUniverse(), equalTo(1));
+        assertThat(view.getPortAddress(), equalTo(15 << 8 | 9 << 4 | 1));
+        assertThat(view.getDmxLength(), equalTo(512));
+        assertThat(view.getSlot(0), equalTo(0xFE));
+        assertThat(view.getSlot(511), equalTo(0xFD));
+
+        byte[] part = new byte[2];
+        view.copySlots(510, part, 0, 2);
+        assertThat(part[1], equalTo((byte)0xFD));
+
+        ByteBuffer slots = view.getSlots();
+        assertThat(slots.remaining(), equalTo(512));
+        assertThat(slots.get(0), equalTo((byte)0xFE));
+    }
+
+    @Test(expected = ReadOnlyBufferException.class)
+    public void testSlotsAreReadOnly() {
+        byte[] packet = new ArtDmx.Builder().dmx(new byte[512]).build().toBytes();
+
+        ArtDmxView view = new ArtDmxView(receive(ByteBuffer.allocate(8196), packet)).wrap();
+        view.getSlots().put(0, (byte)0x01);
+    }
+
+    @Test
+    public void testViewIsReused() {
+        byte[] dmxdata = new byte[512];
+        dmxdata[100] = (byte)0x80;
+        byte[] first = new ArtDmx.Builder().universe(2).dmx(dmxdata).build().toBytes();
+
+        ByteBuffer buffer = ByteBuffer.allocate(8196);
+        ArtDmxView view = new ArtDmxView(buffer);
+
+        receive(buffer, first);
+        ByteBuffer slots = view.wrap().getSlots();
+        assertThat(view.getSlot(100), equalTo(0x80));
+        buffer.clear();
+
+        // Short frame of 24 slots, the remainder of the previous frame should be gone
+        byte[] second = new byte[18 + 24];
+        System.arraycopy(first, 0, second, 0, 18);
+        ArtNetPacket.writeUint16Lsb(second, 16, 24);
+        second[18] = 0x10;
+
+        receive(buffer, second);
+        assertThat(view.wrap().getSlots(), sameInstance(slots));
+        assertThat(view.getDmxLength(), equalTo(24));
+        assertThat(view.getSlot(0), equalTo(0x10));
+        assertThat(view.getSlot(100), equalTo(0x00));
+        assertThat(slots.remaining(), equalTo(24));
+    }
+
+    @Test(expected = ArtNetException.class)
+    public void testInvalidPacket() {
+        byte[] data = new byte[] {
+                'A', 'r', 't', '-', 'N', 'e', 't', 0x00, 0x00, 0x50, 0x00, 0x0d, 0x00, 0x00, 0x00, 0x00, 0x00, 0x02,
+                0x01, 0x02
+        };
+
+        new ArtDmxView(receive(ByteBuffer.allocate(8196), data)).wrap();
+    }
+
+    @Test
+    public void testNotArtDmx() {
+        byte[] data = new byte[] {
+                'A', 'r', 't', '-', 'N', 'e', 't', 0x00, 0x00, 0x20, 0x00, 0x0e, 0x05, 0x07
+        };
+
+        assertThat(ArtDmxView.isArtDmx(receive(ByteBuffer.allocate(8196), data)), equalTo(false));
+    }
+
+    private static ByteBuffer receive(ByteBuffer buffer, byte[] datagram) {
+        buffer.put(datagram);
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -18,6 +18,7 @@ package nl.sonicity.raspi.dmx.artnet.packets;
 import org.junit.Test;
 
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 public class ArtNetPacketTest {
@@ -43,4 +44,22 @@ public class ArtNetPacketTest {
         ArtNetPacket packet = ArtNetPacket.parseBytes(data);
         assertThat(packet, instanceOf(ArtPollReply.class));
     }
+
+    @Test
+    public void testUnknownOpCodeIsIgnored() {
+        byte[] data = new byte[] {
+                'A', 'r', 't', '-', 'N', 'e', 't', 0x00, 0x00, (byte)0x80, 0x00, 0x0e, 0x00, 0x00
+        };
+        ArtNetPacket packet = ArtNetPacket.parseBytes(data);
+        assertThat(packet, nullValue());
+    }
+
+    @Test
+    public void testOpCodeSharingHighByteIsIgnored() {
+        byte[] data = new byte[] {
+                'A', 'r', 't', '-', 'N', 'e', 't', 0x00, 0x10, 0x20, 0x00, 0x0e, 0x00, 0x00
+        };
+        ArtNetPacket packet = ArtNetPacket.parseBytes(data);
+        assertThat(packet, nullValue());
+    }
 }
\ No newline at end of file
@@ -48,5 +48,7 @@ public class ArtPollReplyTest {
 
         ArtPollReply artPollReply = (ArtPollReply)packet;
         assertThat(artPollReply.getShortName(), equalTo("Hugos Buddy"));
+        assertThat(artPollReply.getLongName(), equalTo("dmXLAN buddy"));
+        assertThat(artPollReply.getIpAddress().getHostAddress(), equalTo("2.1.6.15"));
     }
 }
\ No newline at end of file
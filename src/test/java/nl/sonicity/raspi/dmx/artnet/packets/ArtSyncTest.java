@@ -0,0 +1,53 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.artnet.packets;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertThat;
+
+public class ArtSyncTest {
+    @Test
+    public void testBuilder() {
+        byte[] packet = new ArtSync.Builder().build().toBytes();
+
+        assertThat(packet.length, equalTo(14));
+
+        byte[] id = Arrays.copyOfRange(packet, 0, 8);
+        assertThat(id, equalTo(ArtNetPacket.ARTNET_ID));
+
+        int opCodeValue = ArtNetPacket.readUint16Msb(packet, 8);
+        assertThat(opCodeValue, equalTo(0x5200));
+
+        int version = ArtNetPacket.readUint16Lsb(packet, 10);
+        assertThat(version, equalTo(14));
+    }
+
+    @Test
+    public void testParser() {
+        byte[] data = new byte[] {
+            'A', 'r', 't', '-', 'N', 'e', 't', 0x00, 0x00, 0x52, 0x00, 0x0e, 0x00, 0x00
+        };
+
+        ArtNetPacket packet = ArtNetPacket.parseBytes(data);
+
+        assertThat(packet, instanceOf(ArtSync.class));
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.handlers;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ChannelMapperTest {
+    @Test
+    public void testDefaultMappingHysteresis() {
+        ChannelMapper mapper = new ChannelMapper(List.of(ChannelMapping.DEFAULT));
+
+        for (int value = 0; value < 256; value++) {
+            long fromOff = mapper.evaluate(0L, new byte[] { (byte) value });
+            long fromOn = mapper.evaluate(1L, new byte[] { (byte) value });
+
+            // The thresholds that used to be hardcoded in DmxToGPIOHandler
+            assertThat("Off at " + value, fromOff, equalTo(value >= 153 ? 1L : 0L));
+            assertThat("On at " + value, fromOn, equalTo(value <= 102 ? 0L : 1L));
+        }
+    }
+
+    @Test
+    public void testCurveAndThresholdsPerChannel() {
+        ChannelMapper mapper = new ChannelMapper(List.of(
+                ChannelMapping.builder().curve(ChannelCurve.INVERTED).build(),
+                ChannelMapping.builder().enableThreshold(20).disableThreshold(10).build(),
+                ChannelMapping.builder().curve(ChannelCurve.SQUARE).build()));
+
+        // Square of 200 is 157, square of 190 is 142
+        assertThat(mapper.evaluate(0L, new byte[] { 0, 20, (byte) 200 }), equalTo(0b111L));
+        assertThat(mapper.evaluate(0b111L, new byte[] { (byte) 255, 15, (byte) 190 }), equalTo(0b110L));
+        assertThat(mapper.evaluate(0b110L, new byte[] { (byte) 255, 10, (byte) 150 }), equalTo(0b000L));
+    }
+
+    @Test
+    public void testChangedChannelsOnly() {
+        ChannelMapper mapper = new ChannelMapper(List.of(ChannelMapping.DEFAULT, ChannelMapping.DEFAULT, ChannelMapping.DEFAULT));
+        ByteBuffer slots = ByteBuffer.wrap(new byte[] { 0, (byte) 255, 0 });
+        BitSet changed = new BitSet();
+        changed.set(1);
+
+        // Channel 0 is not looked at and stays on
+        assertThat(mapper.evaluate(0b001L, slots, changed), equalTo(0b011L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThresholds() {
+        new ChannelMapper(List.of(ChannelMapping.builder().enableThreshold(100).disableThreshold(100).build()));
+    }
+}
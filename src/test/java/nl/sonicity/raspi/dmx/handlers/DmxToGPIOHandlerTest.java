@@ -0,0 +1,119 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.handlers;
+
+import com.pi4j.io.gpio.GpioController;
+import com.pi4j.io.gpio.GpioPin;
+import com.pi4j.io.gpio.Pin;
+import com.pi4j.io.gpio.PinState;
+import com.pi4j.io.gpio.RaspiPin;
+import com.pi4j.io.gpio.impl.GpioControllerImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class DmxToGPIOHandlerTest {
+    private static final Pin[] PINS = new Pin[] {
+            RaspiPin.GPIO_00, RaspiPin.GPIO_01, RaspiPin.GPIO_02, RaspiPin.GPIO_03,
+            RaspiPin.GPIO_04, RaspiPin.GPIO_05, RaspiPin.GPIO_06, RaspiPin.GPIO_07,
+            RaspiPin.GPIO_08, RaspiPin.GPIO_09, RaspiPin.GPIO_10, RaspiPin.GPIO_11,
+            RaspiPin.GPIO_12, RaspiPin.GPIO_13, RaspiPin.GPIO_14, RaspiPin.GPIO_15,
+            RaspiPin.GPIO_16, RaspiPin.GPIO_21, RaspiPin.GPIO_22, RaspiPin.GPIO_23,
+            RaspiPin.GPIO_24, RaspiPin.GPIO_25, RaspiPin.GPIO_26, RaspiPin.GPIO_27 };
+
+    private SimulatedGpioProvider provider;
+    private GpioController gpio;
+
+    @Before
+    public void setUp() {
+        provider = new SimulatedGpioProvider();
+        gpio = new GpioControllerImpl(provider);
+    }
+
+    @After
+    public void tearDown() {
+        GpioPin[] pins = gpio.getProvisionedPins().toArray(new GpioPin[0]);
+        if (pins.length > 0) {
+            gpio.unprovisionPin(pins);
+        }
+    }
+
+    @Test
+    public void testOnlyChangedPinsAreWritten() {
+        DmxToGPIOHandler handler = new DmxToGPIOHandler(gpio, 0, 1, PINS);
+        GpioOutputStage stage = handler.getOutputStage();
+        long provisioned = provider.getStateWrites();
+
+        byte[] dmx = new byte[PINS.length];
+        handler.onDmx(dmx);
+        assertThat(provider.getStateWrites() - provisioned, equalTo(0L));
+
+        // Enable three outputs
+        dmx[0] = (byte) 255;
+        dmx[5] = (byte) 200;
+        dmx[23] = (byte) 153;
+        handler.onDmx(dmx);
+        assertThat(provider.getStateWrites() - provisioned, equalTo(3L));
+        assertThat(stage.getState(), equalTo(1L | 1L << 5 | 1L << 23));
+        assertThat(gpio.getState(stage.getOutput(5)), equalTo(PinState.LOW));
+        assertThat(gpio.getState(stage.getOutput(6)), equalTo(PinState.HIGH));
+
+        // Between the thresholds nothing changes
+        dmx[0] = (byte) 120;
+        dmx[1] = (byte) 120;
+        handler.onDmx(dmx);
+        assertThat(provider.getStateWrites() - provisioned, equalTo(3L));
+
+        // One off, one on
+        dmx[5] = 0;
+        dmx[10] = (byte) 255;
+        handler.onDmx(dmx);
+        assertThat(provider.getStateWrites() - provisioned, equalTo(5L));
+        assertThat(stage.getState(), equalTo(1L | 1L << 10 | 1L << 23));
+        assertThat(stage.getWrites(), equalTo(5L));
+        assertThat(stage.getFrames(), equalTo(4L));
+
+        handler.timeout();
+        assertThat(stage.getState(), equalTo(0L));
+        assertThat(gpio.getState(stage.getOutput(23)), equalTo(PinState.HIGH));
+    }
+
+    @Test
+    public void testChangedSlotsOnly() {
+        DmxToGPIOHandler handler = new DmxToGPIOHandler(gpio, 0, 1, PINS);
+        byte[] dmx = new byte[PINS.length];
+        dmx[2] = (byte) 255;
+        dmx[3] = (byte) 255;
+
+        // Slot 3 is not marked as changed, so it is not looked at
+        BitSet changed = new BitSet();
+        changed.set(2);
+        handler.onDmx(ByteBuffer.wrap(dmx).asReadOnlyBuffer(), changed);
+
+        assertThat(handler.getOutputStage().getState(), equalTo(1L << 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyOutputs() {
+        new GpioOutputStage(gpio, new Pin[GpioOutputStage.MAX_OUTPUTS + 1], PinState.LOW);
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.handlers;
+
+import com.pi4j.io.gpio.GpioController;
+import com.pi4j.io.gpio.GpioPin;
+import com.pi4j.io.gpio.Pin;
+import com.pi4j.io.gpio.PinState;
+import com.pi4j.io.gpio.RaspiPin;
+import com.pi4j.io.gpio.impl.GpioControllerImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class DmxToPwmHandlerTest {
+    private static final Pin[] PINS = new Pin[] { RaspiPin.GPIO_01, RaspiPin.GPIO_04, RaspiPin.GPIO_05 };
+
+    private SimulatedGpioProvider provider;
+    private GpioController gpio;
+    private DmxToPwmHandler handler;
+
+    @Before
+    public void setUp() {
+        provider = new SimulatedGpioProvider();
+        gpio = new GpioControllerImpl(provider);
+    }
+
+    @After
+    public void tearDown() {
+        if (handler != null) {
+            handler.shutdown();
+        }
+        GpioPin[] pins = gpio.getProvisionedPins().toArray(new GpioPin[0]);
+        if (pins.length > 0) {
+            gpio.unprovisionPin(pins);
+        }
+    }
+
+    @Test
+    public void testPwmPeriodJitter() throws Exception {
+        handler = new DmxToPwmHandler(gpio, 0, 1, PINS);
+        handler.start();
+        handler.onDmx(new byte[] { (byte) 128, (byte) 255, 0 });
+        assertThat(handler.getScheduler().getDuty(0), equalTo(50));
+
+        Thread.sleep(1000);
+
+        long period = handler.getScheduler().getPeriodNanos();
+        TimingRecorder periods = provider.getEdgePeriods(RaspiPin.GPIO_01, PinState.HIGH);
+        assertThat(periods.getCount(), greaterThan(50));
+
+        long p50 = provider.getPeriodJitter(RaspiPin.GPIO_01, PinState.HIGH, period, 50);
+        long p99 = provider.getPeriodJitter(RaspiPin.GPIO_01, PinState.HIGH, period, 99);
+        assertThat(p50, lessThan(TimeUnit.MILLISECONDS.toNanos(2)));
+        assertThat(p99, greaterThan(-1L));
+
+        // Fully on and off pins do not toggle
+        assertThat(periodCount(RaspiPin.GPIO_04), equalTo(0));
+        assertThat(periodCount(RaspiPin.GPIO_05), equalTo(0));
+        assertThat(provider.getState(RaspiPin.GPIO_04), equalTo(PinState.HIGH));
+    }
+
+    @Test
+    public void testIdleWithoutDimming() throws Exception {
+        handler = new DmxToPwmHandler(gpio, 0, 1, PINS);
+        handler.start();
+        handler.onDmx(new byte[] { (byte) 128, 0, 0 });
+        Thread.sleep(100);
+
+        handler.timeout();
+        Thread.sleep(50);
+        long writes = provider.getStateWrites();
+        Thread.sleep(200);
+
+        assertThat(provider.getStateWrites(), equalTo(writes));
+        assertThat(provider.getState(RaspiPin.GPIO_01), equalTo(PinState.LOW));
+    }
+
+    @Test
+    public void testSchedulerFollowsHandlerLifecycle() {
+        handler = new DmxToPwmHandler(gpio, 3, 10, PINS);
+        assertThat(schedulerRunning("PwmScheduler-3-10"), equalTo(false));
+
+        handler.start();
+        assertThat(schedulerRunning("PwmScheduler-3-10"), equalTo(true));
+
+        handler.shutdown();
+        assertThat(schedulerRunning("PwmScheduler-3-10"), equalTo(false));
+    }
+
+    @Test
+    public void testTimingRecorderPercentiles() {
+        TimingRecorder recorder = new TimingRecorder(100);
+        assertThat(recorder.percentile(50), equalTo(-1L));
+        for (int i = 1; i <= 200; i++) {
+            recorder.record(i);
+        }
+
+        // Only the last 100 samples are kept
+        assertThat(recorder.getCount(), equalTo(100));
+        assertThat(recorder.percentile(50), equalTo(150L));
+        assertThat(recorder.percentile(99), equalTo(199L));
+        assertThat(recorder.deviationPercentile(200, 50), equalTo(49L));
+    }
+
+    private static boolean schedulerRunning(String name) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.getName().equals(name) && thread.isAlive());
+    }
+
+    private int periodCount(Pin pin) {
+        TimingRecorder periods = provider.getEdgePeriods(pin, PinState.HIGH);
+        return periods == null ? 0 : periods.getCount();
+    }
+}
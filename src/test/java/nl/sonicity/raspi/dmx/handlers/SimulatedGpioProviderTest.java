@@ -0,0 +1,68 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.handlers;
+
+import com.pi4j.io.gpio.PinState;
+import com.pi4j.io.gpio.RaspiPin;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class SimulatedGpioProviderTest {
+    private static final int THREADS = 4;
+    private static final int WRITES = 20_000;
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        SimulatedGpioProvider provider = new SimulatedGpioProvider();
+        AtomicReference<PinState> lastEdge = new AtomicReference<>(PinState.LOW);
+        AtomicInteger edges = new AtomicInteger();
+        AtomicInteger outOfOrder = new AtomicInteger();
+        provider.setEdgeListener((pin, state, nanoTime) -> {
+            edges.incrementAndGet();
+            // Every reported edge should change the pin from the state of the previous one
+            if (lastEdge.getAndSet(state) == state) {
+                outOfOrder.incrementAndGet();
+            }
+        });
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < WRITES; i++) {
+                    provider.setState(RaspiPin.GPIO_01, (i + offset) % 2 == 0 ? PinState.HIGH : PinState.LOW);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(provider.getStateWrites(), equalTo((long) THREADS * WRITES));
+        assertThat(outOfOrder.get(), equalTo(0));
+        int rising = (edges.get() + 1) / 2;
+        assertThat(provider.getEdgePeriods(RaspiPin.GPIO_01, PinState.HIGH).getCount(), equalTo(Math.min(rising - 1, 4096)));
+    }
+}
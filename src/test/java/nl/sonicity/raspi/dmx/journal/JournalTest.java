@@ -0,0 +1,301 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.journal;
+
+import nl.sonicity.raspi.dmx.artnet.packets.ArtDmx;
+import nl.sonicity.raspi.dmx.artnet.packets.ArtPoll;
+import nl.sonicity.raspi.dmx.sacn.E131Data;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class JournalTest {
+    private static final long FRAME_INTERVAL = TimeUnit.SECONDS.toNanos(1) / 44;
+    private static final InetSocketAddress SOURCE = new InetSocketAddress("10.0.0.1", 6454);
+    private static final InetSocketAddress OTHER_SOURCE = new InetSocketAddress("10.0.0.2", 50123);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("capture");
+        List<byte[]> datagrams = datagrams(4, 100);
+
+        JournalWriter writer = new JournalWriter(directory);
+        long start = System.nanoTime();
+        for (int i = 0; i < datagrams.size(); i++) {
+            writer.datagram(start + i * FRAME_INTERVAL, SOURCE, ByteBuffer.wrap(datagrams.get(i)));
+        }
+        writer.close();
+
+        assertThat(writer.getRecords(), equalTo((long)datagrams.size()));
+        assertThat(writer.getDeltaRecords(), greaterThan(0L));
+
+        try (JournalReader reader = new JournalReader(directory)) {
+            long previous = -1;
+            for (byte[] expected : datagrams) {
+                assertThat(reader.next(), equalTo(true));
+                assertThat(toBytes(reader.getDatagram()), equalTo(expected));
+                assertThat(reader.getTimestamp(), greaterThan(previous));
+                assertThat(reader.getSource(), equalTo(SOURCE));
+                assertThat(reader.isSacn(), equalTo(false));
+                previous = reader.getTimestamp();
+            }
+            assertThat(reader.next(), equalTo(false));
+        }
+    }
+
+    @Test
+    public void testSendersAreKept() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("capture");
+        List<byte[]> first = datagrams(1, 40);
+        List<byte[]> second = datagrams(1, 40);
+        byte[] sacn = new E131Data.Builder().universe(1).sequence(0).dmx(new byte[512]).toBytes();
+
+        // Two senders merged on the same universe, and an sACN source
+        JournalWriter writer = new JournalWriter(directory);
+        long start = System.nanoTime();
+        for (int i = 0; i < first.size(); i++) {
+            writer.datagram(start + i * FRAME_INTERVAL, SOURCE, ByteBuffer.wrap(first.get(i)));
+            writer.datagram(start + i * FRAME_INTERVAL + 1, OTHER_SOURCE, ByteBuffer.wrap(second.get(i)));
+        }
+        writer.datagram(start + first.size() * FRAME_INTERVAL, OTHER_SOURCE, ByteBuffer.wrap(sacn));
+        writer.close();
+
+        // Frames of one sender are not encoded against frames of the other
+        assertThat(writer.getDeltaRecords(), equalTo(0L));
+
+        try (JournalReader reader = new JournalReader(directory)) {
+            for (int i = 0; i < first.size(); i++) {
+                assertThat(reader.next(), equalTo(true));
+                assertThat(reader.getSource(), equalTo(SOURCE));
+                assertThat(toBytes(reader.getDatagram()), equalTo(first.get(i)));
+                assertThat(reader.next(), equalTo(true));
+                assertThat(reader.getSource(), equalTo(OTHER_SOURCE));
+                assertThat(toBytes(reader.getDatagram()), equalTo(second.get(i)));
+            }
+            assertThat(reader.next(), equalTo(true));
+            assertThat(reader.isSacn(), equalTo(true));
+            assertThat(reader.getSource(), equalTo(OTHER_SOURCE));
+            assertThat(toBytes(reader.getDatagram()), equalTo(sacn));
+            assertThat(reader.next(), equalTo(false));
+        }
+    }
+
+    @Test
+    public void testDeltaRecordsAreSmall() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("capture");
+        List<byte[]> datagrams = datagrams(8, 440);
+
+        try (JournalWriter writer = new JournalWriter(directory)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < datagrams.size(); i++) {
+                writer.datagram(start + i * FRAME_INTERVAL / 8, SOURCE, ByteBuffer.wrap(datagrams.get(i)));
+            }
+
+            // A few changed slots per frame, the journal should be a fraction of the traffic
+            assertThat(writer.getJournalBytes() * 4, lessThan(writer.getDatagramBytes()));
+        }
+    }
+
+    @Test
+    public void testIgnoresOtherDatagrams() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("capture");
+        try (JournalWriter writer = new JournalWriter(directory)) {
+            writer.datagram(System.nanoTime(), SOURCE, ByteBuffer.wrap("Not Art-Net at all".getBytes()));
+            byte[] pollReply = new ArtPoll.Builder().build().toBytes();
+            pollReply[9] = 0x21;
+            writer.datagram(System.nanoTime(), SOURCE, ByteBuffer.wrap(pollReply));
+
+            assertThat(writer.getRecords(), equalTo(0L));
+        }
+    }
+
+    @Test
+    public void testSeek() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("capture");
+        List<byte[]> datagrams = datagrams(2, 400);
+
+        // Index entries every 100ms, frames every 23ms
+        JournalWriter writer = new JournalWriter(directory, JournalWriter.DEFAULT_SEGMENT_BYTES, TimeUnit.MILLISECONDS.toNanos(100));
+        long start = System.nanoTime();
+        for (int i = 0; i < datagrams.size(); i++) {
+            writer.datagram(start + i * FRAME_INTERVAL, SOURCE, ByteBuffer.wrap(datagrams.get(i)));
+        }
+        writer.close();
+
+        List<Long> timestamps = new ArrayList<>();
+        try (JournalReader reader = new JournalReader(directory)) {
+            while (reader.next()) {
+                timestamps.add(reader.getTimestamp());
+            }
+        }
+
+        try (JournalReader reader = new JournalReader(directory)) {
+            for (int target : new int[] { 300, 17, 201, 0, 399 }) {
+                reader.seek(timestamps.get(target));
+                assertThat(reader.next(), equalTo(true));
+                assertThat(reader.getTimestamp(), equalTo(timestamps.get(target)));
+                assertThat(toBytes(reader.getDatagram()), equalTo(datagrams.get(target)));
+
+                // Reading on from the seek position reconstructs the following frames as well
+                assertThat(reader.next(), equalTo(target + 1 < datagrams.size()));
+                if (target + 1 < datagrams.size()) {
+                    assertThat(toBytes(reader.getDatagram()), equalTo(datagrams.get(target + 1)));
+                }
+            }
+
+            // Beyond the end
+            reader.seek(timestamps.get(399) + 1);
+            assertThat(reader.next(), equalTo(false));
+        }
+    }
+
+    @Test
+    public void testSegmentRotation() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("capture");
+        List<byte[]> datagrams = datagrams(4, 200);
+
+        JournalWriter writer = new JournalWriter(directory, 16 * 1024, JournalWriter.DEFAULT_INDEX_INTERVAL);
+        long start = System.nanoTime();
+        for (int i = 0; i < datagrams.size(); i++) {
+            writer.datagram(start + i * FRAME_INTERVAL, SOURCE, ByteBuffer.wrap(datagrams.get(i)));
+        }
+        writer.close();
+
+        assertThat(writer.getSegments(), greaterThan(1));
+        assertThat(Files.size(JournalFormat.segment(directory, 0)), lessThan(16 * 1024L));
+
+        try (JournalReader reader = new JournalReader(directory)) {
+            assertThat(reader.getSegments(), equalTo(writer.getSegments()));
+            int count = 0;
+            long seekTarget = 0;
+            while (reader.next()) {
+                assertThat(toBytes(reader.getDatagram()), equalTo(datagrams.get(count)));
+                if (count == 150) {
+                    seekTarget = reader.getTimestamp();
+                }
+                count++;
+            }
+            assertThat(count, equalTo(datagrams.size()));
+
+            // The first frames of a segment are key frames, so seeking into a later segment works
+            reader.seek(seekTarget);
+            assertThat(reader.next(), equalTo(true));
+            assertThat(toBytes(reader.getDatagram()), equalTo(datagrams.get(150)));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRefusesExistingJournal() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("capture");
+        new JournalWriter(directory).close();
+        new JournalWriter(directory);
+    }
+
+    @Test
+    public void testReplayOverLoopback() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("capture");
+        List<byte[]> datagrams = datagrams(2, 88);
+
+        // One second of traffic from two senders
+        try (JournalWriter writer = new JournalWriter(directory)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < datagrams.size(); i++) {
+                writer.datagram(start + i / 2 * FRAME_INTERVAL, i % 2 == 0 ? SOURCE : OTHER_SOURCE, ByteBuffer.wrap(datagrams.get(i)));
+            }
+        }
+
+        try (DatagramChannel receiver = DatagramChannel.open();
+             JournalReader reader = new JournalReader(directory)) {
+            receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            int port = ((InetSocketAddress)receiver.getLocalAddress()).getPort();
+
+            long start = System.nanoTime();
+            long count;
+            try (JournalReplayer.UdpSink sink = new JournalReplayer.UdpSink(InetAddress.getLoopbackAddress(), port, port)) {
+                count = new JournalReplayer(reader, 4.0).replay(sink);
+                assertThat(sink.getSenders(), equalTo(2));
+            }
+            long elapsed = System.nanoTime() - start;
+
+            assertThat(count, equalTo((long)datagrams.size()));
+            // 87 frame intervals at 4x speed is about 250ms
+            assertThat(elapsed, greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(240)));
+            assertThat(elapsed, lessThan(TimeUnit.MILLISECONDS.toNanos(1000)));
+
+            // Each recorded sender sends from an address of its own
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            Set<InetAddress> senders = new HashSet<>();
+            for (byte[] expected : datagrams) {
+                buffer.clear();
+                senders.add(((InetSocketAddress)receiver.receive(buffer)).getAddress());
+                buffer.flip();
+                assertThat(toBytes(buffer), equalTo(expected));
+            }
+            assertThat(senders.size(), equalTo(2));
+        }
+    }
+
+    /** Frames of a few universes with a couple of slowly changing slots, and an ArtPoll now and then */
+    private static List<byte[]> datagrams(int universes, int count) {
+        List<byte[]> datagrams = new ArrayList<>();
+        byte[][] dmx = new byte[universes][512];
+        for (int i = 0; datagrams.size() < count; i++) {
+            if (i % 50 == 49) {
+                datagrams.add(new ArtPoll.Builder().build().toBytes());
+                continue;
+            }
+            int universe = i % universes;
+            dmx[universe][i % 512] = (byte)i;
+            dmx[universe][(i * 7 + 3) % 512] = (byte)(i >> 1);
+            datagrams.add(new ArtDmx.Builder()
+                    .sequence(i % 255 + 1)
+                    .portAddress(universe)
+                    .dmx(Arrays.copyOf(dmx[universe], 512))
+                    .build()
+                    .toBytes());
+        }
+        return datagrams;
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright © 2018 Sonicity (info@sonicity.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sonicity.raspi.dmx.sacn;
+
+import nl.sonicity.raspi.dmx.artnet.ArtNetException;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class E131DataViewTest {
+    private static final byte[] CID = { 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08,
+            0x09, 0x0a, 0x0b, 0x0c, 0x0d, 0x0e, 0x0f, 0x10 };
+
+    @Test
+    public void testView() {
+        byte[] dmxdata = new byte[512];
+        dmxdata[0] = (byte)0xFE;
+        dmxdata[511] = (byte)0xFD;
+
+        byte[] packet = new E131Data.Builder()
+                .cid(CID)
+                .sourceName("Console")
+                .priority(150)
+                .sequence(42)
+                .universe(0x1234)
+                .dmx(dmxdata)
+                .toBytes();
+        assertThat(packet.length, equalTo(638));
+
+        ByteBuffer buffer = receive(ByteBuffer.allocate(8196), packet);
+        assertThat(E131DataView.isE131Data(buffer), equalTo(true));
+
+        E131DataView view = new E131DataView(buffer).wrap();
+        assertThat(view.getPriority(), equalTo(150));
+        assertThat(view.getSequence(), equalTo(42));
+        assertThat(view.getUniverse(), equalTo(0x1234));
+        assertThat(view.getStartCode(), equalTo(0));
+        assertThat(view.getDmxLength(), equalTo(512));
+        assertThat(view.getSlot(0), equalTo(0xFE));
+        assertThat(view.getSlot(511), equalTo(0xFD));
+        assertThat(view.isPreview(), equalTo(false));
+        assertThat(view.isStreamTerminated(), equalTo(false));
+    }
+
+    @Test
+    public void testShortFrameClearsRemainder() {
+        ByteBuffer buffer = ByteBuffer.allocate(8196);
+        E131DataView view = new E131DataView(buffer);
+
+        byte[] full = new byte[512];
+        full[100] = 0x40;
+        receive(buffer, new E131Data.Builder().universe(1).dmx(full).toBytes());
+        assertThat(view.wrap().getSlot(100), equalTo(0x40));
+        buffer.clear();
+
+        receive(buffer, new E131Data.Builder().universe(1).dmx(new byte[] { 0x10, 0x20 }).toBytes());
+        view.wrap();
+        assertThat(view.getDmxLength(), equalTo(2));
+        assertThat(view.getSlot(1), equalTo(0x20));
+        assertThat(view.getSlot(100), equalTo(0x00));
+    }
+
+    @Test
+    public void testOptionsAndSource() {
+        byte[] packet = new E131Data.Builder()
+                .cid(CID)
+                .universe(1)
+                .options(E131Data.OPTION_STREAM_TERMINATED | E131Data.OPTION_PREVIEW_DATA)
+                .toBytes();
+        E131DataView view = new E131DataView(receive(ByteBuffer.allocate(8196), packet)).wrap();
+        assertThat(view.isStreamTerminated(), equalTo(true));
+        assertThat(view.isPreview(), equalTo(true));
+
+        byte[] other = CID.clone();
+        other[15] = 0x11;
+        E131DataView otherView = new E131DataView(receive(ByteBuffer.allocate(8196),
+                new E131Data.Builder().cid(other).universe(1).toBytes())).wrap();
+        assertThat(otherView.getSourceId(), not(equalTo(view.getSourceId())));
+    }
+
+    @Test(expected = ArtNetException.class)
+    public void testWrongVector() {
+        byte[] packet = new E131Data.Builder().universe(1).toBytes();
+        // Framing vector of a synchronization packet
+        packet[43] = 0x01;
+        new E131DataView(receive(ByteBuffer.allocate(8196), packet)).wrap();
+    }
+
+    @Test
+    public void testNotE131() {
+        byte[] data = new byte[] {
+                'A', 'r', 't', '-', 'N', 'e', 't', 0x00, 0x00, 0x50, 0x00, 0x0e, 0x05, 0x07
+        };
+        assertThat(E131DataView.isE131Data(receive(ByteBuffer.allocate(8196), data)), equalTo(false));
+    }
+
+    @Test
+    public void testMulticastGroup() {
+        assertThat(E131Data.multicastGroup(0x0102).getHostAddress(), equalTo("239.255.1.2"));
+    }
+
+    private static ByteBuffer receive(ByteBuffer buffer, byte[] datagram) {
+        buffer.put(datagram);
+        buffer.flip();
+        return buffer;
+    }
+}